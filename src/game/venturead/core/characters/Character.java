@@ -1,18 +1,96 @@
 package game.venturead.core.characters;
 
-import game.ventureread.core.items.Item;
-
-import java.util.HashMap;
+import game.venturead.core.items.Inventory;
+import game.venturead.core.simulation.DecisionContext;
+import game.venturead.core.world.Location;
 
 public abstract class Character 
 {
 	private String name;
 	private double healthPoints;
-	private HashMap<Item,Integer> items;
-		//item, quantity held
+	private final Inventory items;
+		//item id, quantity held
+	private int id;
+		//dense index assigned by the World this Character is registered in; -1 otherwise
+	
+	protected Character(String name, double healthPoints) {
+		this.name = name;
+		this.healthPoints = healthPoints;
+		this.items = new Inventory();
+		this.id = -1;
+	}
+	
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the healthPoints
+	 */
+	public double getHealthPoints() {
+		return healthPoints;
+	}
+	
+	/**
+	 * @return the <tt>Item</tt>s this <tt>Character</tt> carries
+	 */
+	public Inventory getItems() {
+		return items;
+	}
+	
+	/**
+	 * Hands everything this <tt>Character</tt> carries to another.
+	 * @param other the <tt>Character</tt> to hand it to
+	 */
+	public void giveAllItemsTo(Character other) {
+		items.transferAllTo(other.items);
+	}
+	
+	/**
+	 * Drops everything this <tt>Character</tt> carries at a <tt>Location</tt>.
+	 * @param location where to drop it
+	 */
+	public void dropAllItems(Location location) {
+		items.transferAllTo(location.getItems());
+	}
 	
+	/**
+	 * @return the id of this <tt>Character</tt> in its <tt>World</tt>, or -1 if it isn't registered in one
+	 */
+	public int getId() {
+		return id;
+	}
 	
+	/**
+	 * Assigns this <tt>Character</tt> its id.  Called by the <tt>World</tt>
+	 * when registering it; a <tt>Character</tt> is registered only once.
+	 * @param id the dense id to take
+	 * @throws <tt>IllegalStateException</tt> if this <tt>Character</tt> already has an id
+	 */
+	public void assignId(int id) {
+		if(this.id >= 0) {
+			throw new IllegalStateException("Character "+name+" is already registered.");
+		}
+		this.id = id;
+	}
 	
+	/**
+	 * Decides what this <tt>Character</tt> does this tick, by recording
+	 * moves and lock toggles in <i>context</i>.  Called by a 
+	 * <tt>TickScheduler</tt> while other <tt>Character</tt>s decide in 
+	 * parallel, so it must only read the <tt>World</tt>; what it records is
+	 * carried out once everyone has decided.  Does nothing by default.
+	 * @param context where this <tt>Character</tt> is, and where its decisions go
+	 */
+	public void think(DecisionContext context) {
+	}
 	
+	@Override
+	public String toString() {
+		return name;
+	}
 	
 }
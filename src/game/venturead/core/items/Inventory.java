@@ -0,0 +1,418 @@
+package game.venturead.core.items;
+
+import java.util.Arrays;
+
+/**
+ * How many of each <tt>Item</tt> a <tt>Character</tt> carries, a
+ * <tt>Location</tt> holds or a loot table drops, counted by <tt>Item</tt>
+ * id.  The counts are kept in an open-addressed table of primitive ints, so
+ * adding, removing and counting never box, and an empty
+ * <tt>Inventory</tt> allocates no table at all.
+ * <p>
+ * An <tt>Inventory</tt> is not thread-safe.
+ * @author recardona
+ */
+public class Inventory {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	private int[] keys;
+	//item id + 1 by slot, 0 where the slot is empty; null while nothing is held
+	private int[] counts;
+	//by slot
+	private int size;
+	//the number of distinct items held
+	private long totalCount;
+
+	/**
+	 * Visits the stacks of an <tt>Inventory</tt>, in no particular order.
+	 * @see Inventory#forEach(StackVisitor)
+	 */
+	public interface StackVisitor {
+
+		/**
+		 * @param itemId the id of an <tt>Item</tt> held
+		 * @param count how many are held; always positive
+		 */
+		void visit(int itemId, int count);
+	}
+
+	public Inventory() {
+		this.keys = null;
+		this.counts = null;
+		this.size = 0;
+		this.totalCount = 0;
+	}
+
+	/**
+	 * @param itemId the id of an <tt>Item</tt>
+	 * @return how many are held
+	 */
+	public int count(int itemId) {
+		int slot = find(itemId);
+		return slot < 0 ? 0 : counts[slot];
+	}
+
+	/**
+	 * @param item an <tt>Item</tt>
+	 * @return how many are held
+	 */
+	public int count(Item item) {
+		return count(item.getId());
+	}
+
+	/**
+	 * @param itemId the id of an <tt>Item</tt>
+	 * @return true if at least one is held
+	 */
+	public boolean contains(int itemId) {
+		return find(itemId) >= 0;
+	}
+
+	/**
+	 * @return the number of distinct <tt>Item</tt>s held
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if nothing is held
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return how many <tt>Item</tt>s are held, counting each one of a stack
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Adds some of an <tt>Item</tt>.
+	 * @param itemId the id of the <tt>Item</tt>
+	 * @param count how many to add
+	 * @throws <tt>IllegalArgumentException</tt> if <i>itemId</i> or <i>count</i> are negative, or the stack would overflow
+	 */
+	public void add(int itemId, int count) {
+		if(itemId < 0 || count < 0) {
+			throw new IllegalArgumentException("Can't add "+count+" of item "+itemId+".");
+		}
+		if(count == 0) {
+			return;
+		}
+		if(keys == null) {
+			keys = new int[INITIAL_CAPACITY];
+			counts = new int[INITIAL_CAPACITY];
+		}
+
+		int mask = keys.length - 1;
+		int slot = mix(itemId) & mask;
+		while(keys[slot] != 0) {
+			if(keys[slot] == itemId + 1) {
+				if(counts[slot] > Integer.MAX_VALUE - count) {
+					throw new IllegalArgumentException("A stack of item "+itemId+" can't hold more than "+Integer.MAX_VALUE+".");
+				}
+				counts[slot] += count;
+				totalCount += count;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = itemId + 1;
+		counts[slot] = count;
+		totalCount += count;
+		size++;
+		if(size * 4 > keys.length * 3) {
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Adds some of an <tt>Item</tt>.
+	 * @param item the <tt>Item</tt>
+	 * @param count how many to add
+	 * @see #add(int, int)
+	 */
+	public void add(Item item, int count) {
+		add(item.getId(), count);
+	}
+
+	/**
+	 * Removes up to <i>count</i> of an <tt>Item</tt>.
+	 * @param itemId the id of the <tt>Item</tt>
+	 * @param count how many to remove at most
+	 * @return how many were removed
+	 * @throws <tt>IllegalArgumentException</tt> if <i>count</i> is negative
+	 */
+	public int remove(int itemId, int count) {
+		if(count < 0) {
+			throw new IllegalArgumentException("Can't remove "+count+" of item "+itemId+".");
+		}
+		int slot = find(itemId);
+		if(slot < 0) {
+			return 0;
+		}
+		int removed = Math.min(count, counts[slot]);
+		counts[slot] -= removed;
+		totalCount -= removed;
+		if(counts[slot] == 0) {
+			removeSlot(slot);
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes up to <i>count</i> of an <tt>Item</tt>.
+	 * @param item the <tt>Item</tt>
+	 * @param count how many to remove at most
+	 * @return how many were removed
+	 * @see #remove(int, int)
+	 */
+	public int remove(Item item, int count) {
+		return remove(item.getId(), count);
+	}
+
+	/**
+	 * Moves up to <i>count</i> of an <tt>Item</tt> from this <tt>Inventory</tt> to another.
+	 * @param other where to move them
+	 * @param itemId the id of the <tt>Item</tt>
+	 * @param count how many to move at most
+	 * @return how many were moved
+	 */
+	public int transferTo(Inventory other, int itemId, int count) {
+		if(other == this) {
+			return Math.min(count, count(itemId));
+		}
+		int moved = remove(itemId, count);
+		other.add(itemId, moved);
+		return moved;
+	}
+
+	/**
+	 * Moves everything in this <tt>Inventory</tt> to another, such as from
+	 * a <tt>Character</tt> to the <tt>Location</tt> it dies at, leaving this
+	 * one empty.  If <i>other</i> is empty it simply takes over this one's
+	 * table; otherwise room is made in it once, up front.  If a stack in 
+	 * <i>other</i> would overflow, nothing is moved.
+	 * @param other where to move everything
+	 * @throws <tt>IllegalArgumentException</tt> if a stack in <i>other</i> would overflow
+	 */
+	public void transferAllTo(Inventory other) {
+		if(other == this) {
+			return;
+		}
+		if(other.size == 0) {
+			other.keys = keys;
+			other.counts = counts;
+			other.size = size;
+			other.totalCount = totalCount;
+		}
+		else {
+			other.addAll(this);
+		}
+		clear();
+	}
+
+	/**
+	 * Adds everything in another <tt>Inventory</tt> to this one, leaving
+	 * that one as it was; merging loot tables, for instance.  Makes room once,
+	 * up front.  Every stack is checked before any is added, so if one would
+	 * overflow, this <tt>Inventory</tt> is left as it was.
+	 * @param other what to add
+	 * @throws <tt>IllegalArgumentException</tt> if a stack would overflow
+	 */
+	public void addAll(Inventory other) {
+		if(other.size == 0) {
+			return;
+		}
+		if(other == this) {
+			other = copy();
+		}
+		int[] otherKeys = other.keys;
+		int[] otherCounts = other.counts;
+		int stacks = other.size;
+		for(int slot=0; stacks > 0; slot++) {
+			if(otherKeys[slot] != 0) {
+				int itemId = otherKeys[slot] - 1;
+				if(count(itemId) > Integer.MAX_VALUE - otherCounts[slot]) {
+					throw new IllegalArgumentException("A stack of item "+itemId+" can't hold more than "+Integer.MAX_VALUE+".");
+				}
+				stacks--;
+			}
+		}
+		
+		ensureCapacity(size + other.size);
+		stacks = other.size;
+		for(int slot=0; stacks > 0; slot++) {
+			if(otherKeys[slot] != 0) {
+				add(otherKeys[slot] - 1, otherCounts[slot]);
+				stacks--;
+			}
+		}
+	}
+
+	/**
+	 * Merges several loot tables into one.
+	 * @param tables the loot tables to merge
+	 * @return a new <tt>Inventory</tt> holding everything in <i>tables</i>
+	 */
+	public static Inventory merge(Inventory... tables) {
+		int stacks = 0;
+		for(Inventory table : tables) {
+			stacks += table.size;
+		}
+		Inventory merged = new Inventory();
+		merged.ensureCapacity(stacks);
+		for(Inventory table : tables) {
+			merged.addAll(table);
+		}
+		return merged;
+	}
+
+	/**
+	 * @return a new <tt>Inventory</tt> holding the same as this one
+	 */
+	public Inventory copy() {
+		Inventory copy = new Inventory();
+		if(keys != null) {
+			copy.keys = keys.clone();
+			copy.counts = counts.clone();
+			copy.size = size;
+			copy.totalCount = totalCount;
+		}
+		return copy;
+	}
+
+	/**
+	 * Empties this <tt>Inventory</tt>, dropping its table.
+	 */
+	public void clear() {
+		keys = null;
+		counts = null;
+		size = 0;
+		totalCount = 0;
+	}
+
+	/**
+	 * Visits every stack held, without boxing.
+	 * @param visitor called once per stack
+	 */
+	public void forEach(StackVisitor visitor) {
+		if(keys == null) {
+			return;
+		}
+		int[] keys = this.keys;
+		int[] counts = this.counts;
+		for(int slot=0; slot<keys.length; slot++) {
+			if(keys[slot] != 0) {
+				visitor.visit(keys[slot] - 1, counts[slot]);
+			}
+		}
+	}
+
+	/**
+	 * @return the ids of the <tt>Item</tt>s held, in ascending order
+	 */
+	public int[] getItemIds() {
+		int[] ids = new int[size];
+		int next = 0;
+		if(keys != null) {
+			for(int key : keys) {
+				if(key != 0) {
+					ids[next++] = key - 1;
+				}
+			}
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("{");
+		for(int id : getItemIds()) {
+			if(sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(id).append('=').append(count(id));
+		}
+		return sb.append('}').toString();
+	}
+
+	private int find(int itemId) {
+		if(keys == null || itemId < 0) {
+			return -1;
+		}
+		int mask = keys.length - 1;
+		for(int slot = mix(itemId) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+			if(keys[slot] == itemId + 1) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Empties a slot, shifting back the entries after it that probed past
+	 * it so that no lookup stops short.
+	 */
+	private void removeSlot(int slot) {
+		int mask = keys.length - 1;
+		int hole = slot;
+		for(int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+			int home = mix(keys[next] - 1) & mask;
+			if(((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				counts[hole] = counts[next];
+				hole = next;
+			}
+		}
+		keys[hole] = 0;
+		counts[hole] = 0;
+		size--;
+		if(size == 0) {
+			keys = null;
+			counts = null;
+		}
+	}
+
+	private void ensureCapacity(int stacks) {
+		int capacity = keys == null ? INITIAL_CAPACITY : keys.length;
+		while(stacks * 4 > capacity * 3) {
+			capacity *= 2;
+		}
+		if(keys == null) {
+			keys = new int[capacity];
+			counts = new int[capacity];
+		}
+		else if(capacity > keys.length) {
+			resize(capacity);
+		}
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new int[capacity];
+		counts = new int[capacity];
+		int mask = capacity - 1;
+		for(int i=0; i<oldKeys.length; i++) {
+			if(oldKeys[i] != 0) {
+				int slot = mix(oldKeys[i] - 1) & mask;
+				while(keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	private static int mix(int id) {
+		int hash = id * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
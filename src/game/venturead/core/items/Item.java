@@ -0,0 +1,47 @@
+package game.venturead.core.items;
+
+/**
+ * A kind of thing a <tt>Character</tt> can carry or a <tt>Location</tt> can
+ * hold, such as a key or a gold coin.  Items are made by an 
+ * {@link ItemRegistry}, which gives each a dense id; an {@link Inventory}
+ * counts them by that id.
+ * @author recardona
+ */
+public final class Item {
+	
+	private final int id;
+	private final String name;
+	private final String description;
+	
+	Item(int id, String name, String description) {
+		this.id = id;
+		this.name = name;
+		this.description = description;
+	}
+	
+	/**
+	 * @return the id of this <tt>Item</tt> in its <tt>ItemRegistry</tt>
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the description
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,76 @@
+package game.venturead.core.items;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Makes the <tt>Item</tt>s of a game, giving each the next dense id, and
+ * finds them again by id or name.  Registering is synchronized; looking an
+ * <tt>Item</tt> up by id takes no lock.
+ * @author recardona
+ */
+public class ItemRegistry {
+	
+	private volatile Item[] itemsById;
+	private int itemCount;
+	private final Map<String,Item> itemsByName;
+	//guarded by this registry
+	
+	public ItemRegistry() {
+		this.itemsById = new Item[16];
+		this.itemCount = 0;
+		this.itemsByName = new HashMap<String,Item>();
+	}
+	
+	/**
+	 * Makes a new <tt>Item</tt> with the next id.
+	 * @param name the name of the new <tt>Item</tt>; no other may have it
+	 * @param description the description of the new <tt>Item</tt>
+	 * @return the new <tt>Item</tt>
+	 * @throws <tt>IllegalArgumentException</tt> if an <tt>Item</tt> named <i>name</i> has already been registered
+	 */
+	public synchronized Item register(String name, String description) {
+		if(itemsByName.containsKey(name)) {
+			throw new IllegalArgumentException("There has already been an item registered with name "+name);
+		}
+		Item item = new Item(itemCount, name, description);
+		Item[] items = itemsById;
+		if(itemCount == items.length) {
+			items = Arrays.copyOf(items, itemCount * 2);
+		}
+		items[itemCount++] = item;
+		itemsById = items;
+		itemsByName.put(name, item);
+		return item;
+	}
+	
+	/**
+	 * @param id the id of an <tt>Item</tt>
+	 * @return the <tt>Item</tt> with that id
+	 * @throws <tt>IllegalArgumentException</tt> if no <tt>Item</tt> has that id
+	 */
+	public Item getItem(int id) {
+		Item[] items = itemsById;
+		Item item = id >= 0 && id < items.length ? items[id] : null;
+		if(item == null) {
+			throw new IllegalArgumentException("There is no item with id "+id);
+		}
+		return item;
+	}
+	
+	/**
+	 * @param name the name of an <tt>Item</tt>
+	 * @return the <tt>Item</tt> with that name, or null if there is none
+	 */
+	public synchronized Item getItem(String name) {
+		return itemsByName.get(name);
+	}
+	
+	/**
+	 * @return the number of <tt>Item</tt>s registered
+	 */
+	public synchronized int getItemCount() {
+		return itemCount;
+	}
+}
@@ -0,0 +1,163 @@
+package game.venturead.core.items.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import game.venturead.core.characters.Character;
+import game.venturead.core.items.Inventory;
+import game.venturead.core.items.Item;
+import game.venturead.core.items.ItemRegistry;
+import game.venturead.core.world.Location;
+import game.venturead.core.world.World;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class InventoryTest {
+	
+	ItemRegistry registry;
+	Item key;
+	Item coin;
+	
+	@Before
+	public void setUp() throws Exception {
+		registry = new ItemRegistry();
+		key = registry.register("A Key", "a small brass key.");
+		coin = registry.register("A Coin", "a gold coin.");
+	}
+	
+	@Test
+	public void testRegistry() {
+		assertEquals(0, key.getId());
+		assertEquals(1, coin.getId());
+		assertSame(coin, registry.getItem(1));
+		assertSame(key, registry.getItem("A Key"));
+		assertNull(registry.getItem("A Sword"));
+		assertEquals(2, registry.getItemCount());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testRegisterDuplicate() {
+		registry.register("A Key", "another key.");
+	}
+	
+	@Test
+	public void testAddRemoveCount() {
+		Inventory inventory = new Inventory();
+		assertTrue(inventory.isEmpty());
+		inventory.add(key, 1);
+		inventory.add(coin, 30);
+		inventory.add(coin, 12);
+		assertEquals(1, inventory.count(key));
+		assertEquals(42, inventory.count(coin));
+		assertEquals(2, inventory.size());
+		assertEquals(43, inventory.getTotalCount());
+		
+		assertEquals(40, inventory.remove(coin, 40));
+		assertEquals("Only what is there is removed", 2, inventory.remove(coin, 5));
+		assertFalse(inventory.contains(coin.getId()));
+		assertEquals(1, inventory.remove(key, 1));
+		assertTrue(inventory.isEmpty());
+		assertEquals(0, inventory.getTotalCount());
+	}
+	
+	@Test
+	public void testAgainstAMap() {
+		Random random = new Random(7);
+		Inventory inventory = new Inventory();
+		Map<Integer,Integer> expected = new HashMap<Integer,Integer>();
+		for(int i=0; i<20000; i++) {
+			int id = random.nextInt(300);
+			int count = random.nextInt(5);
+			Integer held = expected.get(id);
+			if(random.nextBoolean()) {
+				inventory.add(id, count);
+				expected.put(id, (held == null ? 0 : held) + count);
+			}
+			else {
+				int removed = inventory.remove(id, count);
+				assertEquals(Math.min(count, held == null ? 0 : held), removed);
+				if(held != null) {
+					expected.put(id, held - removed);
+				}
+			}
+			if(expected.containsKey(id) && expected.get(id) == 0) {
+				expected.remove(id);
+			}
+		}
+		assertEquals(expected.size(), inventory.size());
+		for(int id=0; id<300; id++) {
+			assertEquals("Item "+id, expected.containsKey(id) ? expected.get(id).intValue() : 0, inventory.count(id));
+		}
+	}
+	
+	@Test
+	public void testMergeAndTransfer() {
+		Inventory goblinLoot = new Inventory();
+		goblinLoot.add(coin, 3);
+		Inventory chestLoot = new Inventory();
+		chestLoot.add(coin, 10);
+		chestLoot.add(key, 1);
+		Inventory merged = Inventory.merge(goblinLoot, chestLoot, goblinLoot);
+		assertEquals(16, merged.count(coin));
+		assertEquals(1, merged.count(key));
+		assertEquals("Merging leaves the tables as they were", 3, goblinLoot.count(coin));
+		assertArrayEquals(new int[] {0, 1}, merged.getItemIds());
+		
+		World world = new World();
+		Location hall = world.registerNewLocation("The Hall", "a long hall.");
+		Character hero = new Character("The Hero", 10) {};
+		Character goblin = new Character("A Goblin", 2) {};
+		goblin.getItems().addAll(merged);
+		hero.getItems().add(coin, 4);
+		goblin.giveAllItemsTo(hero);
+		assertTrue(goblin.getItems().isEmpty());
+		assertEquals(20, hero.getItems().count(coin));
+		
+		hero.dropAllItems(hall);
+		assertTrue(hero.getItems().isEmpty());
+		assertEquals(20, hall.getItems().count(coin));
+		assertEquals(1, hall.getItems().count(key));
+		assertEquals(5, hall.getItems().transferTo(hero.getItems(), coin.getId(), 5));
+		assertEquals(15, hall.getItems().count(coin));
+	}
+	
+	@Test
+	public void testTransferOverflow() {
+		Inventory hoard = new Inventory();
+		hoard.add(key, 1);
+		hoard.add(coin, Integer.MAX_VALUE);
+		Inventory purse = new Inventory();
+		purse.add(key, 2);
+		purse.add(coin, 1);
+		
+		try {
+			purse.transferAllTo(hoard);
+			fail("The coins would overflow the hoard");
+		}
+		catch(IllegalArgumentException e) {
+		}
+		assertEquals("Nothing is moved when a stack would overflow", 1, hoard.count(key));
+		assertEquals(Integer.MAX_VALUE, hoard.count(coin));
+		assertEquals(2, purse.count(key));
+		assertEquals(1, purse.count(coin));
+		
+		try {
+			hoard.addAll(purse);
+			fail("The coins would overflow the hoard");
+		}
+		catch(IllegalArgumentException e) {
+		}
+		assertEquals(1, hoard.count(key));
+		assertEquals(Integer.MAX_VALUE + 1L, hoard.getTotalCount());
+	}
+	
+}
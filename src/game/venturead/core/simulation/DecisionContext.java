@@ -0,0 +1,112 @@
+package game.venturead.core.simulation;
+
+import game.venturead.core.characters.Character;
+import game.venturead.core.world.Location;
+import game.venturead.core.world.Route;
+import game.venturead.core.world.World;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * What a <tt>Character</tt> is given to decide with in 
+ * {@link Character#think(DecisionContext)}: where it is, which tick it is,
+ * and a source of randomness that is the same every time the same tick is
+ * replayed.  What it decides is recorded here as {@link Intent}s, and only
+ * carried out once every <tt>Character</tt> has decided, so the 
+ * <tt>World</tt> does not change while they think.
+ * <p>
+ * A <tt>DecisionContext</tt> is reused for every <tt>Character</tt> of one
+ * partition, and must not be kept after <tt>think</tt> returns.
+ * @author recardona
+ */
+public class DecisionContext {
+	
+	private final World world;
+	private final List<Intent> intents;
+	private final Random random;
+	private final long seed;
+	private long tick;
+	private Character character;
+	private Location location;
+	
+	DecisionContext(World world, List<Intent> intents, long seed) {
+		this.world = world;
+		this.intents = intents;
+		this.random = new Random();
+		this.seed = seed;
+	}
+	
+	/**
+	 * Points this context at the next <tt>Character</tt> to decide.
+	 */
+	void reset(long tick, Character character) {
+		this.tick = tick;
+		this.character = character;
+		this.location = world.getLocationOf(character);
+		this.random.setSeed(mix(seed, tick, character.getId()));
+	}
+	
+	/**
+	 * @return the <tt>World</tt> being simulated
+	 */
+	public World getWorld() {
+		return world;
+	}
+	
+	/**
+	 * @return the number of the tick being decided, counting from zero
+	 */
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * @return the <tt>Character</tt> deciding
+	 */
+	public Character getCharacter() {
+		return character;
+	}
+	
+	/**
+	 * @return the <tt>Location</tt> the <tt>Character</tt> is at, or null if it isn't at one
+	 */
+	public Location getLocation() {
+		return location;
+	}
+	
+	/**
+	 * @return randomness seeded by the scheduler's seed, the tick and the <tt>Character</tt>'s id
+	 */
+	public Random getRandom() {
+		return random;
+	}
+	
+	/**
+	 * Decides to walk along <i>route</i>.  The move is refused when the tick
+	 * is merged if the <tt>Route</tt> is locked by then, or the 
+	 * <tt>Character</tt> is no longer at its start.
+	 * @param route a <tt>Route</tt> leaving the <tt>Character</tt>'s <tt>Location</tt>
+	 */
+	public void move(Route route) {
+		intents.add(new Intent(character, Intent.Kind.MOVE, route));
+	}
+	
+	/**
+	 * Decides to toggle the lock of <i>route</i>.  The toggle is refused 
+	 * when the tick is merged if the <tt>Character</tt> is not at either end 
+	 * of the <tt>Route</tt> by then.
+	 * @param route a <tt>Route</tt> leaving or reaching the <tt>Character</tt>'s <tt>Location</tt>
+	 */
+	public void toggleLock(Route route) {
+		intents.add(new Intent(character, Intent.Kind.TOGGLE_LOCK, route));
+	}
+	
+	private static long mix(long seed, long tick, int id) {
+		long hash = seed ^ (tick * 0x9E3779B97F4A7C15L) ^ ((long) id * 0xC2B2AE3D27D4EB4FL);
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
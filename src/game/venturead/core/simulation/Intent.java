@@ -0,0 +1,63 @@
+package game.venturead.core.simulation;
+
+import game.venturead.core.characters.Character;
+import game.venturead.core.world.Route;
+
+/**
+ * Something a <tt>Character</tt> decided to do during a tick, recorded in
+ * its {@link DecisionContext} and carried out when the tick is merged.
+ * @author recardona
+ */
+public class Intent {
+	
+	/**
+	 * The kinds of <tt>Intent</tt> a <tt>Character</tt> can have.
+	 */
+	public enum Kind {
+		
+		/** Walk along a <tt>Route</tt> leaving where the <tt>Character</tt> is */
+		MOVE,
+		
+		/** Toggle the lock of a <tt>Route</tt> */
+		TOGGLE_LOCK
+	}
+	
+	private final Character character;
+	private final Kind kind;
+	private final Route route;
+	
+	Intent(Character character, Kind kind, Route route) {
+		if(route == null) {
+			throw new IllegalArgumentException("An Intent needs a Route.");
+		}
+		this.character = character;
+		this.kind = kind;
+		this.route = route;
+	}
+	
+	/**
+	 * @return the <tt>Character</tt> that has this <tt>Intent</tt>
+	 */
+	public Character getCharacter() {
+		return character;
+	}
+	
+	/**
+	 * @return what the <tt>Character</tt> means to do
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+	
+	/**
+	 * @return the <tt>Route</tt> it means to do it to
+	 */
+	public Route getRoute() {
+		return route;
+	}
+	
+	@Override
+	public String toString() {
+		return character.getName()+" "+kind.name().toLowerCase()+" "+route;
+	}
+}
@@ -0,0 +1,100 @@
+package game.venturead.core.simulation;
+
+/**
+ * How one tick of a {@link TickScheduler} went: how much work there was, and
+ * how long each phase took.
+ * @author recardona
+ */
+public class TickMetrics {
+	
+	private final long tick;
+	private final int characterCount;
+	private final int partitionCount;
+	private final long partitionNanos;
+	private final long decideNanos;
+	private final long mergeNanos;
+	private final int intentsApplied;
+	private final int intentsRefused;
+	
+	TickMetrics(long tick, int characterCount, int partitionCount, long partitionNanos,
+			long decideNanos, long mergeNanos, int intentsApplied, int intentsRefused) {
+		this.tick = tick;
+		this.characterCount = characterCount;
+		this.partitionCount = partitionCount;
+		this.partitionNanos = partitionNanos;
+		this.decideNanos = decideNanos;
+		this.mergeNanos = mergeNanos;
+		this.intentsApplied = intentsApplied;
+		this.intentsRefused = intentsRefused;
+	}
+	
+	/**
+	 * @return the number of the tick, counting from zero
+	 */
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * @return the number of <tt>Character</tt>s that decided
+	 */
+	public int getCharacterCount() {
+		return characterCount;
+	}
+	
+	/**
+	 * @return the number of partitions the <tt>Character</tt>s were split into
+	 */
+	public int getPartitionCount() {
+		return partitionCount;
+	}
+	
+	/**
+	 * @return the time spent splitting the <tt>Character</tt>s into partitions
+	 */
+	public long getPartitionNanos() {
+		return partitionNanos;
+	}
+	
+	/**
+	 * @return the time spent in the parallel decision phase
+	 */
+	public long getDecideNanos() {
+		return decideNanos;
+	}
+	
+	/**
+	 * @return the time spent carrying out the <tt>Intent</tt>s
+	 */
+	public long getMergeNanos() {
+		return mergeNanos;
+	}
+	
+	/**
+	 * @return the time the whole tick took
+	 */
+	public long getTotalNanos() {
+		return partitionNanos + decideNanos + mergeNanos;
+	}
+	
+	/**
+	 * @return the number of <tt>Intent</tt>s carried out
+	 */
+	public int getIntentsApplied() {
+		return intentsApplied;
+	}
+	
+	/**
+	 * @return the number of moves and toggles refused, because a move's <tt>Route</tt> was locked or the <tt>Character</tt> had left either end of it
+	 */
+	public int getIntentsRefused() {
+		return intentsRefused;
+	}
+	
+	@Override
+	public String toString() {
+		return "tick "+tick+": "+characterCount+" characters in "+partitionCount+" partitions, "
+				+intentsApplied+" intents applied, "+intentsRefused+" refused; partition "
+				+partitionNanos/1000+"us, decide "+decideNanos/1000+"us, merge "+mergeNanos/1000+"us";
+	}
+}
@@ -0,0 +1,257 @@
+package game.venturead.core.simulation;
+
+import game.venturead.core.characters.Character;
+import game.venturead.core.world.Location;
+import game.venturead.core.world.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the <tt>Character</tt>s of a <tt>World</tt> one tick at a time.
+ * <p>
+ * Each tick has three phases.  The <tt>Character</tt>s are first sorted by
+ * the id of the <tt>Location</tt> they are at, and cut into partitions of
+ * neighbouring ids.  Every partition then decides in parallel on a 
+ * <tt>ForkJoinPool</tt>, each <tt>Character</tt> recording {@link Intent}s
+ * through {@link Character#think(DecisionContext)} while the <tt>World</tt>
+ * stands still.  Finally the <tt>Intent</tt>s are carried out on the calling
+ * thread in order of <tt>Character</tt> id, and in the order each 
+ * <tt>Character</tt> recorded them, so a tick with the same seed and the
+ * same <tt>World</tt> always ends the same way, however the partitions 
+ * were scheduled.
+ * @author recardona
+ */
+public class TickScheduler {
+	
+	public static final int DEFAULT_PARTITION_SIZE = 256;
+	
+	private static final Comparator<Intent> BY_CHARACTER = new Comparator<Intent>() {
+		@Override
+		public int compare(Intent one, Intent other) {
+			int a = one.getCharacter().getId();
+			int b = other.getCharacter().getId();
+			return a < b ? -1 : (a == b ? 0 : 1);
+		}
+	};
+	
+	private final World world;
+	private final long seed;
+	private final ForkJoinPool pool;
+	private int partitionSize;
+	private long tick;
+	private TickMetrics lastMetrics;
+	
+	private Character[] byId;
+	private Character[] byLocation;
+	private int[] keys;
+	private int[] counts;
+	//reused from tick to tick
+	private int characterCount;
+	//the number of characters deciding this tick
+	private List<List<Intent>> partitionIntents;
+	private List<Intent> merged;
+	
+	/**
+	 * Creates a scheduler that decides on the common <tt>ForkJoinPool</tt>.
+	 * @param world the <tt>World</tt> to simulate
+	 * @param seed seeds every <tt>Character</tt>'s {@link DecisionContext#getRandom()}
+	 */
+	public TickScheduler(World world, long seed) {
+		this(world, seed, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param world the <tt>World</tt> to simulate
+	 * @param seed seeds every <tt>Character</tt>'s {@link DecisionContext#getRandom()}
+	 * @param pool the pool to decide on
+	 */
+	public TickScheduler(World world, long seed, ForkJoinPool pool) {
+		if(world == null || pool == null) {
+			throw new IllegalArgumentException("A TickScheduler needs a World and a ForkJoinPool.");
+		}
+		this.world = world;
+		this.seed = seed;
+		this.pool = pool;
+		this.partitionSize = DEFAULT_PARTITION_SIZE;
+		this.byId = new Character[0];
+		this.byLocation = new Character[0];
+		this.keys = new int[0];
+		this.counts = new int[0];
+		this.partitionIntents = new ArrayList<List<Intent>>();
+		this.merged = new ArrayList<Intent>();
+	}
+	
+	/**
+	 * @return the number of ticks run so far
+	 */
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * @return the metrics of the last tick, or null if none has run
+	 */
+	public TickMetrics getLastMetrics() {
+		return lastMetrics;
+	}
+	
+	/**
+	 * @return the most <tt>Character</tt>s decided by one task
+	 */
+	public int getPartitionSize() {
+		return partitionSize;
+	}
+	
+	/**
+	 * @param partitionSize the most <tt>Character</tt>s to decide in one task
+	 * @throws <tt>IllegalArgumentException</tt> if <i>partitionSize</i> is less than one
+	 */
+	public void setPartitionSize(int partitionSize) {
+		if(partitionSize < 1) {
+			throw new IllegalArgumentException("A partition must hold at least one Character.");
+		}
+		this.partitionSize = partitionSize;
+	}
+	
+	/**
+	 * Runs one tick: every registered <tt>Character</tt> decides, then what
+	 * they decided is carried out.
+	 * @return the metrics of the tick
+	 */
+	public TickMetrics tick() {
+		long started = System.nanoTime();
+		characterCount = partition();
+		int partitionCount = (characterCount + partitionSize - 1) / partitionSize;
+		while(partitionIntents.size() < partitionCount) {
+			partitionIntents.add(new ArrayList<Intent>());
+		}
+		
+		long partitioned = System.nanoTime();
+		if(partitionCount > 0) {
+			pool.invoke(new DecideTask(0, partitionCount));
+		}
+		
+		long decided = System.nanoTime();
+		merged.clear();
+		for(int partition=0; partition<partitionCount; partition++) {
+			merged.addAll(partitionIntents.get(partition));
+			partitionIntents.get(partition).clear();
+		}
+		Collections.sort(merged, BY_CHARACTER);
+			//stable, so each Character's intents stay in the order it recorded them
+		
+		int applied = 0;
+		int refused = 0;
+		for(Intent intent : merged) {
+			if(apply(intent)) {
+				applied++;
+			}
+			else {
+				refused++;
+			}
+		}
+		merged.clear();
+		
+		long finished = System.nanoTime();
+		lastMetrics = new TickMetrics(tick, characterCount, partitionCount, partitioned - started,
+				decided - partitioned, finished - decided, applied, refused);
+		tick++;
+		return lastMetrics;
+	}
+	
+	/**
+	 * Counting-sorts the registered <tt>Character</tt>s into 
+	 * {@link #byLocation} by the id of the <tt>Location</tt> they are at,
+	 * with those that are nowhere first.
+	 * @return the number of <tt>Character</tt>s
+	 */
+	private int partition() {
+		int characterCount = world.getCharacterCount();
+		int locationCount = world.getLocationCount();
+		if(byId.length < characterCount) {
+			byId = new Character[characterCount];
+			byLocation = new Character[characterCount];
+			keys = new int[characterCount];
+		}
+		if(counts.length < locationCount + 2) {
+			counts = new int[locationCount + 2];
+		}
+		else {
+			Arrays.fill(counts, 0);
+		}
+		
+		for(int id=0; id<characterCount; id++) {
+			Character character = world.getCharacter(id);
+			Location location = world.getLocationOf(character);
+			byId[id] = character;
+			keys[id] = location == null ? 0 : location.getId() + 1;
+			counts[keys[id] + 1]++;
+		}
+		for(int key=1; key<counts.length; key++) {
+			counts[key] += counts[key - 1];
+		}
+		for(int id=0; id<characterCount; id++) {
+			byLocation[counts[keys[id]]++] = byId[id];
+		}
+		return characterCount;
+	}
+	
+	private boolean apply(Intent intent) {
+		switch(intent.getKind())
+		{
+			case MOVE:
+				try {
+					return world.moveCharacter(intent.getCharacter(), intent.getRoute());
+				}
+				catch(IllegalArgumentException e) {
+					return false;	//no longer at the start of the route
+				}
+				
+			case TOGGLE_LOCK:
+				return world.toggleRouteLock(intent.getCharacter(), intent.getRoute());
+				
+			default:
+				throw new IllegalArgumentException("Intent " +intent.getKind().name()+" not recognized.");
+		}
+	}
+	
+	/**
+	 * Decides the partitions in [<i>from</i>, <i>to</i>), splitting in half
+	 * until one is left.
+	 */
+	private class DecideTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int from;
+		private final int to;
+		
+		DecideTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new DecideTask(from, middle), new DecideTask(middle, to));
+				return;
+			}
+			
+			List<Intent> intents = partitionIntents.get(from);
+			DecisionContext context = new DecisionContext(world, intents, seed);
+			int end = Math.min(characterCount, (from + 1) * partitionSize);
+			for(int i=from*partitionSize; i<end; i++) {
+				context.reset(tick, byLocation[i]);
+				byLocation[i].think(context);
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package game.venturead.core.simulation.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import game.venturead.core.characters.Character;
+import game.venturead.core.simulation.DecisionContext;
+import game.venturead.core.simulation.TickMetrics;
+import game.venturead.core.simulation.TickScheduler;
+import game.venturead.core.world.Direction;
+import game.venturead.core.world.Location;
+import game.venturead.core.world.Route;
+import game.venturead.core.world.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TickSchedulerTest {
+	
+	/**
+	 * Walks along a random unlocked route every tick, and now and then 
+	 * toggles the lock of one.
+	 */
+	private static class Wanderer extends Character {
+		
+		Wanderer(String name) {
+			super(name, 5);
+		}
+		
+		@Override
+		public void think(DecisionContext context) {
+			List<Route> routes = new ArrayList<Route>(context.getLocation().getConnectingRoutes().values());
+			Route route = routes.get(context.getRandom().nextInt(routes.size()));
+			if(context.getRandom().nextInt(10) == 0) {
+				context.toggleLock(route);
+			}
+			else if(!route.isLocked()) {
+				context.move(route);
+			}
+		}
+	}
+	
+	/**
+	 * Toggles the lock of one route, once.
+	 */
+	private static class Warden extends Character {
+		
+		private final Route route;
+		
+		Warden(Route route) {
+			super("The Warden", 5);
+			this.route = route;
+		}
+		
+		@Override
+		public void think(DecisionContext context) {
+			if(context.getTick() == 0) {
+				context.toggleLock(route);
+			}
+		}
+	}
+	
+	private static World buildWorld(int size, int characters) {
+		World world = new World();
+		Location[][] grid = new Location[size][size];
+		for(int row=0; row<size; row++) {
+			for(int column=0; column<size; column++) {
+				grid[row][column] = world.registerNewLocation("Cell "+row+","+column, "a cell.");
+				if(row > 0) {
+					world.createPath(grid[row][column], Direction.NORTH, grid[row-1][column]);
+				}
+				if(column > 0) {
+					world.createPath(grid[row][column], Direction.WEST, grid[row][column-1]);
+				}
+			}
+		}
+		for(int i=0; i<characters; i++) {
+			world.placeCharacter(new Wanderer("Wanderer "+i), grid[(i * 7) % size][(i * 3) % size]);
+		}
+		return world;
+	}
+	
+	private static List<String> whereEveryoneIs(World world) {
+		List<String> places = new ArrayList<String>();
+		for(int id=0; id<world.getCharacterCount(); id++) {
+			places.add(world.getLocationOf(world.getCharacter(id)).getName());
+		}
+		return places;
+	}
+
+	@Test
+	public void testTicksAreReproducible() {
+		World serial = buildWorld(12, 1000);
+		World parallel = buildWorld(12, 1000);
+		TickScheduler serialScheduler = new TickScheduler(serial, 42L, new ForkJoinPool(1));
+		TickScheduler parallelScheduler = new TickScheduler(parallel, 42L, new ForkJoinPool(4));
+		parallelScheduler.setPartitionSize(7);
+		
+		for(int tick=0; tick<25; tick++) {
+			TickMetrics metrics = serialScheduler.tick();
+			TickMetrics parallelMetrics = parallelScheduler.tick();
+			assertEquals(metrics.getIntentsApplied(), parallelMetrics.getIntentsApplied());
+			assertEquals(metrics.getIntentsRefused(), parallelMetrics.getIntentsRefused());
+		}
+		assertEquals(whereEveryoneIs(serial), whereEveryoneIs(parallel));
+		assertEquals(25, parallelScheduler.getTick());
+	}
+
+	@Test
+	public void testMetrics() {
+		World world = buildWorld(8, 300);
+		TickScheduler scheduler = new TickScheduler(world, 7L);
+		scheduler.setPartitionSize(64);
+		
+		TickMetrics metrics = scheduler.tick();
+		assertSame(metrics, scheduler.getLastMetrics());
+		assertEquals(0, metrics.getTick());
+		assertEquals(300, metrics.getCharacterCount());
+		assertEquals(5, metrics.getPartitionCount());
+		assertEquals(300, metrics.getIntentsApplied() + metrics.getIntentsRefused());
+		assertTrue(metrics.getDecideNanos() >= 0 && metrics.getMergeNanos() >= 0);
+		assertEquals(metrics.getPartitionNanos() + metrics.getDecideNanos() + metrics.getMergeNanos(), metrics.getTotalNanos());
+	}
+
+	@Test
+	public void testMergeFollowsCharacterOrder() {
+		World world = new World();
+		Location hall = world.registerNewLocation("The Hall", "a long hall.");
+		Location vault = world.registerNewLocation("The Vault", "full of gold.");
+		world.createPath(hall, Direction.NORTH, vault);
+		final Route door = hall.getRoute(Direction.NORTH);
+		
+		world.placeCharacter(new Warden(door), vault);
+		Character thief = new Character("The Thief", 3) {
+			@Override
+			public void think(DecisionContext context) {
+				context.move(door);
+			}
+		};
+		world.placeCharacter(thief, hall);
+		
+		TickMetrics metrics = new TickScheduler(world, 1L).tick();
+		assertTrue("The warden's toggle is merged before the thief's move", door.isLocked());
+		assertSame(hall, world.getLocationOf(thief));
+		assertEquals(1, metrics.getIntentsApplied());
+		assertEquals(1, metrics.getIntentsRefused());
+	}
+
+	@Test
+	public void testToggleFromElsewhereIsRefused() {
+		World world = new World();
+		Location hall = world.registerNewLocation("The Hall", "a long hall.");
+		Location vault = world.registerNewLocation("The Vault", "full of gold.");
+		Location tower = world.registerNewLocation("The Tower", "high above.");
+		world.createPath(hall, Direction.NORTH, vault);
+		world.createPath(hall, Direction.UP, tower);
+		Route door = hall.getRoute(Direction.NORTH);
+		
+		world.placeCharacter(new Warden(door), tower);
+		TickMetrics metrics = new TickScheduler(world, 1L).tick();
+		assertFalse("The warden can't reach the door from the tower", door.isLocked());
+		assertEquals(0, metrics.getIntentsApplied());
+		assertEquals(1, metrics.getIntentsRefused());
+	}
+}
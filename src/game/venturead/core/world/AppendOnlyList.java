@@ -0,0 +1,54 @@
+package game.venturead.core.world;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * A <tt>List</tt> that only grows, and can be read without locking while
+ * one thread at a time appends to it.  Appends fill in the next element 
+ * before publishing the new size, and a full array is copied into a larger
+ * one before being published, so a reader that sees a size also sees every
+ * element below it.
+ * @author recardona
+ */
+class AppendOnlyList<T> extends AbstractList<T> {
+	
+	private volatile Object[] elements;
+	private volatile int size;
+	
+	AppendOnlyList() {
+		this.elements = new Object[16];
+		this.size = 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public T get(int index) {
+		int size = this.size;
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+		return (T) elements[index];
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Appends <i>element</i>.  Callers must not append from several threads
+	 * at once.
+	 */
+	@Override
+	public boolean add(T element) {
+		Object[] elements = this.elements;
+		if(size == elements.length) {
+			elements = Arrays.copyOf(elements, size * 2);
+		}
+		elements[size] = element;
+		this.elements = elements;
+		this.size = size + 1;
+		return true;
+	}
+}
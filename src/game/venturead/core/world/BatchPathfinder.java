@@ -0,0 +1,144 @@
+package game.venturead.core.world;
+
+import game.venturead.core.world.World.Path;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers many {@link PathQuery}s at once, spread over several threads.
+ * <p>
+ * Every query of a batch runs against the same frozen copy of the 
+ * <tt>CompiledGraph</tt>, so all of them see one state of the 
+ * <tt>World</tt>'s locks.  Each thread keeps its own {@link DijkstraSearch},
+ * whose arrays it reuses from one query and one batch to the next.
+ * @author recardona
+ */
+class BatchPathfinder {
+	
+	private static final int QUERIES_PER_TASK = 16;
+	
+	private static final ThreadLocal<DijkstraSearch> SEARCHES = new ThreadLocal<DijkstraSearch>() {
+		@Override
+		protected DijkstraSearch initialValue() {
+			return new DijkstraSearch();
+		}
+	};
+	
+	private BatchPathfinder() {
+	}
+	
+	/**
+	 * Answers every query on the common <tt>ForkJoinPool</tt>.
+	 * @param graph a graph that won't change during the batch
+	 * @param queries the queries to answer
+	 * @return the <tt>Path</tt> for each query, in order; null where none exists
+	 */
+	static List<Path<Location>> findPaths(CompiledGraph graph, PathQuery[] queries) {
+		Path<Location>[] results = newResults(queries.length);
+		ForkJoinPool.commonPool().invoke(new BatchTask(graph, queries, results, 0, queries.length));
+		return Arrays.asList(results);
+	}
+	
+	/**
+	 * Answers every query on the given <tt>Executor</tt>, in chunks, and 
+	 * waits for all of them to finish.
+	 * @param graph a graph that won't change during the batch
+	 * @param queries the queries to answer
+	 * @param executor runs the chunks
+	 * @return the <tt>Path</tt> for each query, in order; null where none exists
+	 * @throws <tt>IllegalStateException</tt> if a query fails, or the calling thread is interrupted
+	 */
+	static List<Path<Location>> findPaths(final CompiledGraph graph, final PathQuery[] queries, Executor executor) {
+		final Path<Location>[] results = newResults(queries.length);
+		int chunks = (queries.length + QUERIES_PER_TASK - 1) / QUERIES_PER_TASK;
+		final CountDownLatch finished = new CountDownLatch(chunks);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		
+		for(int chunk=0; chunk<chunks; chunk++) {
+			final int from = chunk * QUERIES_PER_TASK;
+			final int to = Math.min(queries.length, from + QUERIES_PER_TASK);
+			
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						answer(graph, queries, results, from, to);
+					}
+					catch(Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+					finally {
+						finished.countDown();
+					}
+				}
+			});
+		}
+		
+		try {
+			finished.await();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the batch of paths.", e);
+		}
+		
+		if(failure.get() != null) {
+			throw new IllegalStateException("A query of the batch failed.", failure.get());
+		}
+		return Arrays.asList(results);
+	}
+	
+	private static void answer(CompiledGraph graph, PathQuery[] queries, Path<Location>[] results, int from, int to) {
+		DijkstraSearch search = SEARCHES.get();
+		for(int i=from; i<to; i++) {
+			int goal = queries[i].getGoal().id;
+			if(search.search(graph, queries[i].getStart().id, goal)) {
+				results[i] = search.buildPath(graph, goal);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Path<Location>[] newResults(int size) {
+		return (Path<Location>[]) new Path<?>[size];
+	}
+	
+	/**
+	 * Splits a range of queries in halves until it is small enough to answer.
+	 */
+	private static class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final CompiledGraph graph;
+		private final PathQuery[] queries;
+		private final Path<Location>[] results;
+		private final int from;
+		private final int to;
+		
+		BatchTask(CompiledGraph graph, PathQuery[] queries, Path<Location>[] results, int from, int to) {
+			this.graph = graph;
+			this.queries = queries;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= QUERIES_PER_TASK) {
+				answer(graph, queries, results, from, to);
+			}
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BatchTask(graph, queries, results, from, middle), 
+						new BatchTask(graph, queries, results, middle, to));
+			}
+		}
+	}
+}
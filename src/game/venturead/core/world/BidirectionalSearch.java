@@ -0,0 +1,233 @@
+package game.venturead.core.world;
+
+import game.venturead.core.world.World.Path;
+
+import java.util.Arrays;
+
+/**
+ * Single-pair shortest path search that runs Dijkstra forwards from the start
+ * and backwards from the goal, over the incoming edges of the 
+ * <tt>CompiledGraph</tt>.  The side with the cheaper frontier is expanded
+ * next, and the search stops once the two frontiers together cost at least
+ * as much as the best meeting point found so far.  As in 
+ * {@link DijkstraSearch}, the arrays only grow when the <tt>World</tt> does,
+ * and are cleared between queries by moving to a new generation.
+ * @author recardona
+ */
+class BidirectionalSearch {
+	
+	private static final int UNREACHED = DijkstraSearch.UNREACHED;
+	private static final int NO_PARENT = DijkstraSearch.NO_PARENT;
+	
+	private int[] forwardDistance;
+	private int[] forwardParent;
+	private int[] backwardDistance;
+	private int[] backwardParent;
+		//for the backward search, the parent is the next Location towards the goal
+	private int[] forwardLabelled;
+	private int[] backwardLabelled;
+		//labelled[id] == generation if that side's distance[id] and parent[id] belong to the current query
+	private int generation;
+	private IndexedMinHeap forwardFrontier;
+	private IndexedMinHeap backwardFrontier;
+	
+	private int meetingPoint;
+	private long bestCost;
+	
+	BidirectionalSearch() {
+		this.forwardDistance = new int[0];
+		this.forwardParent = new int[0];
+		this.backwardDistance = new int[0];
+		this.backwardParent = new int[0];
+		this.forwardLabelled = new int[0];
+		this.backwardLabelled = new int[0];
+		this.forwardFrontier = new IndexedMinHeap(0);
+		this.backwardFrontier = new IndexedMinHeap(0);
+	}
+	
+	/**
+	 * Runs the search between <i>start</i> and <i>goal</i>.  Locked edges
+	 * are skipped in both directions.
+	 * @param graph the graph to search
+	 * @param start the id of the starting <tt>Location</tt>
+	 * @param goal the id of the target <tt>Location</tt>
+	 * @return true if <i>goal</i> can be reached from <i>start</i>
+	 */
+	boolean search(CompiledGraph graph, int start, int goal) {
+		prepare(graph.getLocationCount());
+		
+		labelForward(start, 0, NO_PARENT);
+		this.forwardFrontier.insertOrDecrease(start, 0);
+		labelBackward(goal, 0, NO_PARENT);
+		this.backwardFrontier.insertOrDecrease(goal, 0);
+		
+		if(start == goal) {
+			this.meetingPoint = start;
+			this.bestCost = 0;
+		}
+		
+		while(!this.forwardFrontier.isEmpty() && !this.backwardFrontier.isEmpty()) {
+			long forwardTop = this.forwardFrontier.peekPriority();
+			long backwardTop = this.backwardFrontier.peekPriority();
+			if(forwardTop + backwardTop >= this.bestCost) {
+				break;
+				//no path through either frontier can beat the best meeting point
+			}
+			
+			if(forwardTop <= backwardTop) {
+				expandForward(graph);
+			}
+			else {
+				expandBackward(graph);
+			}
+		}
+		
+		this.forwardFrontier.clear();
+		this.backwardFrontier.clear();
+		return this.meetingPoint != NO_PARENT;
+	}
+	
+	private void expandForward(CompiledGraph graph) {
+		int current = this.forwardFrontier.poll();
+		int currentDistance = this.forwardDistance[current];
+		int endEdge = graph.endEdge(current);
+		
+		for(int edge = graph.firstEdge(current); edge < endEdge; edge++) {
+			if(graph.isLocked(edge)) {
+				continue;
+			}
+			
+			int next = graph.destinationOf(edge);
+			int nextDistance = currentDistance + graph.costOf(edge);
+			if(nextDistance < forwardDistanceTo(next)) {
+				labelForward(next, nextDistance, current);
+				this.forwardFrontier.insertOrDecrease(next, nextDistance);
+				considerMeetingAt(next);
+			}
+		}
+	}
+	
+	private void expandBackward(CompiledGraph graph) {
+		int current = this.backwardFrontier.poll();
+		int currentDistance = this.backwardDistance[current];
+		int endSlot = graph.endIncoming(current);
+		
+		for(int slot = graph.firstIncoming(current); slot < endSlot; slot++) {
+			int edge = graph.incomingEdge(slot);
+			if(graph.isLocked(edge)) {
+				continue;
+			}
+			
+			int previous = graph.incomingSource(slot);
+			int previousDistance = currentDistance + graph.costOf(edge);
+			if(previousDistance < backwardDistanceTo(previous)) {
+				labelBackward(previous, previousDistance, current);
+				this.backwardFrontier.insertOrDecrease(previous, previousDistance);
+				considerMeetingAt(previous);
+			}
+		}
+	}
+	
+	private void considerMeetingAt(int id) {
+		if(forwardDistanceTo(id) == UNREACHED || backwardDistanceTo(id) == UNREACHED) {
+			return;
+		}
+		
+		long cost = (long) this.forwardDistance[id] + this.backwardDistance[id];
+		if(cost < this.bestCost) {
+			this.bestCost = cost;
+			this.meetingPoint = id;
+		}
+	}
+	
+	/**
+	 * Rebuilds the <tt>Path</tt> found by the last successful search, by 
+	 * following forward parents from the meeting point back to the start, 
+	 * and backward parents from it on to the goal.
+	 * @param graph the graph that was searched
+	 * @return the <tt>Path</tt> from the start of the last search to its goal
+	 */
+	Path<Location> buildPath(CompiledGraph graph) {
+		int forwardSteps = 0;
+		for(int id = this.meetingPoint; id != NO_PARENT; id = forwardParentOf(id)) {
+			forwardSteps++;
+		}
+		int steps = forwardSteps;
+		for(int id = backwardParentOf(this.meetingPoint); id != NO_PARENT; id = backwardParentOf(id)) {
+			steps++;
+		}
+		
+		Location[] items = new Location[steps];
+		int[] costs = new int[steps];
+		int i = forwardSteps;
+		for(int id = this.meetingPoint; id != NO_PARENT; id = forwardParentOf(id)) {
+			i--;
+			items[i] = graph.getLocation(id);
+			costs[i] = this.forwardDistance[id];
+		}
+		
+		int totalCost = (int) this.bestCost;
+		i = forwardSteps;
+		for(int id = backwardParentOf(this.meetingPoint); id != NO_PARENT; id = backwardParentOf(id)) {
+			items[i] = graph.getLocation(id);
+			costs[i] = totalCost - this.backwardDistance[id];
+			i++;
+		}
+		return Path.of(items, costs);
+	}
+	
+	private int forwardDistanceTo(int id) {
+		return this.forwardLabelled[id] == this.generation ? this.forwardDistance[id] : UNREACHED;
+	}
+	
+	private int forwardParentOf(int id) {
+		return this.forwardLabelled[id] == this.generation ? this.forwardParent[id] : NO_PARENT;
+	}
+	
+	private int backwardDistanceTo(int id) {
+		return this.backwardLabelled[id] == this.generation ? this.backwardDistance[id] : UNREACHED;
+	}
+	
+	private int backwardParentOf(int id) {
+		return this.backwardLabelled[id] == this.generation ? this.backwardParent[id] : NO_PARENT;
+	}
+	
+	private void labelForward(int id, int distance, int parent) {
+		this.forwardDistance[id] = distance;
+		this.forwardParent[id] = parent;
+		this.forwardLabelled[id] = this.generation;
+	}
+	
+	private void labelBackward(int id, int distance, int parent) {
+		this.backwardDistance[id] = distance;
+		this.backwardParent[id] = parent;
+		this.backwardLabelled[id] = this.generation;
+	}
+	
+	/**
+	 * Moves to a new generation for a new query, growing the arrays if
+	 * <tt>Location</tt>s have been registered since the last one.
+	 */
+	private void prepare(int size) {
+		if(this.forwardDistance.length < size) {
+			this.forwardDistance = new int[size];
+			this.forwardParent = new int[size];
+			this.backwardDistance = new int[size];
+			this.backwardParent = new int[size];
+			this.forwardLabelled = new int[size];
+			this.backwardLabelled = new int[size];
+			this.forwardFrontier = new IndexedMinHeap(size);
+			this.backwardFrontier = new IndexedMinHeap(size);
+			this.generation = 0;
+		}
+		
+		this.generation++;
+		if(this.generation == 0) {
+			Arrays.fill(this.forwardLabelled, 0);
+			Arrays.fill(this.backwardLabelled, 0);
+			this.generation = 1;
+		}
+		this.meetingPoint = NO_PARENT;
+		this.bestCost = Long.MAX_VALUE;
+	}
+}
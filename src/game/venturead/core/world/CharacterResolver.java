@@ -0,0 +1,18 @@
+package game.venturead.core.world;
+
+import game.venturead.core.characters.Character;
+
+/**
+ * Makes the <tt>Character</tt>s named in a saved <tt>World</tt>, since only
+ * the game knows which kind of <tt>Character</tt> each one is.
+ * @author recardona
+ * @see WorldFile#load(java.io.File, CharacterResolver)
+ */
+public interface CharacterResolver {
+	
+	/**
+	 * @param name the name of a saved <tt>Character</tt>
+	 * @return a fresh, unregistered <tt>Character</tt> to stand for it, or null to leave it out
+	 */
+	Character resolve(String name);
+}
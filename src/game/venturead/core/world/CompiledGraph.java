@@ -0,0 +1,271 @@
+package game.venturead.core.world;
+
+import java.util.List;
+
+/**
+ * A frozen, array-backed view of the <tt>Location</tt>s and <tt>Route</tt>s of
+ * a <tt>World</tt>, in compressed sparse row form.  Every <tt>Location</tt> is
+ * identified by its dense id, and the <tt>Route</tt>s leaving <tt>Location</tt>
+ * <i>id</i> are the edges <tt>firstEdge(id)</tt> up to (but excluding)
+ * <tt>endEdge(id)</tt>, in <tt>Direction</tt> order.  The <tt>Route</tt>s
+ * arriving at <tt>Location</tt> <i>id</i> are listed the same way, between
+ * <tt>firstIncoming(id)</tt> and <tt>endIncoming(id)</tt>, for searches that
+ * run backwards.
+ * <p>
+ * Lock bits are kept in sync with {@link Route#toggleLock()} for as long as
+ * this graph is current.  Registering a <tt>Location</tt> or creating a 
+ * <tt>Route</tt> makes the <tt>World</tt> compile a new graph, after which 
+ * this one is {@link #isStale() stale} and no longer updated.
+ * @author recardona
+ */
+public final class CompiledGraph {
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final Location[] locations;
+	private final int[] edgeOffsets;
+		//edges of location i are edgeOffsets[i] .. edgeOffsets[i+1]-1
+	private final int[] edgeDestinations;
+	private final byte[] edgeDirections;
+		//Direction ordinal of each edge
+	private final int[] edgeCosts;
+	private final long[] lockBits;
+	
+	private final int[] incomingOffsets;
+		//edges arriving at location i are listed at incomingOffsets[i] .. incomingOffsets[i+1]-1
+	private final int[] incomingEdges;
+		//the (forward) edge behind each incoming slot
+	private final int[] incomingSources;
+	
+	private volatile boolean stale;
+	
+	private CompiledGraph(Location[] locations, int[] edgeOffsets, int[] edgeDestinations, byte[] edgeDirections, int[] edgeCosts, long[] lockBits) {
+		this.locations = locations;
+		this.edgeOffsets = edgeOffsets;
+		this.edgeDestinations = edgeDestinations;
+		this.edgeDirections = edgeDirections;
+		this.edgeCosts = edgeCosts;
+		this.lockBits = lockBits;
+		this.stale = false;
+		
+		int locationCount = locations.length;
+		int edgeCount = edgeDestinations.length;
+		this.incomingOffsets = new int[locationCount + 1];
+		this.incomingEdges = new int[edgeCount];
+		this.incomingSources = new int[edgeCount];
+		
+		for(int edge=0; edge<edgeCount; edge++) {
+			this.incomingOffsets[edgeDestinations[edge] + 1]++;
+		}
+		for(int id=0; id<locationCount; id++) {
+			this.incomingOffsets[id + 1] += this.incomingOffsets[id];
+		}
+		
+		int[] nextSlot = new int[locationCount];
+		System.arraycopy(this.incomingOffsets, 0, nextSlot, 0, locationCount);
+		for(int id=0; id<locationCount; id++) {
+			for(int edge=edgeOffsets[id]; edge<edgeOffsets[id + 1]; edge++) {
+				int slot = nextSlot[edgeDestinations[edge]]++;
+				this.incomingEdges[slot] = edge;
+				this.incomingSources[slot] = id;
+			}
+		}
+	}
+	
+	/**
+	 * A copy of <i>graph</i> with its own lock bits, sharing every other array.
+	 */
+	private CompiledGraph(CompiledGraph graph) {
+		this.locations = graph.locations;
+		this.edgeOffsets = graph.edgeOffsets;
+		this.edgeDestinations = graph.edgeDestinations;
+		this.edgeDirections = graph.edgeDirections;
+		this.edgeCosts = graph.edgeCosts;
+		this.lockBits = graph.lockBits.clone();
+		this.incomingOffsets = graph.incomingOffsets;
+		this.incomingEdges = graph.incomingEdges;
+		this.incomingSources = graph.incomingSources;
+		this.stale = true;
+		//nothing will keep the copy in sync
+	}
+	
+	/**
+	 * Compiles the <tt>Route</tt>s of the given <tt>Location</tt>s, and points 
+	 * each <tt>Route</tt> at its edge in the new graph.
+	 * @param locationsById the <tt>Location</tt>s of a <tt>World</tt>, indexed by id
+	 * @return the compiled graph
+	 * @throws <tt>IllegalStateException</tt> if a <tt>Route</tt> leads to a <tt>Location</tt> not in <i>locationsById</i>
+	 */
+	static CompiledGraph compile(List<Location> locationsById) {
+		int locationCount = locationsById.size();
+		Location[] locations = locationsById.toArray(new Location[locationCount]);
+		
+		int[] edgeOffsets = new int[locationCount + 1];
+		for(int id=0; id<locationCount; id++) {
+			edgeOffsets[id + 1] = edgeOffsets[id] + Integer.bitCount(locations[id].getRouteMask());
+		}
+		
+		int edgeCount = edgeOffsets[locationCount];
+		int[] edgeDestinations = new int[edgeCount];
+		byte[] edgeDirections = new byte[edgeCount];
+		int[] edgeCosts = new int[edgeCount];
+		long[] lockBits = new long[(edgeCount + 63) >>> 6];
+		
+		for(int id=0; id<locationCount; id++) {
+			int edge = edgeOffsets[id];
+			for(int mask = locations[id].getRouteMask(); mask != 0; mask &= mask - 1) {
+				Direction direction = DIRECTIONS[Integer.numberOfTrailingZeros(mask)];
+				Route route = locations[id].getRoute(direction);
+				
+				Location destination = route.getDestination();
+				int destinationId = destination.id;
+				if(destinationId < 0 || destinationId >= locationCount || locations[destinationId] != destination) {
+					throw new IllegalStateException("Location "+destination.getName()+" is reachable but not registered in this World.");
+				}
+				
+				edgeDestinations[edge] = destinationId;
+				edgeDirections[edge] = (byte) direction.ordinal();
+				edgeCosts[edge] = route.getCost();
+				if(route.isLocked()) {
+					lockBits[edge >>> 6] |= 1L << edge;
+				}
+				route.compiledEdge = edge;
+				edge++;
+			}
+		}
+		
+		return new CompiledGraph(locations, edgeOffsets, edgeDestinations, edgeDirections, edgeCosts, lockBits);
+	}
+	
+	/**
+	 * @return the number of <tt>Location</tt>s in this graph
+	 */
+	public int getLocationCount() {
+		return this.locations.length;
+	}
+	
+	/**
+	 * @return the number of <tt>Route</tt>s in this graph
+	 */
+	public int getEdgeCount() {
+		return this.edgeDestinations.length;
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the <tt>Location</tt> with that id
+	 */
+	public Location getLocation(int id) {
+		return this.locations[id];
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the first edge leaving that <tt>Location</tt>
+	 */
+	public int firstEdge(int id) {
+		return this.edgeOffsets[id];
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return one past the last edge leaving that <tt>Location</tt>
+	 */
+	public int endEdge(int id) {
+		return this.edgeOffsets[id + 1];
+	}
+	
+	/**
+	 * @param edge an edge
+	 * @return the id of the <tt>Location</tt> the edge leads to
+	 */
+	public int destinationOf(int edge) {
+		return this.edgeDestinations[edge];
+	}
+	
+	/**
+	 * @param edge an edge
+	 * @return the <tt>Direction</tt> of the edge, relative to its source
+	 */
+	public Direction directionOf(int edge) {
+		return DIRECTIONS[this.edgeDirections[edge]];
+	}
+	
+	/**
+	 * @param edge an edge
+	 * @return the traversal cost of the edge
+	 */
+	public int costOf(int edge) {
+		return this.edgeCosts[edge];
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the first incoming slot of that <tt>Location</tt>
+	 */
+	public int firstIncoming(int id) {
+		return this.incomingOffsets[id];
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return one past the last incoming slot of that <tt>Location</tt>
+	 */
+	public int endIncoming(int id) {
+		return this.incomingOffsets[id + 1];
+	}
+	
+	/**
+	 * @param slot an incoming slot
+	 * @return the edge arriving through that slot
+	 */
+	public int incomingEdge(int slot) {
+		return this.incomingEdges[slot];
+	}
+	
+	/**
+	 * @param slot an incoming slot
+	 * @return the id of the <tt>Location</tt> the edge arriving through that slot leaves from
+	 */
+	public int incomingSource(int slot) {
+		return this.incomingSources[slot];
+	}
+	
+	/**
+	 * @param edge an edge
+	 * @return true if the <tt>Route</tt> behind the edge is locked
+	 */
+	public boolean isLocked(int edge) {
+		return (this.lockBits[edge >>> 6] & (1L << edge)) != 0;
+	}
+	
+	/**
+	 * @return true if the <tt>World</tt> has changed shape since this graph was compiled
+	 */
+	public boolean isStale() {
+		return this.stale;
+	}
+	
+	/**
+	 * Returns a read-only copy of this graph, whose lock bits stay as they
+	 * are now whatever happens to the <tt>World</tt>.  Only the lock bits are
+	 * copied, so this costs one bit per edge.
+	 * @return the frozen copy
+	 */
+	CompiledGraph freezeLocks() {
+		return new CompiledGraph(this);
+	}
+	
+	void markStale() {
+		this.stale = true;
+	}
+	
+	void setLocked(int edge, boolean locked) {
+		if(locked) {
+			this.lockBits[edge >>> 6] |= 1L << edge;
+		}
+		else {
+			this.lockBits[edge >>> 6] &= ~(1L << edge);
+		}
+	}
+}
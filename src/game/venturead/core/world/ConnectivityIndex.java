@@ -0,0 +1,259 @@
+package game.venturead.core.world;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers whether one <tt>Location</tt> can be reached from another through
+ * unlocked <tt>Route</tt>s, without searching for a <tt>Path</tt>.
+ * <p>
+ * Keeps a union-find over the unlocked <tt>Route</tt>s, which grows in near
+ * constant time as <tt>Route</tt>s are created or unlocked.  Union-find can't
+ * split a set, so locking a <tt>Route</tt> only marks the index dirty, and it
+ * is rebuilt on the next query.  Union-find also ignores which way a 
+ * <tt>Route</tt> runs: it is exact as long as every unlocked <tt>Route</tt>
+ * has an unlocked <tt>Route</tt> back, which is what 
+ * {@link World#createPath(Location, Direction, Location)} makes.  The index
+ * counts the unlocked <tt>Route</tt>s each way between every pair of
+ * <tt>Location</tt>s, and while any pair is joined one way only, queries
+ * fall back to a breadth-first walk of the <tt>CompiledGraph</tt>.
+ * @author recardona
+ */
+class ConnectivityIndex {
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final List<Location> locationsById;
+	private int[] parent;
+	private byte[] rank;
+	private final Map<Long,int[]> pairs;
+	//by (lower id << 32 | higher id): unlocked routes from the lower id, and from the higher
+	private int oneWayPairs;
+	//pairs joined by unlocked routes one way only
+	private boolean dirty;
+	
+	private int[] queue;
+	private int[] visitedStamp;
+	private int stamp;
+	
+	/**
+	 * @param locationsById the <tt>World</tt>'s <tt>Location</tt>s, indexed by id
+	 */
+	ConnectivityIndex(List<Location> locationsById) {
+		this.locationsById = locationsById;
+		this.parent = new int[0];
+		this.rank = new byte[0];
+		this.queue = new int[0];
+		this.visitedStamp = new int[0];
+		this.pairs = new HashMap<Long,int[]>();
+		this.dirty = true;
+	}
+	
+	/**
+	 * @param from the id of a <tt>Location</tt>
+	 * @param to the id of another <tt>Location</tt>
+	 * @param graph the <tt>World</tt>'s current graph, walked if a <tt>Route</tt> is one-way
+	 * @return true if <i>to</i> can be reached from <i>from</i> through unlocked <tt>Route</tt>s
+	 */
+	boolean canReach(int from, int to, CompiledGraph graph) {
+		if(from == to) {
+			return true;
+		}
+		if(dirty || parent.length != locationsById.size()) {
+			rebuild();
+		}
+		
+		if(find(from) != find(to)) {
+			return false;
+			//not even connected if every route ran both ways
+		}
+		if(oneWayPairs == 0) {
+			return true;
+		}
+		return walk(from, to, graph);
+	}
+	
+	/**
+	 * Called when a <tt>Route</tt> is created between registered <tt>Location</tt>s.
+	 */
+	void routeAdded(Route route) {
+		if(!dirty && !route.isLocked()) {
+			unlocked(route);
+		}
+	}
+	
+	/**
+	 * Called when a <tt>Route</tt> between registered <tt>Location</tt>s is toggled.
+	 */
+	void routeLockToggled(Route route) {
+		if(route.isLocked()) {
+			dirty = true;
+		}
+		else if(!dirty) {
+			unlocked(route);
+		}
+	}
+	
+	/**
+	 * Brings the index up to date with a newly unlocked <tt>Route</tt>.
+	 */
+	private void unlocked(Route route) {
+		int source = route.getSource().id;
+		int destination = route.getDestination().id;
+		if(source < 0 || destination < 0) {
+			return;
+		}
+		if(parent.length != locationsById.size()) {
+			grow();
+		}
+		
+		countUnlocked(source, destination);
+		union(source, destination);
+	}
+	
+	/**
+	 * Counts one more unlocked <tt>Route</tt> from <i>source</i> to
+	 * <i>destination</i>, and whether that joins their pair one way only,
+	 * both ways, or as it was.
+	 */
+	private void countUnlocked(int source, int destination) {
+		if(source == destination) {
+			return;
+		}
+		int lower = Math.min(source, destination);
+		int higher = Math.max(source, destination);
+		Long key = Long.valueOf(((long) lower << 32) | higher);
+		int[] counts = pairs.get(key);
+		if(counts == null) {
+			counts = new int[2];
+			pairs.put(key, counts);
+		}
+		
+		int way = source == lower ? 0 : 1;
+		if(counts[way]++ == 0) {
+			if(counts[1 - way] == 0) {
+				oneWayPairs++;
+			}
+			else {
+				oneWayPairs--;
+				//the pair now runs both ways
+			}
+		}
+	}
+	
+	/**
+	 * Recomputes the whole index from the unlocked <tt>Route</tt>s of the <tt>World</tt>.
+	 */
+	private void rebuild() {
+		int size = locationsById.size();
+		parent = new int[size];
+		rank = new byte[size];
+		for(int id=0; id<size; id++) {
+			parent[id] = id;
+		}
+		pairs.clear();
+		oneWayPairs = 0;
+		
+		for(Location location : locationsById) {
+			for(int mask = location.getUnlockedMask(); mask != 0; mask &= mask - 1) {
+				Route route = location.getRoute(DIRECTIONS[Integer.numberOfTrailingZeros(mask)]);
+				if(route.getDestination().id < 0) {
+					continue;
+				}
+				
+				countUnlocked(location.id, route.getDestination().id);
+				union(location.id, route.getDestination().id);
+			}
+		}
+		dirty = false;
+	}
+	
+	/**
+	 * Makes room for <tt>Location</tt>s registered since the last rebuild.
+	 */
+	private void grow() {
+		int oldSize = parent.length;
+		int size = locationsById.size();
+		parent = Arrays.copyOf(parent, size);
+		rank = Arrays.copyOf(rank, size);
+		for(int id=oldSize; id<size; id++) {
+			parent[id] = id;
+		}
+	}
+	
+	private int find(int id) {
+		int root = id;
+		while(parent[root] != root) {
+			root = parent[root];
+		}
+		
+		while(parent[id] != root) {
+			int next = parent[id];
+			parent[id] = root;
+			id = next;
+		}
+		return root;
+	}
+	
+	private void union(int one, int other) {
+		int oneRoot = find(one);
+		int otherRoot = find(other);
+		if(oneRoot == otherRoot) {
+			return;
+		}
+		
+		if(rank[oneRoot] < rank[otherRoot]) {
+			parent[oneRoot] = otherRoot;
+		}
+		else if(rank[oneRoot] > rank[otherRoot]) {
+			parent[otherRoot] = oneRoot;
+		}
+		else {
+			parent[otherRoot] = oneRoot;
+			rank[oneRoot]++;
+		}
+	}
+	
+	/**
+	 * Breadth-first walk over the unlocked edges of <i>graph</i>, following
+	 * their direction.
+	 */
+	private boolean walk(int from, int to, CompiledGraph graph) {
+		int size = graph.getLocationCount();
+		if(queue.length != size) {
+			queue = new int[size];
+			visitedStamp = new int[size];
+			stamp = 0;
+		}
+		if(++stamp == 0) {
+			Arrays.fill(visitedStamp, 0);
+			stamp = 1;
+		}
+		
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = from;
+		visitedStamp[from] = stamp;
+		
+		while(head < tail) {
+			int current = queue[head++];
+			for(int edge = graph.firstEdge(current); edge < graph.endEdge(current); edge++) {
+				if(graph.isLocked(edge)) {
+					continue;
+				}
+				
+				int next = graph.destinationOf(edge);
+				if(next == to) {
+					return true;
+				}
+				if(visitedStamp[next] != stamp) {
+					visitedStamp[next] = stamp;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,179 @@
+package game.venturead.core.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Assigns every <tt>Location</tt> of a <tt>CompiledGraph</tt> an (x, y, z)
+ * position, derived from the <tt>Direction</tt>s of the <tt>Route</tt>s 
+ * between them.  Each connected part of the <tt>World</tt> is laid out from
+ * its lowest id at the origin; locks are ignored, since they don't move rooms.
+ * <p>
+ * A <tt>Route</tt> whose endpoints were already placed somewhere its 
+ * <tt>Direction</tt> disagrees with closes an inconsistent loop, and is
+ * reported by {@link #getConflicts()}.  Positions are still usable as a
+ * search heuristic then: {@link #estimate(int, int)} is scaled by the cheapest
+ * cost per unit of distance over every edge as actually laid out, so it never
+ * overestimates.
+ * @author recardona
+ */
+public final class CoordinateEmbedding {
+	
+	private final int[] x;
+	private final int[] y;
+	private final int[] z;
+	private final List<Route> conflicts;
+	private final long unitCost;
+	private final long unitDistance;
+		//unitCost/unitDistance is the cheapest cost per unit of distance of any edge
+	
+	private CoordinateEmbedding(int[] x, int[] y, int[] z, List<Route> conflicts, long unitCost, long unitDistance) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.conflicts = Collections.unmodifiableList(conflicts);
+		this.unitCost = unitCost;
+		this.unitDistance = unitDistance;
+	}
+	
+	/**
+	 * Lays out the <tt>Location</tt>s of <i>graph</i>, walking each connected
+	 * part breadth first over incoming and outgoing edges.
+	 * @param graph the graph to lay out
+	 * @return the embedding
+	 */
+	static CoordinateEmbedding embed(CompiledGraph graph) {
+		int locationCount = graph.getLocationCount();
+		int[] x = new int[locationCount];
+		int[] y = new int[locationCount];
+		int[] z = new int[locationCount];
+		boolean[] placed = new boolean[locationCount];
+		int[] queue = new int[locationCount];
+		List<Route> conflicts = new ArrayList<Route>();
+		
+		for(int root=0; root<locationCount; root++) {
+			if(placed[root]) {
+				continue;
+			}
+			
+			placed[root] = true;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = root;
+			
+			while(head < tail) {
+				int current = queue[head++];
+				
+				for(int edge = graph.firstEdge(current); edge < graph.endEdge(current); edge++) {
+					int next = graph.destinationOf(edge);
+					Direction direction = graph.directionOf(edge);
+					if(!placed[next]) {
+						placed[next] = true;
+						x[next] = x[current] + direction.getDeltaX();
+						y[next] = y[current] + direction.getDeltaY();
+						z[next] = z[current] + direction.getDeltaZ();
+						queue[tail++] = next;
+					}
+					else if(x[next] != x[current] + direction.getDeltaX() 
+							|| y[next] != y[current] + direction.getDeltaY() 
+							|| z[next] != z[current] + direction.getDeltaZ()) {
+						conflicts.add(graph.getLocation(current).getRoute(direction));
+					}
+				}
+				
+				for(int slot = graph.firstIncoming(current); slot < graph.endIncoming(current); slot++) {
+					int previous = graph.incomingSource(slot);
+					Direction direction = graph.directionOf(graph.incomingEdge(slot));
+					if(!placed[previous]) {
+						placed[previous] = true;
+						x[previous] = x[current] - direction.getDeltaX();
+						y[previous] = y[current] - direction.getDeltaY();
+						z[previous] = z[current] - direction.getDeltaZ();
+						queue[tail++] = previous;
+					}
+					//conflicts on incoming edges are found when their source is expanded
+				}
+			}
+		}
+		
+		long unitCost = 0;
+		long unitDistance = 0;
+		for(int id=0; id<locationCount; id++) {
+			for(int edge = graph.firstEdge(id); edge < graph.endEdge(id); edge++) {
+				long distance = distance(x, y, z, id, graph.destinationOf(edge));
+				long cost = graph.costOf(edge);
+				if(distance > 0 && (unitDistance == 0 || cost * unitDistance < unitCost * distance)) {
+					unitCost = cost;
+					unitDistance = distance;
+				}
+			}
+		}
+		
+		return new CoordinateEmbedding(x, y, z, conflicts, unitCost, unitDistance);
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the position of that <tt>Location</tt> along the x axis, eastwards
+	 */
+	public int getX(int id) {
+		return x[id];
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the position of that <tt>Location</tt> along the y axis, northwards
+	 */
+	public int getY(int id) {
+		return y[id];
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the position of that <tt>Location</tt> along the z axis, upwards
+	 */
+	public int getZ(int id) {
+		return z[id];
+	}
+	
+	/**
+	 * @return true if every <tt>Route</tt> agrees with the positions of its endpoints
+	 */
+	public boolean isConsistent() {
+		return conflicts.isEmpty();
+	}
+	
+	/**
+	 * @return the <tt>Route</tt>s that close an inconsistent loop
+	 */
+	public List<Route> getConflicts() {
+		return conflicts;
+	}
+	
+	/**
+	 * Estimates the cost of getting from one <tt>Location</tt> to another, 
+	 * without ever overestimating it.  The estimate is consistent, as A* 
+	 * needs: it drops by no more than the cost of any edge taken.
+	 * @param from the id of one <tt>Location</tt>
+	 * @param to the id of another <tt>Location</tt>
+	 * @return a lower bound on the cost of any <tt>Path</tt> between them
+	 */
+	public int estimate(int from, int to) {
+		if(unitCost == 0) {
+			return 0;
+		}
+		return (int) (unitCost * distance(x, y, z, from, to) / unitDistance);
+	}
+	
+	/**
+	 * The number of single <tt>Direction</tt> steps between two positions, 
+	 * with diagonal steps allowed in the plane.
+	 */
+	private static int distance(int[] x, int[] y, int[] z, int from, int to) {
+		int distance = Math.abs(x[from] - x[to]);
+		distance = Math.max(distance, Math.abs(y[from] - y[to]));
+		distance = Math.max(distance, Math.abs(z[from] - z[to]));
+		return distance;
+	}
+}
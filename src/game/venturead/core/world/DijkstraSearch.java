@@ -0,0 +1,160 @@
+package game.venturead.core.world;
+
+import game.venturead.core.world.World.Path;
+
+import java.util.Arrays;
+
+/**
+ * Single-pair shortest path search over the <tt>CompiledGraph</tt> of a 
+ * <tt>World</tt>.  Keeps a distance and a parent entry per <tt>Location</tt> id
+ * and an {@link IndexedMinHeap} for the frontier, so a query costs
+ * O((V+E) log V).  The arrays are reused between queries, and only grow when
+ * the <tt>World</tt> does; rather than being refilled before each query, 
+ * they are cleared by moving to a new generation.  A <tt>DijkstraSearch</tt>
+ * is not thread-safe, so concurrent searches each need their own.
+ * <p>
+ * Given a <tt>CoordinateEmbedding</tt>, the search becomes A*: the frontier is
+ * ordered by distance plus the embedding's estimate of the distance left, 
+ * which steers it towards the goal.
+ * @author recardona
+ */
+class DijkstraSearch {
+	
+	static final int UNREACHED = Integer.MAX_VALUE;
+	static final int NO_PARENT = -1;
+	
+	private int[] distance;
+	private int[] parent;
+	private int[] labelled;
+		//labelled[id] == generation if distance[id] and parent[id] belong to the current query
+	private int generation;
+	private IndexedMinHeap frontier;
+	
+	DijkstraSearch() {
+		this.distance = new int[0];
+		this.parent = new int[0];
+		this.labelled = new int[0];
+		this.frontier = new IndexedMinHeap(0);
+	}
+	
+	/**
+	 * Runs the search from <i>start</i> until <i>goal</i> is settled, or 
+	 * every reachable <tt>Location</tt> has been explored.  Locked edges
+	 * are skipped.
+	 * @param graph the graph to search
+	 * @param start the id of the starting <tt>Location</tt>
+	 * @param goal the id of the target <tt>Location</tt>
+	 * @return true if <i>goal</i> can be reached from <i>start</i>
+	 */
+	boolean search(CompiledGraph graph, int start, int goal) {
+		return search(graph, start, goal, null);
+	}
+	
+	/**
+	 * Runs an A* search from <i>start</i> until <i>goal</i> is settled, or 
+	 * every reachable <tt>Location</tt> has been explored.  Locked edges
+	 * are skipped.
+	 * @param graph the graph to search
+	 * @param start the id of the starting <tt>Location</tt>
+	 * @param goal the id of the target <tt>Location</tt>
+	 * @param heuristic positions to estimate the remaining distance with, or null for plain Dijkstra
+	 * @return true if <i>goal</i> can be reached from <i>start</i>
+	 */
+	boolean search(CompiledGraph graph, int start, int goal, CoordinateEmbedding heuristic) {
+		prepare(graph.getLocationCount());
+		
+		label(start, 0, NO_PARENT);
+		this.frontier.insertOrDecrease(start, heuristic == null ? 0 : heuristic.estimate(start, goal));
+		
+		while(!this.frontier.isEmpty()) {
+			int current = this.frontier.poll();
+			if(current == goal) {
+				this.frontier.clear();
+				return true;
+			}
+			
+			int currentDistance = this.distance[current];
+			int endEdge = graph.endEdge(current);
+			
+			for(int edge = graph.firstEdge(current); edge < endEdge; edge++) {
+				if(graph.isLocked(edge)) {
+					continue;
+				}
+				
+				int next = graph.destinationOf(edge);
+				int nextDistance = currentDistance + graph.costOf(edge);
+				if(this.labelled[next] != this.generation || nextDistance < this.distance[next]) {
+					label(next, nextDistance, current);
+					this.frontier.insertOrDecrease(next, heuristic == null ? nextDistance : nextDistance + heuristic.estimate(next, goal));
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Rebuilds the <tt>Path</tt> to <i>goal</i> found by the last search 
+	 * from the parent array.
+	 * @param graph the graph that was searched
+	 * @param goal the id of a <tt>Location</tt> reached by the last search
+	 * @return the <tt>Path</tt> from the start of the last search to <i>goal</i>
+	 */
+	Path<Location> buildPath(CompiledGraph graph, int goal) {
+		int steps = 0;
+		for(int id = goal; id != NO_PARENT; id = this.parent[id]) {
+			steps++;
+		}
+
+		Location[] items = new Location[steps];
+		int[] costs = new int[steps];
+		for(int id = goal; id != NO_PARENT; id = this.parent[id]) {
+			steps--;
+			items[steps] = graph.getLocation(id);
+			costs[steps] = this.distance[id];
+		}
+		return Path.of(items, costs);
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the distance found to that <tt>Location</tt> by the last search, or {@link #UNREACHED}
+	 */
+	int distanceTo(int id) {
+		return this.labelled[id] == this.generation ? this.distance[id] : UNREACHED;
+	}
+	
+	/**
+	 * @param id a <tt>Location</tt> id
+	 * @return the id of the <tt>Location</tt> preceding it on the last search, or {@link #NO_PARENT}
+	 */
+	int parentOf(int id) {
+		return this.labelled[id] == this.generation ? this.parent[id] : NO_PARENT;
+	}
+	
+	private void label(int id, int distance, int parent) {
+		this.distance[id] = distance;
+		this.parent[id] = parent;
+		this.labelled[id] = this.generation;
+	}
+	
+	/**
+	 * Moves to a new generation for a new query, growing the arrays if 
+	 * <tt>Location</tt>s have been registered since the last one.
+	 */
+	private void prepare(int size) {
+		if(this.distance.length < size) {
+			this.distance = new int[size];
+			this.parent = new int[size];
+			this.labelled = new int[size];
+			this.frontier = new IndexedMinHeap(size);
+			this.generation = 0;
+		}
+		
+		this.generation++;
+		if(this.generation == 0) {
+			Arrays.fill(this.labelled, 0);
+			this.generation = 1;
+		}
+	}
+}
@@ -1,14 +1,48 @@
 package game.venturead.core.world;
 
 /**
- * Represents a direction for orientation in the world.
+ * Represents a direction for orientation in the world.  Each 
+ * <tt>Direction</tt> knows the step it takes along the x (east), y (north)
+ * and z (up) axes; <tt>LEFT</tt> and <tt>RIGHT</tt> are relative to the
+ * viewer, and take no step at all.
  * @author recardona
  */
 public enum Direction {
-	NORTH, SOUTH, EAST, WEST, 
-	NORTHWEST, NORTHEAST,
-	SOUTHWEST, SOUTHEAST,
-	UP, DOWN, LEFT, RIGHT;
+	NORTH(0, 1, 0), SOUTH(0, -1, 0), EAST(1, 0, 0), WEST(-1, 0, 0), 
+	NORTHWEST(-1, 1, 0), NORTHEAST(1, 1, 0),
+	SOUTHWEST(-1, -1, 0), SOUTHEAST(1, -1, 0),
+	UP(0, 0, 1), DOWN(0, 0, -1), LEFT(0, 0, 0), RIGHT(0, 0, 0);
+	
+	private final int deltaX;
+	private final int deltaY;
+	private final int deltaZ;
+	
+	private Direction(int deltaX, int deltaY, int deltaZ) {
+		this.deltaX = deltaX;
+		this.deltaY = deltaY;
+		this.deltaZ = deltaZ;
+	}
+	
+	/**
+	 * @return the step taken along the x axis, eastwards
+	 */
+	public int getDeltaX() {
+		return deltaX;
+	}
+	
+	/**
+	 * @return the step taken along the y axis, northwards
+	 */
+	public int getDeltaY() {
+		return deltaY;
+	}
+	
+	/**
+	 * @return the step taken along the z axis, upwards
+	 */
+	public int getDeltaZ() {
+		return deltaZ;
+	}
 	
 	public static Direction findOppositeDirection(Direction direction) {
 
@@ -0,0 +1,188 @@
+package game.venturead.core.world;
+
+import game.venturead.core.world.World.Path;
+
+import java.util.Arrays;
+
+/**
+ * The distances from one source <tt>Location</tt> to every <tt>Location</tt>
+ * reachable from it through unlocked <tt>Route</tt>s, with the predecessor
+ * of each on a shortest <tt>Path</tt>.  Filled by 
+ * {@link World#computeDistanceField(Location, DistanceField)} and
+ * {@link World#findNearest(Location, LocationMatcher, DistanceField)}.
+ * <p>
+ * A <tt>DistanceField</tt> is meant to be kept and handed back to the 
+ * <tt>World</tt> on every tick: its arrays are only reallocated when the
+ * <tt>World</tt> grows, and are cleared by moving to a new generation 
+ * rather than by being refilled.
+ * @author recardona
+ */
+public class DistanceField {
+	
+	public static final int UNREACHED = DijkstraSearch.UNREACHED;
+	
+	private int[] distance;
+	private int[] parent;
+	private int[] labelled;
+		//labelled[id] == generation if distance[id] and parent[id] belong to the current fill
+	private int[] settled;
+		//settled[id] == generation if distance[id] is final
+	private int generation;
+	private IndexedMinHeap frontier;
+	
+	private CompiledGraph graph;
+	private int source;
+	private int match;
+	
+	public DistanceField() {
+		this.distance = new int[0];
+		this.parent = new int[0];
+		this.labelled = new int[0];
+		this.settled = new int[0];
+		this.frontier = new IndexedMinHeap(0);
+		this.source = -1;
+		this.match = -1;
+	}
+	
+	/**
+	 * Fills this field from <i>source</i>, stopping at the first 
+	 * <tt>Location</tt> that <i>matcher</i> accepts, if any.
+	 * @param graph the graph to search
+	 * @param source the id of the source <tt>Location</tt>
+	 * @param matcher the <tt>Location</tt>s to stop at, or null to cover everything reachable
+	 */
+	void compute(CompiledGraph graph, int source, LocationMatcher matcher) {
+		prepare(graph);
+		this.source = source;
+		this.match = -1;
+		
+		label(source, 0, -1);
+		this.frontier.insertOrDecrease(source, 0);
+		
+		while(!this.frontier.isEmpty()) {
+			int current = this.frontier.poll();
+			this.settled[current] = this.generation;
+			
+			if(matcher != null && matcher.matches(graph.getLocation(current))) {
+				this.match = current;
+				this.frontier.clear();
+				return;
+			}
+			
+			int currentDistance = this.distance[current];
+			int endEdge = graph.endEdge(current);
+			for(int edge = graph.firstEdge(current); edge < endEdge; edge++) {
+				if(graph.isLocked(edge)) {
+					continue;
+				}
+				
+				int next = graph.destinationOf(edge);
+				int nextDistance = currentDistance + graph.costOf(edge);
+				if(this.labelled[next] != this.generation || nextDistance < this.distance[next]) {
+					label(next, nextDistance, current);
+					this.frontier.insertOrDecrease(next, nextDistance);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the source <tt>Location</tt> of the last fill, or null if this field was never filled
+	 */
+	public Location getSource() {
+		return this.source < 0 ? null : this.graph.getLocation(this.source);
+	}
+	
+	/**
+	 * @return the nearest <tt>Location</tt> accepted by the last fill's <tt>LocationMatcher</tt>, or null
+	 */
+	public Location getMatch() {
+		return this.match < 0 ? null : this.graph.getLocation(this.match);
+	}
+	
+	/**
+	 * @param location a <tt>Location</tt> of the <tt>World</tt> this field was filled from
+	 * @return true if the last fill proved a shortest distance to <i>location</i>
+	 */
+	public boolean isReachable(Location location) {
+		return isSettled(location.id);
+	}
+	
+	/**
+	 * @param location a <tt>Location</tt> of the <tt>World</tt> this field was filled from
+	 * @return the shortest distance from the source to <i>location</i>, or {@link #UNREACHED}
+	 */
+	public int getDistance(Location location) {
+		return isSettled(location.id) ? this.distance[location.id] : UNREACHED;
+	}
+	
+	/**
+	 * @param location a <tt>Location</tt> of the <tt>World</tt> this field was filled from
+	 * @return the <tt>Location</tt> before <i>location</i> on a shortest <tt>Path</tt>, or null for the source and unreached <tt>Location</tt>s
+	 */
+	public Location getPredecessor(Location location) {
+		if(!isSettled(location.id) || this.parent[location.id] < 0) {
+			return null;
+		}
+		return this.graph.getLocation(this.parent[location.id]);
+	}
+	
+	/**
+	 * @param location a <tt>Location</tt> of the <tt>World</tt> this field was filled from
+	 * @return a shortest <tt>Path</tt> from the source to <i>location</i>, or null if it wasn't reached
+	 */
+	public Path<Location> getPath(Location location) {
+		int goal = location.id;
+		if(!isSettled(goal)) {
+			return null;
+		}
+		
+		int steps = 0;
+		for(int id = goal; id >= 0; id = this.parent[id]) {
+			steps++;
+		}
+		Location[] items = new Location[steps];
+		int[] costs = new int[steps];
+		for(int id = goal; id >= 0; id = this.parent[id]) {
+			steps--;
+			items[steps] = this.graph.getLocation(id);
+			costs[steps] = this.distance[id];
+		}
+		return Path.of(items, costs);
+	}
+	
+	private boolean isSettled(int id) {
+		return id >= 0 && id < this.settled.length && this.settled[id] == this.generation && this.source >= 0;
+	}
+	
+	private void label(int id, int distance, int parent) {
+		this.distance[id] = distance;
+		this.parent[id] = parent;
+		this.labelled[id] = this.generation;
+	}
+	
+	/**
+	 * Moves to a new generation, growing the arrays if the graph has more 
+	 * <tt>Location</tt>s than the last one.
+	 */
+	private void prepare(CompiledGraph graph) {
+		this.graph = graph;
+		int size = graph.getLocationCount();
+		
+		if(this.distance.length < size) {
+			this.distance = new int[size];
+			this.parent = new int[size];
+			this.labelled = new int[size];
+			this.settled = new int[size];
+			this.frontier = new IndexedMinHeap(size);
+			this.generation = 0;
+		}
+		
+		this.generation++;
+		if(this.generation == 0) {
+			Arrays.fill(this.labelled, 0);
+			Arrays.fill(this.settled, 0);
+			this.generation = 1;
+		}
+	}
+}
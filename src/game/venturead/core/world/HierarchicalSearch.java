@@ -0,0 +1,551 @@
+package game.venturead.core.world;
+
+import game.venturead.core.world.World.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Shortest path search over a two-level hierarchy of a <tt>World</tt>, in the
+ * style of HPA*.  <tt>Location</tt>s are grouped into clusters of nearby 
+ * <tt>Location</tt>s.  A cluster's entrances are the members with a 
+ * <tt>Route</tt> to or from another cluster, and the cheapest cost between 
+ * every pair of entrances, staying inside the cluster, is precomputed.
+ * <p>
+ * A query first searches the small abstract graph of entrances, linked by
+ * those costs and by the <tt>Route</tt>s between clusters, and then refines
+ * only the clusters the abstract <tt>Path</tt> goes through.  Since every 
+ * boundary <tt>Location</tt> is an entrance, the result is a shortest 
+ * <tt>Path</tt>, just like Dijkstra's.
+ * <p>
+ * Creating or toggling a <tt>Route</tt> inside a cluster only marks that 
+ * cluster dirty, and creating one between clusters marks both ends; dirty
+ * clusters are recomputed on the next query.  Toggling a <tt>Route</tt> 
+ * between clusters needs no recomputation at all, since the abstract search
+ * reads its lock from the <tt>CompiledGraph</tt>.  A <tt>Location</tt> 
+ * first seen with no <tt>Route</tt>s is a cluster of its own; once it gains
+ * one it is released and clustered again with its neighbours.
+ * @author recardona
+ */
+class HierarchicalSearch {
+	
+	static final int DEFAULT_CLUSTER_SIZE = 64;
+	
+	private static final int UNREACHED = DijkstraSearch.UNREACHED;
+	private static final int NO_PARENT = DijkstraSearch.NO_PARENT;
+	
+	private final int clusterSize;
+	private final ArrayList<Cluster> clusters;
+	private final ArrayList<Cluster> dirtyClusters;
+	private final ArrayList<Cluster> emptyClusters;
+		//clusters whose only member was released, to be reused
+	private int[] singletons;
+	private int singletonCount;
+		//members of one-member clusters that have gained a Route since the last query
+	private int[] clusterOf;
+		//the cluster of each location id, or -1 if it hasn't been assigned one yet
+	private int[] entranceIndex;
+		//the index of each location among its cluster's entrances, or -1
+	
+	private int[] localDistance;
+	private int[] localParent;
+	private int[] localStamp;
+	private int localGeneration;
+	private IndexedMinHeap localFrontier;
+	
+	private int[] abstractDistance;
+	private int[] abstractParent;
+	private int[] abstractStamp;
+	private int abstractGeneration;
+	private IndexedMinHeap abstractFrontier;
+	private int[] toGoal;
+		//by index of the goal cluster's entrances, the cost from there to the goal
+	
+	HierarchicalSearch(int clusterSize) {
+		if(clusterSize < 1) {
+			throw new IllegalArgumentException("Clusters must hold at least one Location.");
+		}
+		this.clusterSize = clusterSize;
+		this.clusters = new ArrayList<Cluster>();
+		this.dirtyClusters = new ArrayList<Cluster>();
+		this.emptyClusters = new ArrayList<Cluster>();
+		this.singletons = new int[4];
+		this.singletonCount = 0;
+		this.toGoal = new int[0];
+		this.clusterOf = new int[0];
+		this.entranceIndex = new int[0];
+		allocateScratch(0);
+	}
+	
+	/**
+	 * @return the number of <tt>Location</tt>s each cluster is grown to
+	 */
+	int getClusterSize() {
+		return clusterSize;
+	}
+	
+	/**
+	 * @return the number of clusters with members
+	 */
+	int getClusterCount() {
+		return clusters.size() - emptyClusters.size();
+	}
+	
+	/**
+	 * Called when a <tt>Route</tt> is created between registered <tt>Location</tt>s.
+	 */
+	void routeAdded(Route route) {
+		markDirty(route.getSource().id);
+		markDirty(route.getDestination().id);
+		//a route inside a cluster changes its costs; one between clusters adds entrances to both
+		noteSingleton(route.getSource().id);
+		noteSingleton(route.getDestination().id);
+	}
+	
+	/**
+	 * Called when a <tt>Route</tt> between registered <tt>Location</tt>s is toggled.
+	 */
+	void routeLockToggled(Route route) {
+		int source = route.getSource().id;
+		int destination = route.getDestination().id;
+		if(isAssigned(source) && isAssigned(destination) && clusterOf[source] == clusterOf[destination]) {
+			markDirty(source);
+		}
+	}
+	
+	/**
+	 * Finds a shortest <tt>Path</tt> from <i>start</i> to <i>goal</i>.
+	 * @param graph the <tt>World</tt>'s current graph
+	 * @param start the id of the starting <tt>Location</tt>
+	 * @param goal the id of the target <tt>Location</tt>
+	 * @return the <tt>Path</tt>, or null if <i>goal</i> can't be reached
+	 */
+	Path<Location> findPath(CompiledGraph graph, int start, int goal) {
+		update(graph);
+		if(start == goal) {
+			return Path.of(new Object[] {graph.getLocation(start)}, new int[] {0});
+		}
+		
+		int goalNode = graph.getLocationCount();
+		//a virtual node standing for the goal, reached from the goal cluster's entrances
+		Cluster goalCluster = clusters.get(clusterOf[goal]);
+		Cluster startCluster = clusters.get(clusterOf[start]);
+		
+		localSearch(graph, goalCluster, goal, true);
+		if(toGoal.length < goalCluster.entrances.length) {
+			toGoal = new int[goalCluster.entrances.length];
+		}
+		for(int i=0; i<goalCluster.entrances.length; i++) {
+			toGoal[i] = localDistanceTo(goalCluster.entrances[i]);
+		}
+		
+		nextAbstractGeneration();
+		localSearch(graph, startCluster, start, false);
+		for(int entrance : startCluster.entrances) {
+			int distance = localDistanceTo(entrance);
+			if(distance != UNREACHED) {
+				relax(entrance, distance, entrance == start ? NO_PARENT : start);
+			}
+		}
+		if(startCluster == goalCluster && localDistanceTo(goal) != UNREACHED) {
+			relax(goalNode, localDistanceTo(goal), start);
+		}
+		
+		boolean found = false;
+		while(!abstractFrontier.isEmpty()) {
+			int current = abstractFrontier.poll();
+			if(current == goalNode) {
+				found = true;
+				break;
+			}
+			
+			int currentDistance = abstractDistance[current];
+			Cluster cluster = clusters.get(clusterOf[current]);
+			int index = entranceIndex[current];
+			
+			if(cluster == goalCluster && toGoal[index] != UNREACHED) {
+				relax(goalNode, currentDistance + toGoal[index], current);
+			}
+			
+			int entranceCount = cluster.entrances.length;
+			for(int other=0; other<entranceCount; other++) {
+				int cost = cluster.costs[index * entranceCount + other];
+				if(other != index && cost != UNREACHED) {
+					relax(cluster.entrances[other], currentDistance + cost, current);
+				}
+			}
+			
+			for(int edge = graph.firstEdge(current); edge < graph.endEdge(current); edge++) {
+				int next = graph.destinationOf(edge);
+				if(!graph.isLocked(edge) && clusterOf[next] != cluster.id) {
+					relax(next, currentDistance + graph.costOf(edge), current);
+				}
+			}
+		}
+		abstractFrontier.clear();
+		
+		if(!found) {
+			return null;
+		}
+		return refine(graph, start, goal, goalNode);
+	}
+	
+	/**
+	 * Turns the abstract <tt>Path</tt> ending at <i>goalNode</i> into 
+	 * <tt>Location</tt>s, by searching each cluster it crosses again.
+	 */
+	private Path<Location> refine(CompiledGraph graph, int start, int goal, int goalNode) {
+		int steps = 0;
+		for(int node = abstractParent[goalNode]; node != NO_PARENT && node != start; node = abstractParent[node]) {
+			steps++;
+		}
+		
+		int[] waypoints = new int[steps + 2];
+		waypoints[0] = start;
+		waypoints[steps + 1] = goal;
+		int i = steps;
+		for(int node = abstractParent[goalNode]; node != NO_PARENT && node != start; node = abstractParent[node]) {
+			waypoints[i--] = node;
+		}
+		
+		Path<Location> path = new Path<Location>(graph.getLocation(start), 0);
+		for(int w=1; w<waypoints.length; w++) {
+			int from = waypoints[w - 1];
+			int to = waypoints[w];
+			if(from == to) {
+				continue;
+			}
+			
+			if(clusterOf[from] == clusterOf[to]) {
+				path = appendLocalPath(graph, path, from, to);
+			}
+			else {
+				path = path.append(graph.getLocation(to), cheapestEdgeCost(graph, from, to));
+			}
+		}
+		return path.seal();
+	}
+	
+	private Path<Location> appendLocalPath(CompiledGraph graph, Path<Location> path, int from, int to) {
+		localSearch(graph, clusters.get(clusterOf[from]), from, false);
+		
+		int steps = 0;
+		for(int id = to; id != from; id = localParent[id]) {
+			steps++;
+		}
+		int[] ids = new int[steps];
+		for(int id = to; id != from; id = localParent[id]) {
+			ids[--steps] = id;
+		}
+		
+		int previousDistance = 0;
+		for(int id : ids) {
+			path = path.append(graph.getLocation(id), localDistance[id] - previousDistance);
+			previousDistance = localDistance[id];
+		}
+		return path;
+	}
+	
+	private static int cheapestEdgeCost(CompiledGraph graph, int from, int to) {
+		int cheapest = UNREACHED;
+		for(int edge = graph.firstEdge(from); edge < graph.endEdge(from); edge++) {
+			if(graph.destinationOf(edge) == to && !graph.isLocked(edge)) {
+				cheapest = Math.min(cheapest, graph.costOf(edge));
+			}
+		}
+		return cheapest;
+	}
+	
+	private void relax(int node, int distance, int parent) {
+		if(abstractStamp[node] != abstractGeneration || distance < abstractDistance[node]) {
+			abstractStamp[node] = abstractGeneration;
+			abstractDistance[node] = distance;
+			abstractParent[node] = parent;
+			abstractFrontier.insertOrDecrease(node, distance);
+		}
+	}
+	
+	/**
+	 * Brings the clusters up to date: assigns <tt>Location</tt>s registered
+	 * since the last query to clusters, clusters again those that were alone
+	 * and have gained <tt>Route</tt>s, then recomputes every dirty cluster.
+	 */
+	private void update(CompiledGraph graph) {
+		int locationCount = graph.getLocationCount();
+		if(clusterOf.length < locationCount) {
+			int assigned = clusterOf.length;
+			clusterOf = Arrays.copyOf(clusterOf, locationCount);
+			entranceIndex = Arrays.copyOf(entranceIndex, locationCount);
+			Arrays.fill(clusterOf, assigned, locationCount, -1);
+			Arrays.fill(entranceIndex, assigned, locationCount, -1);
+			allocateScratch(locationCount);
+			
+			for(int id=assigned; id<locationCount; id++) {
+				if(clusterOf[id] < 0) {
+					assign(graph, id);
+				}
+			}
+		}
+		
+		if(singletonCount > 0) {
+			for(int i=0; i<singletonCount; i++) {
+				release(singletons[i]);
+			}
+			for(int i=0; i<singletonCount; i++) {
+				if(clusterOf[singletons[i]] < 0) {
+					assign(graph, singletons[i]);
+				}
+			}
+			singletonCount = 0;
+		}
+		
+		for(Cluster cluster : dirtyClusters) {
+			recompute(graph, cluster);
+			cluster.dirty = false;
+		}
+		dirtyClusters.clear();
+	}
+	
+	/**
+	 * Puts a new <tt>Location</tt> into the cluster of a neighbour that still
+	 * has room, or else grows a new cluster from it, breadth first over the
+	 * other unassigned <tt>Location</tt>s.
+	 */
+	private void assign(CompiledGraph graph, int id) {
+		for(int edge = graph.firstEdge(id); edge < graph.endEdge(id); edge++) {
+			int neighbour = graph.destinationOf(edge);
+			if(clusterOf[neighbour] >= 0 && clusters.get(clusterOf[neighbour]).memberCount < clusterSize) {
+				join(graph, clusters.get(clusterOf[neighbour]), id);
+				return;
+			}
+		}
+		
+		Cluster cluster;
+		if(emptyClusters.isEmpty()) {
+			cluster = new Cluster(clusters.size());
+			clusters.add(cluster);
+		}
+		else {
+			cluster = emptyClusters.remove(emptyClusters.size() - 1);
+		}
+		join(graph, cluster, id);
+		
+		for(int member=0; member<cluster.memberCount && cluster.memberCount < clusterSize; member++) {
+			int current = cluster.members[member];
+			for(int edge = graph.firstEdge(current); edge < graph.endEdge(current) && cluster.memberCount < clusterSize; edge++) {
+				int next = graph.destinationOf(edge);
+				if(clusterOf[next] < 0) {
+					join(graph, cluster, next);
+				}
+			}
+			for(int slot = graph.firstIncoming(current); slot < graph.endIncoming(current) && cluster.memberCount < clusterSize; slot++) {
+				int previous = graph.incomingSource(slot);
+				if(clusterOf[previous] < 0) {
+					join(graph, cluster, previous);
+				}
+			}
+		}
+	}
+	
+	private void join(CompiledGraph graph, Cluster cluster, int id) {
+		cluster.add(id);
+		clusterOf[id] = cluster.id;
+		markDirty(id);
+		
+		for(int edge = graph.firstEdge(id); edge < graph.endEdge(id); edge++) {
+			markDirty(graph.destinationOf(edge));
+		}
+		for(int slot = graph.firstIncoming(id); slot < graph.endIncoming(id); slot++) {
+			markDirty(graph.incomingSource(slot));
+		}
+	}
+	
+	/**
+	 * Remembers a <tt>Location</tt> that has gained a <tt>Route</tt>, if it
+	 * is alone in its cluster, to be clustered again on the next query.
+	 */
+	private void noteSingleton(int id) {
+		if(!isAssigned(id) || clusters.get(clusterOf[id]).memberCount != 1) {
+			return;
+		}
+		if(singletonCount == singletons.length) {
+			singletons = Arrays.copyOf(singletons, singletonCount * 2);
+		}
+		singletons[singletonCount++] = id;
+	}
+	
+	/**
+	 * Takes a <tt>Location</tt> out of its one-member cluster, leaving it
+	 * unassigned and the cluster empty.
+	 */
+	private void release(int id) {
+		if(clusterOf[id] < 0) {
+			return;
+			//noted more than once
+		}
+		Cluster cluster = clusters.get(clusterOf[id]);
+		if(cluster.memberCount != 1) {
+			return;
+			//another Location has joined it since
+		}
+		if(cluster.entrances != null) {
+			for(int entrance : cluster.entrances) {
+				entranceIndex[entrance] = -1;
+			}
+		}
+		cluster.entrances = null;
+		cluster.costs = null;
+		cluster.memberCount = 0;
+		clusterOf[id] = -1;
+		emptyClusters.add(cluster);
+	}
+	
+	/**
+	 * Finds the entrances of <i>cluster</i>, and the cheapest cost between
+	 * each pair of them through unlocked <tt>Route</tt>s inside it.
+	 */
+	private void recompute(CompiledGraph graph, Cluster cluster) {
+		if(cluster.entrances != null) {
+			for(int entrance : cluster.entrances) {
+				entranceIndex[entrance] = -1;
+			}
+		}
+		
+		int entranceCount = 0;
+		int[] entrances = new int[cluster.memberCount];
+		for(int m=0; m<cluster.memberCount; m++) {
+			int member = cluster.members[m];
+			if(isEntrance(graph, cluster, member)) {
+				entranceIndex[member] = entranceCount;
+				entrances[entranceCount++] = member;
+			}
+		}
+		cluster.entrances = Arrays.copyOf(entrances, entranceCount);
+		
+		cluster.costs = new int[entranceCount * entranceCount];
+		for(int i=0; i<entranceCount; i++) {
+			localSearch(graph, cluster, cluster.entrances[i], false);
+			for(int j=0; j<entranceCount; j++) {
+				cluster.costs[i * entranceCount + j] = localDistanceTo(cluster.entrances[j]);
+			}
+		}
+	}
+	
+	private boolean isEntrance(CompiledGraph graph, Cluster cluster, int id) {
+		for(int edge = graph.firstEdge(id); edge < graph.endEdge(id); edge++) {
+			if(clusterOf[graph.destinationOf(edge)] != cluster.id) {
+				return true;
+			}
+		}
+		for(int slot = graph.firstIncoming(id); slot < graph.endIncoming(id); slot++) {
+			if(clusterOf[graph.incomingSource(slot)] != cluster.id) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Dijkstra from <i>source</i> over the unlocked edges inside <i>cluster</i>,
+	 * following incoming edges instead if <i>backward</i>.
+	 */
+	private void localSearch(CompiledGraph graph, Cluster cluster, int source, boolean backward) {
+		if(++localGeneration == 0) {
+			Arrays.fill(localStamp, 0);
+			localGeneration = 1;
+		}
+		
+		localStamp[source] = localGeneration;
+		localDistance[source] = 0;
+		localParent[source] = NO_PARENT;
+		localFrontier.insertOrDecrease(source, 0);
+		
+		while(!localFrontier.isEmpty()) {
+			int current = localFrontier.poll();
+			int currentDistance = localDistance[current];
+			
+			int first = backward ? graph.firstIncoming(current) : graph.firstEdge(current);
+			int end = backward ? graph.endIncoming(current) : graph.endEdge(current);
+			for(int i = first; i < end; i++) {
+				int edge = backward ? graph.incomingEdge(i) : i;
+				int next = backward ? graph.incomingSource(i) : graph.destinationOf(edge);
+				if(graph.isLocked(edge) || clusterOf[next] != cluster.id) {
+					continue;
+				}
+				
+				int nextDistance = currentDistance + graph.costOf(edge);
+				if(localStamp[next] != localGeneration || nextDistance < localDistance[next]) {
+					localStamp[next] = localGeneration;
+					localDistance[next] = nextDistance;
+					localParent[next] = current;
+					localFrontier.insertOrDecrease(next, nextDistance);
+				}
+			}
+		}
+	}
+	
+	private int localDistanceTo(int id) {
+		return localStamp[id] == localGeneration ? localDistance[id] : UNREACHED;
+	}
+	
+	private void nextAbstractGeneration() {
+		if(++abstractGeneration == 0) {
+			Arrays.fill(abstractStamp, 0);
+			abstractGeneration = 1;
+		}
+	}
+	
+	private boolean isAssigned(int id) {
+		return id >= 0 && id < clusterOf.length && clusterOf[id] >= 0;
+	}
+	
+	private void markDirty(int id) {
+		if(isAssigned(id)) {
+			Cluster cluster = clusters.get(clusterOf[id]);
+			if(!cluster.dirty) {
+				cluster.dirty = true;
+				dirtyClusters.add(cluster);
+			}
+		}
+	}
+	
+	private void allocateScratch(int locationCount) {
+		localDistance = new int[locationCount];
+		localParent = new int[locationCount];
+		localStamp = new int[locationCount];
+		localGeneration = 0;
+		localFrontier = new IndexedMinHeap(locationCount);
+		
+		abstractDistance = new int[locationCount + 1];
+		abstractParent = new int[locationCount + 1];
+		abstractStamp = new int[locationCount + 1];
+		abstractGeneration = 0;
+		abstractFrontier = new IndexedMinHeap(locationCount + 1);
+	}
+	
+	/**
+	 * A group of nearby <tt>Location</tt>s, with its entrances and the costs
+	 * between them.
+	 */
+	private static class Cluster {
+		final int id;
+		int[] members;
+		int memberCount;
+		int[] entrances;
+		int[] costs;
+			//costs[i * entrances.length + j] is the cheapest cost from entrance i to entrance j
+		boolean dirty;
+		
+		Cluster(int id) {
+			this.id = id;
+			this.members = new int[4];
+		}
+		
+		void add(int id) {
+			if(memberCount == members.length) {
+				members = Arrays.copyOf(members, memberCount * 2);
+			}
+			members[memberCount++] = id;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package game.venturead.core.world;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over the dense integer ids <tt>0..capacity-1</tt>, keyed
+ * by an <tt>int</tt> priority.  Each id can be in the heap at most once; its
+ * position is tracked so that its priority can be lowered in O(log n).
+ * @author recardona
+ */
+class IndexedMinHeap {
+	
+	private int[] heap;
+		//heap[i] is the id stored at heap slot i
+	private int[] positionOf;
+		//positionOf[id] is the heap slot of id, or -1 if it isn't in the heap
+	private int[] priorityOf;
+	private int size;
+	
+	IndexedMinHeap(int capacity) {
+		this.heap = new int[capacity];
+		this.positionOf = new int[capacity];
+		this.priorityOf = new int[capacity];
+		Arrays.fill(this.positionOf, -1);
+		this.size = 0;
+	}
+	
+	/**
+	 * @return the number of ids this heap can hold
+	 */
+	int capacity() {
+		return this.heap.length;
+	}
+	
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+	
+	boolean contains(int id) {
+		return this.positionOf[id] >= 0;
+	}
+	
+	/**
+	 * Empties the heap, so it can be reused for another search.
+	 */
+	void clear() {
+		for(int i=0; i<this.size; i++) {
+			this.positionOf[this.heap[i]] = -1;
+		}
+		this.size = 0;
+	}
+	
+	/**
+	 * Inserts <i>id</i> with the given priority, or lowers its priority if
+	 * it is already in the heap and <i>priority</i> is smaller.
+	 * @param id the id to insert
+	 * @param priority its priority; smaller comes out first
+	 */
+	void insertOrDecrease(int id, int priority) {
+		int position = this.positionOf[id];
+		
+		if(position < 0) {
+			position = this.size++;
+			this.heap[position] = id;
+			this.positionOf[id] = position;
+			this.priorityOf[id] = priority;
+			siftUp(position);
+		}
+		
+		else if(priority < this.priorityOf[id]) {
+			this.priorityOf[id] = priority;
+			siftUp(position);
+		}
+	}
+	
+	/**
+	 * @return the smallest priority in the heap
+	 * @throws <tt>IllegalStateException</tt> if the heap is empty
+	 */
+	int peekPriority() {
+		if(this.size == 0) {
+			throw new IllegalStateException("The heap is empty.");
+		}
+		return this.priorityOf[this.heap[0]];
+	}
+	
+	/**
+	 * Removes and returns the id with the smallest priority.
+	 * @return the id with the smallest priority
+	 * @throws <tt>IllegalStateException</tt> if the heap is empty
+	 */
+	int poll() {
+		if(this.size == 0) {
+			throw new IllegalStateException("The heap is empty.");
+		}
+		
+		int top = this.heap[0];
+		this.positionOf[top] = -1;
+		this.size--;
+		
+		if(this.size > 0) {
+			int last = this.heap[this.size];
+			this.heap[0] = last;
+			this.positionOf[last] = 0;
+			siftDown(0);
+		}
+		
+		return top;
+	}
+	
+	private void siftUp(int position) {
+		int id = this.heap[position];
+		int priority = this.priorityOf[id];
+		
+		while(position > 0) {
+			int parent = (position - 1) >>> 1;
+			int parentId = this.heap[parent];
+			if(this.priorityOf[parentId] <= priority) {
+				break;
+			}
+			
+			this.heap[position] = parentId;
+			this.positionOf[parentId] = position;
+			position = parent;
+		}
+		
+		this.heap[position] = id;
+		this.positionOf[id] = position;
+	}
+	
+	private void siftDown(int position) {
+		int id = this.heap[position];
+		int priority = this.priorityOf[id];
+		int half = this.size >>> 1;
+		
+		while(position < half) {
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if(right < this.size && this.priorityOf[this.heap[right]] < this.priorityOf[this.heap[child]]) {
+				child = right;
+			}
+			
+			int childId = this.heap[child];
+			if(priority <= this.priorityOf[childId]) {
+				break;
+			}
+			
+			this.heap[position] = childId;
+			this.positionOf[childId] = position;
+			position = child;
+		}
+		
+		this.heap[position] = id;
+		this.positionOf[id] = position;
+	}
+}
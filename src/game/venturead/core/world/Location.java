@@ -1,8 +1,21 @@
 package game.venturead.core.world;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map.Entry;
+import game.venturead.core.characters.Character;
+import game.venturead.core.items.Inventory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * A Location represents a place that you can inhabit.  
@@ -12,17 +25,57 @@ import java.util.Map.Entry;
  */
 public class Location 
 {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
 	private String name;
-	private String description;
-	private HashMap<Direction,Route> connectingRoutes;
-	private ArrayList<Character> charactersThatAreHere;
+	private volatile String description;
+	//null while the description is kept only in its source
+	private StringSource descriptionSource;
+	private int descriptionIndex;
+	//where the description is kept off the heap: the StringStore of the World, or a mapped WorldFile
+	private final Route[] routesByDirection;
+	//indexed by Direction ordinal
+	private volatile int routeMask;
+	//bit d is set if there is a Route at the Direction with ordinal d
+	private volatile int lockMask;
+	//bit d is set if that Route is locked
+	private final Map<Direction,Route> connectingRoutes;
+	//a read-only view over routesByDirection
+	private Character[] occupants;
+	//the characters that are here, packed at the front in no particular order;
+	//guarded by this location's stripe in its World
+	private int occupantCount;
+	private final List<Character> charactersThatAreHere;
+	//a read-only view over occupants
+	private final Inventory items;
+	//what lies here
+	
+	int id;
+	//dense index assigned by the World this Location is registered in; -1 otherwise
+	World world;
+	//the World this Location is registered in, if any
+	volatile int routeVersion;
+	//moves on whenever a Route is added, so rendered exits are redone
+	volatile int occupantVersion;
+	//moves on whenever a Character arrives or leaves
+	volatile RenderedFragment headingFragment;
+	volatile RenderedFragment exitsFragment;
+	volatile RenderedFragment occupantsFragment;
+	//cached by LocationRenderer
 	
-	private Location(String name, String description, HashMap<Direction,Route> routes, ArrayList<Character> characters)
+	private Location(String name, String description)
 	{
 		this.name = name;
 		this.description = description;
-		this.connectingRoutes = routes;
-		this.charactersThatAreHere = characters;
+		this.routesByDirection = new Route[DIRECTIONS.length];
+		this.routeMask = 0;
+		this.lockMask = 0;
+		this.connectingRoutes = new RouteTableView();
+		this.occupants = new Character[0];
+		this.occupantCount = 0;
+		this.charactersThatAreHere = new OccupantView();
+		this.items = new Inventory();
+		this.id = -1;
 	}
 
 	/**
@@ -32,38 +85,211 @@ public class Location
 		return this.name;
 	}
 	
+	/**
+	 * @return the description, decoded afresh each time if it is kept off the heap and its region isn't paged in
+	 */
 	public String getDescription() {
-		return this.description;
+		String description = this.description;
+		if(description == null && this.descriptionSource != null) {
+			World world = this.world;
+			if(world != null && world.pager != null) {
+				world.pager.touch(this);
+				description = this.description;
+			}
+			if(description == null) {
+				description = this.descriptionSource.get(this.descriptionIndex);
+			}
+		}
+		return description;
+	}
+	
+	/**
+	 * Keeps the description of this <tt>Location</tt> off the heap, decoding
+	 * it only when it is asked for.
+	 * @param source where the description is kept
+	 * @param index the index of the description in it
+	 */
+	void setDescriptionSource(StringSource source, int index) {
+		this.descriptionSource = source;
+		this.descriptionIndex = index;
+		this.description = null;
+	}
+	
+	/**
+	 * @return how many bytes the description takes in UTF-8
+	 */
+	int getDescriptionByteLength() {
+		if(this.descriptionSource != null) {
+			return this.descriptionSource.getByteLength(this.descriptionIndex);
+		}
+		return String.valueOf(this.description).getBytes(RenderedFragment.UTF8).length;
+	}
+	
+	/**
+	 * Writes the description as UTF-8, copied straight from where it is kept
+	 * if that is off the heap.
+	 * @param out where to write it
+	 * @throws IOException if <i>out</i> does
+	 */
+	void writeDescription(OutputStream out) throws IOException {
+		if(this.descriptionSource != null) {
+			this.descriptionSource.writeTo(this.descriptionIndex, out);
+		}
+		else {
+			out.write(String.valueOf(this.description).getBytes(RenderedFragment.UTF8));
+		}
+	}
+	
+	/**
+	 * Puts the description as UTF-8, copied straight from where it is kept
+	 * if that is off the heap.
+	 * @param out where to put it
+	 * @throws <tt>BufferOverflowException</tt> if <i>out</i> has too little room
+	 */
+	void writeDescription(ByteBuffer out) {
+		if(this.descriptionSource != null) {
+			this.descriptionSource.writeTo(this.descriptionIndex, out);
+		}
+		else {
+			out.put(String.valueOf(this.description).getBytes(RenderedFragment.UTF8));
+		}
+	}
+	
+	/**
+	 * Decodes the description of this <tt>Location</tt> into the heap, if it
+	 * is kept off it, until {@link #pageOut()}.
+	 * @return roughly how many bytes its contents take up, or 0 if it can't be paged
+	 */
+	long pageIn() {
+		if(this.descriptionSource == null) {
+			return 0;
+		}
+		String description = this.description;
+		if(description == null) {
+			description = this.descriptionSource.get(this.descriptionIndex);
+			this.description = description;
+		}
+		return 48 + 2L * description.length();
+	}
+	
+	/**
+	 * Drops the decoded description and rendered text of this 
+	 * <tt>Location</tt>, if its description is kept off the heap; they are
+	 * made again when next asked for.
+	 */
+	void pageOut() {
+		if(this.descriptionSource != null) {
+			this.description = null;
+			this.headingFragment = null;
+			this.exitsFragment = null;
+			this.occupantsFragment = null;
+		}
+	}
+	
+	/**
+	 * @return the id of this <tt>Location</tt> in its <tt>World</tt>, or -1 if it isn't registered in one
+	 */
+	public int getId() {
+		return this.id;
 	}
 
 	/**
-	 * @return the connectingRoutes
+	 * @return a read-only view of the <tt>Route</tt>s leaving this <tt>Location</tt>, by <tt>Direction</tt>
 	 */
-	public HashMap<Direction,Route> getConnectingRoutes() {
+	public Map<Direction,Route> getConnectingRoutes() {
 		return this.connectingRoutes;
 	}
 	
 	/**
-	 * @return the <tt>HashMap</tt> of <tt>Route</tt>s that are unlocked from this <tt>Location</tt>
+	 * @return a new <tt>Map</tt> of the <tt>Route</tt>s that are unlocked from this <tt>Location</tt>
 	 */
-	public HashMap<Direction,Route> getUnlockedRoutes() {
-		HashMap<Direction,Route> connectingRoutes = this.getConnectingRoutes();
-		for(Entry<Direction,Route> routeInformation : connectingRoutes.entrySet()) {
-			if(routeInformation.getValue().isLocked())
-				connectingRoutes.remove(routeInformation.getKey());
-			//remove from connecting Routes all those that are locked
+	public Map<Direction,Route> getUnlockedRoutes() {
+		EnumMap<Direction,Route> unlockedRoutes = new EnumMap<Direction,Route>(Direction.class);
+		for(int mask = getUnlockedMask(); mask != 0; mask &= mask - 1) {
+			int ordinal = Integer.numberOfTrailingZeros(mask);
+			unlockedRoutes.put(DIRECTIONS[ordinal], this.routesByDirection[ordinal]);
 		}
 		
-		return connectingRoutes;
+		return unlockedRoutes;
+	}
+	
+	/**
+	 * @param direction a <tt>Direction</tt>
+	 * @return the <tt>Route</tt> leaving this <tt>Location</tt> at <i>direction</i>, or null
+	 */
+	public Route getRoute(Direction direction) {
+		return this.routesByDirection[direction.ordinal()];
+	}
+	
+	/**
+	 * Returns the <tt>Direction</tt>s that have a <tt>Route</tt>, as a bit set:
+	 * bit <i>d</i> is set if there is a <tt>Route</tt> at the <tt>Direction</tt>
+	 * with ordinal <i>d</i>.  Lets callers walk the exits without allocating.
+	 * @return the <tt>Direction</tt>s with a <tt>Route</tt>
+	 */
+	public int getRouteMask() {
+		return this.routeMask;
+	}
+	
+	/**
+	 * @return the <tt>Direction</tt>s with an unlocked <tt>Route</tt>, as a bit set
+	 * @see #getRouteMask()
+	 */
+	public int getUnlockedMask() {
+		return this.routeMask & ~this.lockMask;
+	}
+	
+	/**
+	 * Hands every <tt>Route</tt> leaving this <tt>Location</tt> to the 
+	 * <i>visitor</i>, in <tt>Direction</tt> order.
+	 * @param visitor the <tt>RouteVisitor</tt> to call
+	 */
+	public void forEachRoute(RouteVisitor visitor) {
+		for(int mask = this.routeMask; mask != 0; mask &= mask - 1) {
+			int ordinal = Integer.numberOfTrailingZeros(mask);
+			visitor.visit(DIRECTIONS[ordinal], this.routesByDirection[ordinal]);
+		}
+	}
+	
+	/**
+	 * Hands every unlocked <tt>Route</tt> leaving this <tt>Location</tt> to 
+	 * the <i>visitor</i>, in <tt>Direction</tt> order.
+	 * @param visitor the <tt>RouteVisitor</tt> to call
+	 */
+	public void forEachUnlockedRoute(RouteVisitor visitor) {
+		for(int mask = getUnlockedMask(); mask != 0; mask &= mask - 1) {
+			int ordinal = Integer.numberOfTrailingZeros(mask);
+			visitor.visit(DIRECTIONS[ordinal], this.routesByDirection[ordinal]);
+		}
 	}
 
 	/**
-	 * @return the charactersThatAreHere
+	 * @return the <tt>Item</tt>s lying at this <tt>Location</tt>; like any
+	 * <tt>Inventory</tt> it isn't thread-safe, so <tt>Character</tt>s acting
+	 * in parallel must take turns with it
 	 */
-	public ArrayList<Character> getCharactersThatAreHere() {
+	public Inventory getItems() {
+		return this.items;
+	}
+	
+	/**
+	 * The view is not locked: while <tt>Character</tt>s move concurrently it
+	 * may be out of date, so take a copy under {@link World#getCharactersAt(Location)}
+	 * for an exact one.
+	 * @return a read-only view of the <tt>Character</tt>s that are here, in no particular order
+	 */
+	public List<Character> getCharactersThatAreHere() {
 		return this.charactersThatAreHere;
 	}
 	
+	/**
+	 * @param c a <tt>Character</tt>
+	 * @return true if <i>c</i> is at this <tt>Location</tt>
+	 */
+	public boolean isHere(Character c) {
+		return this.world != null && this.world.getLocationOf(c) == this;
+	}
+	
 	/**
 	 * Returns a new <tt>Location</tt> with no connections, and the given name.
 	 * Checks to see if a <tt>Location</tt> with the given <i>name</i> has
@@ -73,7 +299,7 @@ public class Location
 	 * @return the newly created <tt>Location</tt>
 	 */
 	public static Location newLocation(String name, String description) {
-		return new Location(name, description, new HashMap<Direction,Route>(), new ArrayList<Character>());
+		return new Location(name, description);
 	}
 	
 	/**
@@ -81,30 +307,85 @@ public class Location
 	 * <tt>Route</tt> at the given <tt>Direction</tt>.
 	 * @param other the other <tt>Location</tt> to connect to
 	 * @param direction the <tt>Direction</tt> of the <tt>Route</tt> relative to the <tt>Location</tt>
+	 * @throws <tt>IllegalArgumentException</tt> if this <tt>Location</tt> is registered in a <tt>World</tt> and <i>other</i> isn't registered in the same one
 	 * @see <tt>Route.java</tt>
 	 */
 	public void connectToLocation(Location other, Direction direction) {
-		Route newPath = new Route(this, other);
+		connectToLocation(other, direction, 1);
+	}
+	
+	/**
+	 * Connects this <tt>Location</tt> to the other, by way of a 
+	 * <tt>Route</tt> at the given <tt>Direction</tt>, that costs <i>cost</i>
+	 * to traverse.
+	 * @param other the other <tt>Location</tt> to connect to
+	 * @param direction the <tt>Direction</tt> of the <tt>Route</tt> relative to the <tt>Location</tt>
+	 * @param cost the traversal cost of the <tt>Route</tt>
+	 * @throws <tt>IllegalArgumentException</tt> if this <tt>Location</tt> is registered in a <tt>World</tt> and <i>other</i> isn't registered in the same one
+	 * @see <tt>Route.java</tt>
+	 */
+	public void connectToLocation(Location other, Direction direction, int cost) {
+		World world = this.world;
+		if(world == null) {
+			addRoute(other, direction, cost);
+			return;
+		}
+		
+		world.structureLock.writeLock().lock();
+		try {
+			if(other.world != world) {
+				throw new IllegalArgumentException("Location "+other.name+" is not registered in the World of "+this.name+".");
+			}
+			world.routeAdded(addRoute(other, direction, cost));
+		}
+		finally {
+			world.structureLock.writeLock().unlock();
+		}
+	}
+	
+	private Route addRoute(Location other, Direction direction, int cost) {
+		Route newPath = new Route(this, other, cost);
 
-		if(connectingRoutes.containsKey(direction)) {
+		if(this.routesByDirection[direction.ordinal()] != null) {
 			throw new IllegalArgumentException("A Route at given Direction " +direction.name()+" has already been registered.");
 		}
 		
+		newPath.direction = direction;
+		this.routesByDirection[direction.ordinal()] = newPath;
+		this.routeMask |= 1 << direction.ordinal();
+			//published after the array slot, so readers of the mask find the Route
+		this.routeVersion++;
+		return newPath;
+	}
+	
+	/**
+	 * Called by a <tt>Route</tt> leaving this <tt>Location</tt> when its lock is toggled.
+	 * @param route the toggled <tt>Route</tt>
+	 */
+	void routeLockToggled(Route route) {
+		int bit = 1 << route.direction.ordinal();
+		if(route.isLocked()) {
+			this.lockMask |= bit;
+		}
 		else {
-			connectingRoutes.put(direction, newPath);
+			this.lockMask &= ~bit;
 		}
 	}
 	
-	
-	
 	/**
 	 * Registers the parameter <tt>Character</tt> to this <tt>Location</tt>
-	 * only if the <tt>Character</tt> isn't already registered.
+	 * only if the <tt>Character</tt> isn't already registered, taking it 
+	 * from wherever else it was in this <tt>Location</tt>'s <tt>World</tt>.
 	 * @param c the <tt>Character</tt> to register.
+	 * @throws <tt>IllegalStateException</tt> if this <tt>Location</tt> isn't registered in a <tt>World</tt>
+	 * @see World#placeCharacter(Character, Location)
 	 */
 	public void registerCharacter(Character c) {
-		if(!(this.getCharactersThatAreHere().contains(c))) {
-			this.charactersThatAreHere.add(c);
+		if(this.world == null) {
+			throw new IllegalStateException("Location "+this.name+" is not registered in a World.");
+		}
+		if(!isHere(c)) {
+			this.world.placeCharacter(c, this);
 		}
 	}
 	
@@ -114,37 +395,50 @@ public class Location
 	 * @param c the <tt>Character</tt> to unregister.
 	 */
 	public void unregisterCharacter(Character c) {
-		this.charactersThatAreHere.remove(c);
+		if(isHere(c)) {
+			this.world.removeCharacter(c);
+		}
 	}
 	
-	@Override
-	public String toString() {
-		
-		StringBuilder sb = new StringBuilder();
-
-		sb.append(this.name+"\n");
-		sb.append("You see "+this.description+"\n");
-		
-		if(!this.connectingRoutes.isEmpty()) {
-			for(Entry<Direction,Route> connectingPath : this.connectingRoutes.entrySet()) {
-				sb.append("There is a "+connectingPath.getValue()+ ", ");
-				sb.append(connectingPath.getKey().name()+" from here.\n");
-			}
-		}
-			
-		if(!this.charactersThatAreHere.isEmpty()) {
-			sb.append("\n You can see ");
-			for(Character c : this.charactersThatAreHere) {
-				sb.append(c.toString()+", ");
-			}
-			sb.append("and no one else.\n");
+	/**
+	 * Adds a <tt>Character</tt> to this <tt>Location</tt>'s occupants.  
+	 * Called by the <tt>World</tt>, which keeps track of the slot.
+	 * @param c a <tt>Character</tt> that isn't here yet
+	 * @return the slot <i>c</i> was put in
+	 */
+	int addOccupant(Character c) {
+		if(this.occupantCount == this.occupants.length) {
+			this.occupants = Arrays.copyOf(this.occupants, Math.max(4, this.occupantCount * 2));
 		}
-		
-		else {
-			sb.append("There is no one here.\n\n");
+		this.occupants[this.occupantCount] = c;
+		this.occupantVersion++;
+		return this.occupantCount++;
+	}
+	
+	/**
+	 * Removes the occupant in <i>slot</i> by moving the last occupant into it.
+	 * Called by the <tt>World</tt>, which keeps track of the slots.
+	 * @param slot the slot to empty
+	 * @return the <tt>Character</tt> now in <i>slot</i>, or null if the last slot was emptied
+	 */
+	Character removeOccupant(int slot) {
+		int last = --this.occupantCount;
+		Character moved = null;
+		if(slot != last) {
+			moved = this.occupants[last];
+			this.occupants[slot] = moved;
 		}
-		
-		return sb.toString();
+		this.occupants[last] = null;
+		this.occupantVersion++;
+		return moved;
+	}
+	
+	/**
+	 * @see LocationRenderer
+	 */
+	@Override
+	public String toString() {
+		return LocationRenderer.describe(this);
 	}
 	
 	@Override
@@ -156,13 +450,107 @@ public class Location
 	@Override
 	public boolean equals(Object obj) {
 		// Two Locations are equal if their names are equal.
-		if(obj == null) {return false;}
+		if(obj == this) {return true;}
 		else if(!(obj instanceof Location)) {return false;}
 		else {
 			Location other = (Location) obj;
-			if(this.hashCode() != other.hashCode()) {return false;}
+			if(this.world != null && this.world == other.world) {return this.id == other.id;}
+			return this.name.equals(other.name);
+		}
+	}
+	
+	/**
+	 * The read-only <tt>List</tt> returned by {@link Location#getCharactersThatAreHere()},
+	 * backed by the occupant array.
+	 */
+	private class OccupantView extends AbstractList<Character> {
+
+		@Override
+		public Character get(int index) {
+			if(index < 0 || index >= occupantCount) {
+				throw new IndexOutOfBoundsException("Index: "+index+", Size: "+occupantCount);
+			}
+			return occupants[index];
+		}
+
+		@Override
+		public int size() {
+			return occupantCount;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return (o instanceof Character) && isHere((Character) o);
+		}
+	}
+	
+	/**
+	 * The read-only <tt>Map</tt> returned by {@link Location#getConnectingRoutes()},
+	 * backed by the <tt>Route</tt> array.
+	 */
+	private class RouteTableView extends AbstractMap<Direction,Route> {
+		
+		@Override
+		public int size() {
+			return Integer.bitCount(routeMask);
+		}
+		
+		@Override
+		public boolean isEmpty() {
+			return routeMask == 0;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+		
+		@Override
+		public Route get(Object key) {
+			if(!(key instanceof Direction)) {
+				return null;
+			}
+			return routesByDirection[((Direction) key).ordinal()];
+		}
+		
+		@Override
+		public Set<Entry<Direction,Route>> entrySet() {
+			return new AbstractSet<Entry<Direction,Route>>() {
+				
+				@Override
+				public int size() {
+					return Integer.bitCount(routeMask);
+				}
+				
+				@Override
+				public Iterator<Entry<Direction,Route>> iterator() {
+					return new Iterator<Entry<Direction,Route>>() {
+						private int remaining = routeMask;
+						
+						@Override
+						public boolean hasNext() {
+							return remaining != 0;
+						}
+						
+						@Override
+						public Entry<Direction,Route> next() {
+							if(remaining == 0) {
+								throw new NoSuchElementException("There are no more Routes.");
+							}
+							
+							int ordinal = Integer.numberOfTrailingZeros(remaining);
+							remaining &= remaining - 1;
+							return new SimpleImmutableEntry<Direction,Route>(DIRECTIONS[ordinal], routesByDirection[ordinal]);
+						}
+						
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException("The Routes of a Location cannot be removed.");
+						}
+					};
+				}
+			};
 		}
-		return true;
 	}
 	
 }
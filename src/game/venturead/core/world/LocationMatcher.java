@@ -0,0 +1,16 @@
+package game.venturead.core.world;
+
+/**
+ * A test that a <tt>Location</tt> either passes or fails, such as "has a 
+ * shop" or "has a <tt>Character</tt> of some type", used by searches that 
+ * stop at the first <tt>Location</tt> that matches.
+ * @author recardona
+ */
+public interface LocationMatcher {
+	
+	/**
+	 * @param location the <tt>Location</tt> to test
+	 * @return true if <i>location</i> is one the search is looking for
+	 */
+	boolean matches(Location location);
+}
@@ -0,0 +1,183 @@
+package game.venturead.core.world;
+
+import game.venturead.core.characters.Character;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Renders what a player sees at a <tt>Location</tt> straight into an 
+ * <tt>Appendable</tt> (such as a <tt>Writer</tt> or a <tt>StringBuilder</tt>),
+ * a <tt>ByteBuffer</tt> or an <tt>OutputStream</tt>, in the same words as
+ * {@link Location#toString()}.
+ * <p>
+ * A description has four parts.  Three are kept by the <tt>Location</tt>
+ * both as text and as UTF-8 once rendered: the name; the exits, rendered
+ * again only after a <tt>Route</tt> is added; and who is there, rendered
+ * again only after a <tt>Character</tt> arrives or leaves.  The description
+ * itself is kept off the heap, and is copied from there as UTF-8 without
+ * being decoded.  Rendering a room nothing has happened to copies three 
+ * cached arrays and a run of bytes.
+ * @author recardona
+ */
+public final class LocationRenderer {
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private LocationRenderer() {
+	}
+	
+	/**
+	 * @param location the <tt>Location</tt> to render
+	 * @param out where to append its description
+	 * @throws IOException if <i>out</i> does
+	 */
+	public static void render(Location location, Appendable out) throws IOException {
+		out.append(heading(location).text);
+		out.append(location.getDescription());
+		out.append(exits(location).text);
+		out.append(occupants(location).text);
+	}
+	
+	/**
+	 * @param location the <tt>Location</tt> to render
+	 * @param out where to put its description, encoded as UTF-8
+	 * @throws <tt>BufferOverflowException</tt> if <i>out</i> has less room than {@link #renderedLength(Location)}
+	 */
+	public static void render(Location location, ByteBuffer out) {
+		RenderedFragment heading = heading(location);
+		RenderedFragment exits = exits(location);
+		RenderedFragment occupants = occupants(location);
+		if(out.remaining() < heading.utf8.length + location.getDescriptionByteLength() + exits.utf8.length + occupants.utf8.length) {
+			throw new BufferOverflowException();
+		}
+		out.put(heading.utf8);
+		location.writeDescription(out);
+		out.put(exits.utf8);
+		out.put(occupants.utf8);
+	}
+	
+	/**
+	 * @param location the <tt>Location</tt> to render
+	 * @param out where to write its description, encoded as UTF-8
+	 * @throws IOException if <i>out</i> does
+	 */
+	public static void render(Location location, OutputStream out) throws IOException {
+		out.write(heading(location).utf8);
+		location.writeDescription(out);
+		out.write(exits(location).utf8);
+		out.write(occupants(location).utf8);
+	}
+	
+	/**
+	 * @param location the <tt>Location</tt> to render
+	 * @return the number of bytes its description takes in UTF-8
+	 */
+	public static int renderedLength(Location location) {
+		return heading(location).utf8.length + location.getDescriptionByteLength()
+				+ exits(location).utf8.length + occupants(location).utf8.length;
+	}
+	
+	/**
+	 * @return the description of <i>location</i>, as {@link Location#toString()} gives it
+	 */
+	static String describe(Location location) {
+		return heading(location).text + location.getDescription() + exits(location).text + occupants(location).text;
+	}
+	
+	/**
+	 * Streams the description of every <tt>Location</tt> of <i>world</i>, in
+	 * order of id, without building the whole dump.
+	 * @param world the <tt>World</tt> to dump
+	 * @param out where to append the descriptions
+	 * @throws IOException if <i>out</i> does
+	 */
+	public static void renderWorld(World world, Appendable out) throws IOException {
+		int count = world.getLocationCount();
+		for(int id=0; id<count; id++) {
+			render(world.getLocation(id), out);
+		}
+	}
+	
+	/**
+	 * Streams the description of every <tt>Location</tt> of <i>world</i>, in
+	 * order of id and encoded as UTF-8, without building the whole dump.
+	 * @param world the <tt>World</tt> to dump
+	 * @param out where to write the descriptions
+	 * @throws IOException if <i>out</i> does
+	 */
+	public static void renderWorld(World world, OutputStream out) throws IOException {
+		int count = world.getLocationCount();
+		for(int id=0; id<count; id++) {
+			render(world.getLocation(id), out);
+		}
+	}
+	
+	/**
+	 * @return the name of <i>location</i>, leading into its description
+	 */
+	private static RenderedFragment heading(Location location) {
+		RenderedFragment cached = location.headingFragment;
+		if(cached != null) {
+			return cached;
+		}
+		RenderedFragment fragment = new RenderedFragment(0, location.getName()+"\nYou see ");
+		location.headingFragment = fragment;
+		return fragment;
+	}
+	
+	/**
+	 * @return the exits of <i>location</i>, following its description, rendered again if a <tt>Route</tt> was added since
+	 */
+	private static RenderedFragment exits(Location location) {
+		int version = location.routeVersion;
+		RenderedFragment cached = location.exitsFragment;
+		if(cached != null && cached.version == version) {
+			return cached;
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append('\n');
+		for(int mask = location.getRouteMask(); mask != 0; mask &= mask - 1) {
+			Direction direction = DIRECTIONS[Integer.numberOfTrailingZeros(mask)];
+			sb.append("There is a ").append(location.getRoute(direction)).append(", ");
+			sb.append(direction.name()).append(" from here.\n");
+		}
+		
+		RenderedFragment fragment = new RenderedFragment(version, sb.toString());
+		location.exitsFragment = fragment;
+		return fragment;
+	}
+	
+	/**
+	 * @return who is at <i>location</i>, rendered again if a <tt>Character</tt> arrived or left since
+	 */
+	private static RenderedFragment occupants(Location location) {
+		int version = location.occupantVersion;
+		RenderedFragment cached = location.occupantsFragment;
+		if(cached != null && cached.version == version) {
+			return cached;
+		}
+		
+		List<Character> here = location.world == null 
+				? location.getCharactersThatAreHere() : location.world.getCharactersAt(location);
+		StringBuilder sb = new StringBuilder();
+		if(!here.isEmpty()) {
+			sb.append("\n You can see ");
+			for(Character c : here) {
+				sb.append(c.toString()).append(", ");
+			}
+			sb.append("and no one else.\n");
+		}
+		else {
+			sb.append("There is no one here.\n\n");
+		}
+		
+		RenderedFragment fragment = new RenderedFragment(version, sb.toString());
+		location.occupantsFragment = fragment;
+		return fragment;
+	}
+}
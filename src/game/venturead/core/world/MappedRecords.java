@@ -0,0 +1,50 @@
+package game.venturead.core.world;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A table of fixed-size records in a {@link WorldFile}, read straight out
+ * of the mapped file.  Like the string data of a {@link MappedStringTable},
+ * it is mapped in chunks of at most a gigabyte, so the table may be larger
+ * than one <tt>MappedByteBuffer</tt> can hold.  The chunk size is a multiple
+ * of every record size, so no record straddles two chunks.
+ * @author recardona
+ */
+final class MappedRecords {
+	
+	static final int CHUNK_SIZE = 1 << 30;
+	
+	private final MappedByteBuffer[] chunks;
+	
+	/**
+	 * @param channel the file
+	 * @param position where the table starts
+	 * @param size how many bytes long it is
+	 * @throws IOException if the table runs past the end of the file, or can't be mapped
+	 */
+	MappedRecords(FileChannel channel, long position, long size) throws IOException {
+		if(position < 0 || size < 0 || position > channel.size() - size) {
+			throw new IOException("A table of "+size+" bytes at "+position+" runs past the end of the file");
+		}
+		int chunkCount = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		this.chunks = new MappedByteBuffer[chunkCount];
+		for(int chunk=0; chunk<chunkCount; chunk++) {
+			long start = (long) chunk * CHUNK_SIZE;
+			chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, position + start, Math.min(CHUNK_SIZE, size - start));
+		}
+	}
+	
+	byte get(long at) {
+		return chunks[(int) (at / CHUNK_SIZE)].get((int) (at % CHUNK_SIZE));
+	}
+	
+	int getInt(long at) {
+		return chunks[(int) (at / CHUNK_SIZE)].getInt((int) (at % CHUNK_SIZE));
+	}
+	
+	long getLong(long at) {
+		return chunks[(int) (at / CHUNK_SIZE)].getLong((int) (at % CHUNK_SIZE));
+	}
+}
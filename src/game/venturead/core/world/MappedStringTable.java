@@ -0,0 +1,104 @@
+package game.venturead.core.world;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The string table of a {@link WorldFile}, decoded one string at a time 
+ * straight out of the mapped file.  The offsets and the UTF-8 data are each
+ * mapped in chunks of at most a gigabyte, so either may be larger than one
+ * <tt>MappedByteBuffer</tt> can hold; a string that straddles two chunks of
+ * the data is pieced together.
+ * @author recardona
+ */
+final class MappedStringTable implements StringSource {
+	
+	private static final int CHUNK_SIZE = MappedRecords.CHUNK_SIZE;
+	
+	private final int size;
+	private final MappedRecords offsets;
+	//size + 1 longs: where each string starts in the data, then where the last one ends
+	private final MappedByteBuffer[] chunks;
+	
+	MappedStringTable(FileChannel channel, int size, long offsetsPosition, long dataPosition) throws IOException {
+		this.size = size;
+		this.offsets = new MappedRecords(channel, offsetsPosition, (size + 1) * 8L);
+		
+		long dataSize = offsets.getLong(size * 8L);
+		if(dataSize < 0 || dataPosition < 0 || dataPosition > channel.size() - dataSize) {
+			throw new IOException("The string data of "+dataSize+" bytes at "+dataPosition+" runs past the end of the file");
+		}
+		int chunkCount = (int) ((dataSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		this.chunks = new MappedByteBuffer[chunkCount];
+		for(int chunk=0; chunk<chunkCount; chunk++) {
+			long start = (long) chunk * CHUNK_SIZE;
+			chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, dataPosition + start, Math.min(CHUNK_SIZE, dataSize - start));
+		}
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	public String get(int index) {
+		byte[] bytes = new byte[getByteLength(index)];
+		long start = offsets.getLong(index * 8L);
+		int copied = 0;
+		while(copied < bytes.length) {
+			ByteBuffer part = part(start + copied, bytes.length - copied);
+			int length = part.remaining();
+			part.get(bytes, copied, length);
+			copied += length;
+		}
+		return new String(bytes, RenderedFragment.UTF8);
+	}
+	
+	public int getByteLength(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+		return (int) (offsets.getLong(index * 8L + 8) - offsets.getLong(index * 8L));
+	}
+	
+	public void writeTo(int index, OutputStream out) throws IOException {
+		int length = getByteLength(index);
+		long start = offsets.getLong(index * 8L);
+		byte[] buffer = new byte[Math.min(length, 8192)];
+		int copied = 0;
+		while(copied < length) {
+			ByteBuffer part = part(start + copied, Math.min(length - copied, buffer.length));
+			int piece = part.remaining();
+			part.get(buffer, 0, piece);
+			out.write(buffer, 0, piece);
+			copied += piece;
+		}
+	}
+	
+	public void writeTo(int index, ByteBuffer out) {
+		int length = getByteLength(index);
+		if(out.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		long start = offsets.getLong(index * 8L);
+		int copied = 0;
+		while(copied < length) {
+			ByteBuffer part = part(start + copied, length - copied);
+			copied += part.remaining();
+			out.put(part);
+		}
+	}
+	
+	/**
+	 * @return a view of the data from <i>at</i>, up to <i>length</i> bytes long or to the end of its chunk
+	 */
+	private ByteBuffer part(long at, int length) {
+		ByteBuffer chunk = chunks[(int) (at / CHUNK_SIZE)].duplicate();
+		chunk.position((int) (at % CHUNK_SIZE));
+		chunk.limit((int) Math.min(chunk.limit(), chunk.position() + (long) length));
+		return chunk;
+	}
+}
@@ -0,0 +1,843 @@
+package game.venturead.core.world;
+
+import game.venturead.core.characters.Character;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the changes made to a <tt>World</tt>, so that it
+ * survives a restart.  Registering a <tt>Location</tt> or a
+ * <tt>Character</tt>, adding a <tt>Route</tt>, (un)locking one and placing,
+ * moving or removing a <tt>Character</tt> each append a compact binary
+ * record: a length, a CRC-32 and a type byte, then the fields.
+ * <p>
+ * Appending only copies the record into a buffer in memory.  A writer thread
+ * takes whatever has built up since its last write and writes it all at
+ * once (a group commit), then forces it to disk as the {@link FsyncPolicy}
+ * says, so the game never waits on the disk; {@link #flush()} waits until
+ * everything appended so far is on disk.
+ * <p>
+ * A checkpoint saves the whole <tt>World</tt> as a {@link WorldFile} and
+ * starts a new journal segment, after which the older segments are deleted.
+ * {@link #recover(CharacterResolver)} loads the newest checkpoint and replays
+ * only the segments written since.  Records name what they change by id and
+ * say what it became (locked or not, where a <tt>Character</tt> is), so
+ * replaying one the checkpoint already reflects changes nothing; the
+ * checkpoint can therefore be saved while the game goes on.  A record torn
+ * by a crash ends the journal, and is cut off.
+ * <p>
+ * Files live in one directory, named by the sequence number of the first
+ * record after them: <tt>checkpoint-</tt><i>n</i><tt>.vwld</tt> and
+ * <tt>journal-</tt><i>n</i><tt>.log</tt>.
+ * @author recardona
+ */
+public final class MutationJournal implements Closeable {
+
+	/**
+	 * When the journal forces what it has written to disk.
+	 */
+	public enum FsyncPolicy {
+		/** After every group commit; nothing acknowledged is lost */
+		EVERY_BATCH,
+		/** At most once per {@link MutationJournal#setFsyncInterval(long) interval}; a crash loses that much */
+		PERIODIC,
+		/** Never, leaving it to the operating system; only {@link MutationJournal#flush()} forces */
+		NEVER
+	}
+
+	private static final byte LOCATION = 1;
+	private static final byte ROUTE = 2;
+	private static final byte LOCK = 3;
+	private static final byte CHARACTER = 4;
+	private static final byte PLACE = 5;
+	private static final int RECORD_HEADER_SIZE = 8;
+	//the length of the body, then its CRC-32
+	private static final int MAP_WINDOW = 1 << 30;
+	//how much of a segment is mapped at once while recovering, so segments may outgrow an int
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final File directory;
+	private final FsyncPolicy policy;
+	private volatile long fsyncInterval;
+	private volatile long checkpointInterval;
+
+	private final Object lock;
+	//guards the fields below, which appenders, the writer and flushers share
+	private ByteBuffer pending;
+	private ByteBuffer spare;
+	private long nextSequence;
+	//the sequence number of the next record appended
+	private long durableSequence;
+	//every record before this one is on disk
+	private boolean closing;
+	private int flushers;
+	private IOException failure;
+
+	private final Object ioLock;
+	//held while taking and writing a batch to the current segment, or starting a new one; taken before lock
+	private FileChannel segment;
+	private long writtenSequence;
+	private long lastForce;
+	private long lastCheckpoint;
+
+	private World world;
+	private Thread writer;
+	private Thread checkpointer;
+	private boolean checkpointDue;
+	//guarded by lock; set by the writer, and cleared once the checkpointer has saved
+
+	private long recordsWritten;
+	private long bytesWritten;
+	private long batchesWritten;
+	private long forces;
+	private long writeNanos;
+	private long checkpoints;
+	private long recoveryNanos;
+	private long recordsReplayed;
+
+	/**
+	 * @param directory where the checkpoints and journal segments are kept; it is created if need be
+	 * @param policy when to force written records to disk
+	 */
+	public MutationJournal(File directory, FsyncPolicy policy) {
+		this.directory = directory;
+		this.policy = policy;
+		this.fsyncInterval = 100;
+		this.checkpointInterval = 0;
+		this.lock = new Object();
+		this.pending = ByteBuffer.allocate(1 << 16);
+		this.spare = ByteBuffer.allocate(1 << 16);
+		this.ioLock = new Object();
+	}
+
+	/**
+	 * @param millis how long {@link FsyncPolicy#PERIODIC} waits between forces at most
+	 */
+	public void setFsyncInterval(long millis) {
+		this.fsyncInterval = millis;
+	}
+
+	/**
+	 * @param records how many records may pass before a checkpoint is saved by itself, or 0 to never;
+	 * it is saved on a thread of its own, so group commits go on meanwhile
+	 */
+	public void setCheckpointInterval(long records) {
+		this.checkpointInterval = records;
+	}
+
+	/**
+	 * Rebuilds the <tt>World</tt> from the newest checkpoint and the journal
+	 * since, or makes an empty one if the directory has neither, and starts
+	 * journaling its changes.
+	 * @param resolver makes the <tt>Character</tt>s recorded; it must make every one of them
+	 * @return the recovered <tt>World</tt>
+	 * @throws IOException if the files can't be read, or a <tt>Character</tt> isn't made
+	 * @throws <tt>IllegalStateException</tt> if this journal has already recovered a <tt>World</tt>
+	 */
+	public World recover(CharacterResolver resolver) throws IOException {
+		if(this.world != null) {
+			throw new IllegalStateException("This journal has already recovered a World.");
+		}
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't make the journal directory "+directory);
+		}
+		long start = System.nanoTime();
+
+		long checkpoint = -1;
+		List<Long> segments = new ArrayList<Long>();
+		for(String name : directory.list()) {
+			if(name.startsWith("checkpoint-") && name.endsWith(".vwld")) {
+				checkpoint = Math.max(checkpoint, sequenceOf(name));
+			}
+			else if(name.startsWith("journal-") && name.endsWith(".log")) {
+				segments.add(sequenceOf(name));
+			}
+		}
+		Collections.sort(segments);
+
+		World recovered;
+		long sequence;
+		if(checkpoint >= 0) {
+			recovered = WorldFile.load(checkpointFile(checkpoint), resolver, true);
+			sequence = checkpoint;
+		}
+		else {
+			recovered = new World();
+			sequence = segments.isEmpty() ? 0 : segments.get(0);
+		}
+
+		long replayed = 0;
+		boolean torn = false;
+		for(long first : segments) {
+			File file = segmentFile(first);
+			if(torn || first < sequence) {
+				if(first >= sequence) {
+					file.delete();		//after a torn record, nothing can be trusted
+				}
+				continue;
+			}
+			if(first != sequence) {
+				throw new IOException("The journal is missing the records from "+sequence+" to "+first);
+			}
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				FileChannel channel = raf.getChannel();
+				long size = channel.size();
+				long end = 0;
+				while(end < size) {
+					ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, end, Math.min(MAP_WINDOW, size - end));
+					int whole = replay(recovered, records, resolver);
+					if(whole == 0) {
+						break;
+						//no whole record starts the window: the rest is torn
+					}
+					long count = recordsIn(records, whole);
+					sequence += count;
+					replayed += count;
+					end += whole;
+					//the next window starts at the record this one cut short, if any
+				}
+				if(end < size) {
+					channel.truncate(end);
+					torn = true;
+				}
+			}
+			finally {
+				raf.close();
+			}
+		}
+
+		synchronized(lock) {
+			this.nextSequence = sequence;
+			this.durableSequence = sequence;
+		}
+		this.writtenSequence = sequence;
+		this.lastCheckpoint = checkpoint >= 0 ? checkpoint : sequence;
+		this.lastForce = System.nanoTime();
+		this.segment = openSegment(sequence);
+		this.world = recovered;
+		this.recordsReplayed = replayed;
+		this.recoveryNanos = System.nanoTime() - start;
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "journal writer");
+		writer.setDaemon(true);
+		writer.start();
+		checkpointer = new Thread(new Runnable() {
+			public void run() {
+				checkpointWhenDue();
+			}
+		}, "journal checkpointer");
+		checkpointer.setDaemon(true);
+		checkpointer.start();
+		recovered.journal = this;
+		return recovered;
+	}
+
+	/**
+	 * Saves a checkpoint of the <tt>World</tt> and starts a new journal
+	 * segment, then deletes the checkpoints and segments it replaces.  One
+	 * checkpoint is saved at a time.
+	 * @throws IOException if it can't be saved
+	 * @throws <tt>IllegalStateException</tt> if no <tt>World</tt> has been recovered
+	 */
+	public synchronized void checkpoint() throws IOException {
+		World world = this.world;
+		if(world == null) {
+			throw new IllegalStateException("No World has been recovered.");
+		}
+		long sequence;
+		synchronized(ioLock) {
+			ByteBuffer batch;
+			synchronized(lock) {
+				batch = takePending();
+				sequence = nextSequence;
+			}
+			writeBatch(batch, sequence, true);
+			synchronized(lock) {
+				spare = batch;
+			}
+			segment.close();
+			segment = openSegment(sequence);
+		}
+
+		File saving = new File(directory, "checkpoint.tmp");
+		FileOutputStream out = new FileOutputStream(saving);
+		try {
+			WorldFile.save(world, out);
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+		Files.move(saving.toPath(), checkpointFile(sequence).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		for(String name : directory.list()) {
+			if((name.startsWith("checkpoint-") && name.endsWith(".vwld")) || (name.startsWith("journal-") && name.endsWith(".log"))) {
+				if(sequenceOf(name) < sequence) {
+					new File(directory, name).delete();
+				}
+			}
+		}
+		synchronized(ioLock) {
+			lastCheckpoint = sequence;
+			checkpoints++;
+		}
+	}
+
+	/**
+	 * Waits until every record appended so far has been written and forced to disk.
+	 * @throws IOException if the writer failed
+	 */
+	public void flush() throws IOException {
+		synchronized(lock) {
+			long target = nextSequence;
+			flushers++;
+			lock.notifyAll();
+			try {
+				while(durableSequence < target && failure == null && writer != null && writer.isAlive()) {
+					lock.wait();
+				}
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while flushing the journal", e);
+			}
+			finally {
+				flushers--;
+			}
+			if(failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Flushes the journal, stops the writer and stops journaling the <tt>World</tt>.
+	 * @throws IOException if the writer failed
+	 */
+	public void close() throws IOException {
+		World world = this.world;
+		if(world == null) {
+			return;
+		}
+		world.journal = null;
+		try {
+			flush();
+		}
+		finally {
+			synchronized(lock) {
+				closing = true;
+				lock.notifyAll();
+			}
+			try {
+				writer.join();
+				checkpointer.join();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized(ioLock) {
+				segment.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the sequence number of the next record to be appended
+	 */
+	public long getNextSequence() {
+		synchronized(lock) {
+			return nextSequence;
+		}
+	}
+
+	/**
+	 * @return how many records have been written to disk
+	 */
+	public long getRecordsWritten() {
+		synchronized(ioLock) {
+			return recordsWritten;
+		}
+	}
+
+	/**
+	 * @return how many bytes of records have been written to disk
+	 */
+	public long getBytesWritten() {
+		synchronized(ioLock) {
+			return bytesWritten;
+		}
+	}
+
+	/**
+	 * @return how many group commits have written them
+	 */
+	public long getBatchesWritten() {
+		synchronized(ioLock) {
+			return batchesWritten;
+		}
+	}
+
+	/**
+	 * @return how many times the journal was forced to disk
+	 */
+	public long getForceCount() {
+		synchronized(ioLock) {
+			return forces;
+		}
+	}
+
+	/**
+	 * @return the nanoseconds spent writing and forcing, in total
+	 */
+	public long getWriteNanos() {
+		synchronized(ioLock) {
+			return writeNanos;
+		}
+	}
+
+	/**
+	 * @return how many checkpoints have been saved
+	 */
+	public long getCheckpointCount() {
+		synchronized(ioLock) {
+			return checkpoints;
+		}
+	}
+
+	/**
+	 * @return the nanoseconds {@link #recover(CharacterResolver)} took
+	 */
+	public long getRecoveryNanos() {
+		return recoveryNanos;
+	}
+
+	/**
+	 * @return how many records {@link #recover(CharacterResolver)} replayed
+	 */
+	public long getRecordsReplayed() {
+		return recordsReplayed;
+	}
+
+	void locationRegistered(Location location, String description) {
+		byte[] name = location.getName().getBytes(RenderedFragment.UTF8);
+		byte[] text = description == null ? null : description.getBytes(RenderedFragment.UTF8);
+		synchronized(lock) {
+			ByteBuffer record = begin(LOCATION, 12 + name.length + (text == null ? 0 : text.length));
+			record.putInt(location.id);
+			putBytes(record, name);
+			putBytes(record, text);
+			end(record);
+		}
+	}
+
+	void routeAdded(Route route) {
+		if(route.getDestination().id < 0 || route.direction == null) {
+			return;
+		}
+		synchronized(lock) {
+			ByteBuffer record = begin(ROUTE, 13);
+			record.putInt(route.getSource().id);
+			record.put((byte) route.direction.ordinal());
+			record.putInt(route.getDestination().id);
+			record.putInt(route.getCost());
+			end(record);
+		}
+	}
+
+	void lockChanged(Route route, boolean locked) {
+		if(route.direction == null) {
+			return;
+		}
+		synchronized(lock) {
+			ByteBuffer record = begin(LOCK, 6);
+			record.putInt(route.getSource().id);
+			record.put((byte) route.direction.ordinal());
+			record.put(locked ? (byte) 1 : 0);
+			end(record);
+		}
+	}
+
+	void characterRegistered(Character character) {
+		byte[] name = character.getName().getBytes(RenderedFragment.UTF8);
+		synchronized(lock) {
+			ByteBuffer record = begin(CHARACTER, 8 + name.length);
+			record.putInt(character.getId());
+			putBytes(record, name);
+			end(record);
+		}
+	}
+
+	void characterPlaced(int characterId, int locationId) {
+		synchronized(lock) {
+			ByteBuffer record = begin(PLACE, 8);
+			record.putInt(characterId);
+			record.putInt(locationId);
+			end(record);
+		}
+	}
+
+	/**
+	 * Makes room for a record in the pending buffer and writes its type,
+	 * leaving its header to {@link #end(ByteBuffer)}.  Must be called holding
+	 * {@link #lock}.
+	 */
+	private ByteBuffer begin(byte type, int bodySize) {
+		if(failure != null) {
+			throw new IllegalStateException("The journal can't be written to", failure);
+		}
+		int needed = RECORD_HEADER_SIZE + 1 + bodySize;
+		if(pending.remaining() < needed) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+			pending.flip();
+			grown.put(pending);
+			pending = grown;
+		}
+		pending.mark();
+		pending.position(pending.position() + RECORD_HEADER_SIZE);
+		pending.put(type);
+		return pending;
+	}
+
+	private void end(ByteBuffer record) {
+		int end = record.position();
+		record.reset();
+		int start = record.position();
+		int length = end - start - RECORD_HEADER_SIZE;
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), start + RECORD_HEADER_SIZE, length);
+		record.putInt(start, length);
+		record.putInt(start + 4, (int) crc.getValue());
+		record.position(end);
+		nextSequence++;
+		lock.notifyAll();
+	}
+
+	private static void putBytes(ByteBuffer record, byte[] bytes) {
+		if(bytes == null) {
+			record.putInt(-1);
+		}
+		else {
+			record.putInt(bytes.length);
+			record.put(bytes);
+		}
+	}
+
+	private static String getString(ByteBuffer record) {
+		int length = record.getInt();
+		if(length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		record.get(bytes);
+		return new String(bytes, RenderedFragment.UTF8);
+	}
+
+	/**
+	 * Swaps in the spare buffer for appenders to fill, handing back the
+	 * pending one.  Must be called holding {@link #lock}.
+	 */
+	private ByteBuffer takePending() {
+		ByteBuffer batch = pending;
+		ByteBuffer next = spare != null ? spare : ByteBuffer.allocate(batch.capacity());
+		next.clear();
+		pending = next;
+		spare = null;
+		batch.flip();
+		return batch;
+	}
+
+	/**
+	 * The writer thread: group commits whatever has been appended, until closed.
+	 */
+	private void write() {
+		while(true) {
+			synchronized(lock) {
+				try {
+					while(pending.position() == 0 && !closing && (flushers == 0 || durableSequence == nextSequence)) {
+						if(policy == FsyncPolicy.PERIODIC && durableSequence < nextSequence) {
+							lock.wait(Math.max(1, fsyncInterval));
+							break;
+						}
+						lock.wait();
+					}
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+				if(closing && pending.position() == 0) {
+					return;
+				}
+			}
+
+			try {
+				long sequence;
+				synchronized(ioLock) {
+					ByteBuffer batch;
+					boolean force;
+					synchronized(lock) {
+						batch = takePending();
+						sequence = nextSequence;
+						force = flushers > 0;
+					}
+					writeBatch(batch, sequence, force);
+					synchronized(lock) {
+						spare = batch;
+					}
+				}
+				long checkpointInterval = this.checkpointInterval;
+				if(checkpointInterval > 0 && sequence - lastCheckpoint() >= checkpointInterval) {
+					synchronized(lock) {
+						if(!checkpointDue) {
+							checkpointDue = true;
+							lock.notifyAll();
+						}
+					}
+				}
+			}
+			catch(IOException e) {
+				synchronized(lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Run by the checkpointer thread: saves a checkpoint whenever the writer
+	 * finds one due, so that saving the <tt>World</tt> never holds up a
+	 * group commit or a {@link #flush()}.
+	 */
+	private void checkpointWhenDue() {
+		while(true) {
+			synchronized(lock) {
+				try {
+					while(!checkpointDue && !closing) {
+						lock.wait();
+					}
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+				if(closing) {
+					return;
+				}
+			}
+
+			try {
+				checkpoint();
+			}
+			catch(IOException e) {
+				synchronized(lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+			finally {
+				synchronized(lock) {
+					checkpointDue = false;
+				}
+			}
+		}
+	}
+
+	private long lastCheckpoint() {
+		synchronized(ioLock) {
+			return lastCheckpoint;
+		}
+	}
+
+	/**
+	 * Writes a batch of records to the current segment, and forces it if
+	 * asked to or if the policy says so.  Must be called holding {@link #ioLock}.
+	 * @param sequence the sequence number of the record after the batch
+	 */
+	private void writeBatch(ByteBuffer batch, long sequence, boolean force) throws IOException {
+		long start = System.nanoTime();
+		int bytes = batch.remaining();
+		while(batch.hasRemaining()) {
+			segment.write(batch);
+		}
+		long records = sequence - writtenSequence;
+		writtenSequence = sequence;
+
+		boolean due = policy == FsyncPolicy.EVERY_BATCH
+				|| (policy == FsyncPolicy.PERIODIC && start - lastForce >= fsyncInterval * 1000000L);
+		boolean forced = force || due;
+		if(forced) {
+			segment.force(false);
+			lastForce = System.nanoTime();
+			forces++;
+		}
+		if(bytes > 0) {
+			recordsWritten += records;
+			bytesWritten += bytes;
+			batchesWritten++;
+		}
+		writeNanos += System.nanoTime() - start;
+
+		if(forced) {
+			synchronized(lock) {
+				durableSequence = sequence;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Replays the records in a window of a segment into a <tt>World</tt>, up
+	 * to the first one that is torn or runs past the end of the window.
+	 * @return where the last whole record ends, in the window
+	 */
+	private static int replay(World world, ByteBuffer records, CharacterResolver resolver) throws IOException {
+		int position = 0;
+		while(true) {
+			int body = wholeRecordAt(records, position);
+			if(body < 0) {
+				return position;
+			}
+			ByteBuffer record = records.duplicate();
+			record.position(position + RECORD_HEADER_SIZE);
+			record.limit(position + RECORD_HEADER_SIZE + body);
+			apply(world, record, resolver);
+			position += RECORD_HEADER_SIZE + body;
+		}
+	}
+
+	private static long recordsIn(ByteBuffer records, int end) {
+		long count = 0;
+		int position = 0;
+		while(position < end) {
+			position += RECORD_HEADER_SIZE + records.getInt(position);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the length of the body of the record at <i>position</i>, or -1 if it is torn or there is none
+	 */
+	private static int wholeRecordAt(ByteBuffer records, int position) {
+		if(records.limit() - position < RECORD_HEADER_SIZE + 1) {
+			return -1;
+		}
+		int length = records.getInt(position);
+		if(length < 1 || length > records.limit() - position - RECORD_HEADER_SIZE) {
+			return -1;
+		}
+		byte[] body = new byte[length];
+		ByteBuffer view = records.duplicate();
+		view.position(position + RECORD_HEADER_SIZE);
+		view.get(body);
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, length);
+		return (int) crc.getValue() == records.getInt(position + 4) ? length : -1;
+	}
+
+	private static void apply(World world, ByteBuffer record, CharacterResolver resolver) throws IOException {
+		byte type = record.get();
+		switch(type)
+		{
+			case LOCATION: {
+				int id = record.getInt();
+				String name = getString(record);
+				String description = getString(record);
+				if(id == world.getLocationCount()) {
+					world.registerNewLocation(name, description);
+				}
+				else if(id > world.getLocationCount()) {
+					throw new IOException("The journal registers location "+id+" out of order");
+				}
+				break;
+			}
+
+			case ROUTE: {
+				Location from = world.getLocation(record.getInt());
+				Direction direction = DIRECTIONS[record.get()];
+				Location to = world.getLocation(record.getInt());
+				int cost = record.getInt();
+				if(from.getRoute(direction) == null) {
+					from.connectToLocation(to, direction, cost);
+				}
+				break;
+			}
+
+			case LOCK: {
+				Route route = world.getLocation(record.getInt()).getRoute(DIRECTIONS[record.get()]);
+				boolean locked = record.get() != 0;
+				if(route.isLocked() != locked) {
+					route.toggleLock();
+				}
+				break;
+			}
+
+			case CHARACTER: {
+				int id = record.getInt();
+				String name = getString(record);
+				if(id == world.getCharacterCount()) {
+					Character character = resolver == null ? null : resolver.resolve(name);
+					if(character == null) {
+						throw new IOException("No character was made for "+name);
+					}
+					world.registerCharacter(character);
+				}
+				else if(id > world.getCharacterCount()) {
+					throw new IOException("The journal registers character "+id+" out of order");
+				}
+				break;
+			}
+
+			case PLACE: {
+				Character character = world.getCharacter(record.getInt());
+				int location = record.getInt();
+				if(location < 0) {
+					world.removeCharacter(character);
+				}
+				else {
+					world.placeCharacter(character, world.getLocation(location));
+				}
+				break;
+			}
+
+			default:
+				throw new IOException("The journal has a record of unknown type "+type);
+		}
+	}
+
+	private FileChannel openSegment(long sequence) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(segmentFile(sequence), "rw");
+		raf.seek(raf.length());
+		return raf.getChannel();
+	}
+
+	private File segmentFile(long sequence) {
+		return new File(directory, String.format("journal-%016x.log", sequence));
+	}
+
+	private File checkpointFile(long sequence) {
+		return new File(directory, String.format("checkpoint-%016x.vwld", sequence));
+	}
+
+	private static long sequenceOf(String name) {
+		return Long.parseLong(name.substring(name.indexOf('-') + 1, name.indexOf('.')), 16);
+	}
+}
@@ -0,0 +1,185 @@
+package game.venturead.core.world;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indexes the registered <tt>Location</tt>s of a <tt>World</tt> by name.
+ * Exact names resolve to ids through an open-addressing table keyed by the
+ * name's hash, with the candidate names confirmed against the 
+ * <tt>Location</tt>s themselves.  Partial names resolve through a 
+ * case-insensitive prefix trie, whose children are kept sorted so matches
+ * come back in alphabetical order.
+ * @author recardona
+ */
+class NameIndex {
+	
+	private static final int EMPTY = -1;
+	
+	private final List<Location> locationsById;
+	private int[] hashes;
+	private int[] ids;
+	//ids[slot] is EMPTY for a free slot
+	private int size;
+	
+	private final TrieNode root;
+	
+	NameIndex(List<Location> locationsById) {
+		this.locationsById = locationsById;
+		this.hashes = new int[16];
+		this.ids = new int[16];
+		Arrays.fill(this.ids, EMPTY);
+		this.root = new TrieNode();
+	}
+	
+	/**
+	 * @param name a <tt>Location</tt> name
+	 * @return the id of the <tt>Location</tt> with exactly that name, or -1
+	 */
+	int get(String name) {
+		int hash = name.hashCode();
+		int mask = ids.length - 1;
+		for(int slot = mix(hash) & mask; ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if(hashes[slot] == hash && locationsById.get(ids[slot]).getName().equals(name)) {
+				return ids[slot];
+			}
+		}
+		return EMPTY;
+	}
+	
+	/**
+	 * Indexes a freshly registered <tt>Location</tt> under its name, which
+	 * must not be indexed already.
+	 * @param name the name of the <tt>Location</tt>
+	 * @param id its id
+	 */
+	void add(String name, int id) {
+		if((size + 1) * 2 > ids.length) {
+			resize(ids.length * 2);
+		}
+		insert(name.hashCode(), id);
+		size++;
+		
+		TrieNode node = root;
+		for(int i=0; i<name.length(); i++) {
+			node = node.childFor(Character.toLowerCase(name.charAt(i)), true);
+		}
+		node.addId(id);
+	}
+	
+	/**
+	 * Collects the ids of every indexed <tt>Location</tt> whose name starts
+	 * with <i>prefix</i>, ignoring case, in alphabetical order.  The matches
+	 * are counted first, so the array is allocated once, at its final size.
+	 * @param prefix the start of a name
+	 * @return the matching ids
+	 */
+	int[] findByPrefix(String prefix) {
+		TrieNode node = root;
+		for(int i=0; i<prefix.length() && node != null; i++) {
+			node = node.childFor(Character.toLowerCase(prefix.charAt(i)), false);
+		}
+		if(node == null) {
+			return new int[0];
+		}
+		int[] matches = new int[count(node)];
+		collect(node, matches, 0);
+		return matches;
+	}
+	
+	private int count(TrieNode node) {
+		int count = node.idCount;
+		for(int i=0; i<node.childCount; i++) {
+			count += count(node.children[i]);
+		}
+		return count;
+	}
+	
+	/**
+	 * @return where the next match goes in <i>matches</i>
+	 */
+	private int collect(TrieNode node, int[] matches, int next) {
+		System.arraycopy(node.ids, 0, matches, next, node.idCount);
+		next += node.idCount;
+		for(int i=0; i<node.childCount; i++) {
+			next = collect(node.children[i], matches, next);
+		}
+		return next;
+	}
+	
+	private void insert(int hash, int id) {
+		int mask = ids.length - 1;
+		int slot = mix(hash) & mask;
+		while(ids[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		hashes[slot] = hash;
+		ids[slot] = id;
+	}
+	
+	private void resize(int capacity) {
+		int[] oldHashes = hashes;
+		int[] oldIds = ids;
+		hashes = new int[capacity];
+		ids = new int[capacity];
+		Arrays.fill(ids, EMPTY);
+		
+		for(int slot=0; slot<oldIds.length; slot++) {
+			if(oldIds[slot] != EMPTY) {
+				insert(oldHashes[slot], oldIds[slot]);
+			}
+		}
+	}
+	
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		return hash;
+	}
+	
+	/**
+	 * A node of the prefix trie, one lower-cased character deep per level.
+	 */
+	private static class TrieNode {
+		
+		char[] keys = new char[0];
+		TrieNode[] children = new TrieNode[0];
+		int childCount;
+		//keys and children are sorted by key
+		int[] ids = new int[0];
+		int idCount;
+		//names that end at this node; several differ only by case
+		
+		TrieNode childFor(char key, boolean create) {
+			int index = Arrays.binarySearch(keys, 0, childCount, key);
+			if(index >= 0) {
+				return children[index];
+			}
+			if(!create) {
+				return null;
+			}
+			
+			index = -index - 1;
+			if(childCount == keys.length) {
+				int capacity = Math.max(2, childCount * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				children = Arrays.copyOf(children, capacity);
+			}
+			System.arraycopy(keys, index, keys, index + 1, childCount - index);
+			System.arraycopy(children, index, children, index + 1, childCount - index);
+			TrieNode child = new TrieNode();
+			keys[index] = key;
+			children[index] = child;
+			childCount++;
+			return child;
+		}
+		
+		void addId(int id) {
+			if(idCount == ids.length) {
+				ids = Arrays.copyOf(ids, Math.max(1, idCount * 2));
+			}
+			ids[idCount++] = id;
+		}
+	}
+}
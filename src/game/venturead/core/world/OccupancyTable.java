@@ -0,0 +1,89 @@
+package game.venturead.core.world;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Where each <tt>Character</tt> of a <tt>World</tt> is, by character id: the
+ * id of its <tt>Location</tt>, and its slot among that <tt>Location</tt>'s
+ * occupants.  Stored in fixed-size pages that never move, so growing the
+ * table for a new <tt>Character</tt> cannot lose a move made concurrently
+ * to a page that already existed.  A <tt>Character</tt>'s entries are 
+ * written only under the lock of the <tt>Location</tt> it is at; its 
+ * <tt>Location</tt> id may be read without locking.  Whether it has been
+ * placed or moved since the <tt>World</tt>'s last snapshot is kept 
+ * alongside, under the same lock.
+ * @author recardona
+ */
+class OccupancyTable {
+	
+	static final int NOWHERE = -1;
+	
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	
+	private volatile AtomicIntegerArray[] locationPages;
+	private volatile int[][] slotPages;
+	private volatile boolean[][] changedPages;
+	
+	OccupancyTable() {
+		this.locationPages = new AtomicIntegerArray[0];
+		this.slotPages = new int[0][];
+		this.changedPages = new boolean[0][];
+	}
+	
+	/**
+	 * Makes room for the <tt>Character</tt> with id <i>id</i>, which starts
+	 * out nowhere.  Called while registering it, one thread at a time.
+	 */
+	void add(int id) {
+		int page = id >>> PAGE_BITS;
+		if(page == locationPages.length) {
+			AtomicIntegerArray locations = new AtomicIntegerArray(PAGE_SIZE);
+			int[][] slots = Arrays.copyOf(slotPages, page + 1);
+			slots[page] = new int[PAGE_SIZE];
+			slotPages = slots;
+			boolean[][] changed = Arrays.copyOf(changedPages, page + 1);
+			changed[page] = new boolean[PAGE_SIZE];
+			changedPages = changed;
+			
+			AtomicIntegerArray[] pages = Arrays.copyOf(locationPages, page + 1);
+			pages[page] = locations;
+			locationPages = pages;
+		}
+		locationPages[page].set(id & PAGE_MASK, NOWHERE);
+	}
+	
+	int getLocation(int id) {
+		return locationPages[id >>> PAGE_BITS].get(id & PAGE_MASK);
+	}
+	
+	void setLocation(int id, int locationId) {
+		locationPages[id >>> PAGE_BITS].set(id & PAGE_MASK, locationId);
+	}
+	
+	int getSlot(int id) {
+		return slotPages[id >>> PAGE_BITS][id & PAGE_MASK];
+	}
+	
+	void setSlot(int id, int slot) {
+		slotPages[id >>> PAGE_BITS][id & PAGE_MASK] = slot;
+	}
+	
+	/**
+	 * @return true if the <tt>Character</tt> with id <i>id</i> wasn't already marked as changed
+	 */
+	boolean markChanged(int id) {
+		boolean[] page = changedPages[id >>> PAGE_BITS];
+		if(page[id & PAGE_MASK]) {
+			return false;
+		}
+		page[id & PAGE_MASK] = true;
+		return true;
+	}
+	
+	void clearChanged(int id) {
+		changedPages[id >>> PAGE_BITS][id & PAGE_MASK] = false;
+	}
+}
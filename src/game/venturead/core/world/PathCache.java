@@ -0,0 +1,162 @@
+package game.venturead.core.world;
+
+import game.venturead.core.world.World.Path;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of {@link World#findPath(Location, Location)}
+ * results, keyed by the ids of the start and goal <tt>Location</tt>s.
+ * <p>
+ * Every entry remembers the epoch of the <tt>World</tt> it was computed in.
+ * The <tt>World</tt> moves to a new epoch whenever a <tt>Route</tt> is created
+ * or has its lock toggled, so entries from an older epoch are dropped when
+ * they are next looked up, and are never served.  The cache may be read
+ * and resized from any thread.
+ * @author recardona
+ */
+public class PathCache {
+	
+	public static final int DEFAULT_CAPACITY = 1024;
+	
+	private int capacity;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private final LinkedHashMap<Long,CachedPath> entries;
+	
+	PathCache(int capacity) {
+		setCapacity(capacity);
+		this.entries = new LinkedHashMap<Long,CachedPath>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long,CachedPath> eldest) {
+				if(size() > PathCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * @return the most entries this cache will hold
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Sets the most entries this cache will hold; zero turns caching off.
+	 * Shrinking the cache evicts its least recently used entries.
+	 * @param capacity the new capacity
+	 * @throws <tt>IllegalArgumentException</tt> if <i>capacity</i> is negative
+	 */
+	public synchronized void setCapacity(int capacity) {
+		if(capacity < 0) {
+			throw new IllegalArgumentException("The capacity of a PathCache cannot be negative.");
+		}
+		this.capacity = capacity;
+		
+		if(this.entries != null) {
+			while(this.entries.size() > capacity) {
+				Long eldest = this.entries.keySet().iterator().next();
+				this.entries.remove(eldest);
+				evictions++;
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of entries currently held, including stale ones not yet dropped
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * @return the number of lookups that had to search, including those that found a stale entry
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * @return the number of entries pushed out to stay within capacity
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+	
+	/**
+	 * Drops every entry, and resets the counters.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+	
+	/**
+	 * Looks up the cached search result from <i>start</i> to <i>goal</i>.
+	 * @param start the id of the starting <tt>Location</tt>
+	 * @param goal the id of the target <tt>Location</tt>
+	 * @param epoch the current epoch of the <tt>World</tt>
+	 * @return the entry, or null on a miss; the entry's <tt>Path</tt> is null if no path exists
+	 */
+	synchronized CachedPath get(int start, int goal, long epoch) {
+		Long key = key(start, goal);
+		CachedPath cached = entries.get(key);
+		
+		if(cached != null && cached.epoch != epoch) {
+			entries.remove(key);
+			cached = null;
+		}
+		
+		if(cached == null) {
+			misses++;
+		}
+		else {
+			hits++;
+		}
+		return cached;
+	}
+	
+	/**
+	 * Caches the result of searching from <i>start</i> to <i>goal</i>.
+	 * @param path the <tt>Path</tt> found, or null if there is none
+	 */
+	synchronized void put(int start, int goal, long epoch, Path<Location> path) {
+		if(capacity > 0) {
+			entries.put(key(start, goal), new CachedPath(path, epoch));
+		}
+	}
+	
+	private static Long key(int start, int goal) {
+		return Long.valueOf(((long) start << 32) | (goal & 0xFFFFFFFFL));
+	}
+	
+	/**
+	 * A cached search result, and the epoch it is valid for.
+	 */
+	static class CachedPath {
+		final Path<Location> path;
+		final long epoch;
+		
+		CachedPath(Path<Location> path, long epoch) {
+			this.path = path;
+			this.epoch = epoch;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package game.venturead.core.world;
+
+/**
+ * A request for a <tt>Path</tt> between two <tt>Location</tt>s, to be 
+ * answered in a batch by {@link World#findPaths(java.util.Collection)}.
+ * @author recardona
+ */
+public class PathQuery {
+	
+	private final Location start;
+	private final Location goal;
+	
+	/**
+	 * @param start the starting <tt>Location</tt>
+	 * @param goal the target <tt>Location</tt>
+	 */
+	public PathQuery(Location start, Location goal) {
+		if(start == null || goal == null) {
+			throw new IllegalArgumentException("A PathQuery needs both a start and a goal.");
+		}
+		this.start = start;
+		this.goal = goal;
+	}
+	
+	/**
+	 * @return the starting <tt>Location</tt>
+	 */
+	public Location getStart() {
+		return start;
+	}
+	
+	/**
+	 * @return the target <tt>Location</tt>
+	 */
+	public Location getGoal() {
+		return goal;
+	}
+	
+	@Override
+	public String toString() {
+		return "path from "+start.getName()+" to "+goal.getName();
+	}
+}
@@ -0,0 +1,136 @@
+package game.venturead.core.world;
+
+/**
+ * An immutable array of ints, indexed from zero, in which every index 
+ * holds zero until set.  Stored as a 32-way trie: setting an index copies
+ * only the nodes on the way to it, in O(log n), and shares the rest with 
+ * the trie it was set in, so old versions stay valid and cost nothing to 
+ * keep.  Two versions of one trie can be compared in time proportional to
+ * what changed between them, because unchanged subtrees are shared.
+ * @author recardona
+ */
+final class PersistentIntTrie {
+	
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	
+	static final PersistentIntTrie EMPTY = new PersistentIntTrie(null, 0);
+	
+	private final Object root;
+	//an int[] leaf when shift is zero, an Object[] branch otherwise; null while empty
+	private final int shift;
+	//the shift of the root's level: the trie holds indexes below WIDTH << shift
+	
+	/**
+	 * Receives the indexes at which two versions differ, in increasing order.
+	 */
+	interface DiffVisitor {
+		void changed(int index, int from, int to);
+	}
+	
+	private PersistentIntTrie(Object root, int shift) {
+		this.root = root;
+		this.shift = shift;
+	}
+	
+	/**
+	 * @param index a non-negative index
+	 * @return the value at <i>index</i>, zero if it was never set
+	 */
+	int get(int index) {
+		if((index >>> shift) >= WIDTH) {
+			return 0;
+		}
+		Object node = root;
+		for(int level = shift; level > 0 && node != null; level -= BITS) {
+			node = ((Object[]) node)[(index >>> level) & MASK];
+		}
+		return node == null ? 0 : ((int[]) node)[index & MASK];
+	}
+	
+	/**
+	 * @param index a non-negative index
+	 * @param value the value to put there
+	 * @return a trie like this one, but with <i>value</i> at <i>index</i>
+	 */
+	PersistentIntTrie set(int index, int value) {
+		if(get(index) == value) {
+			return this;
+		}
+		
+		Object root = this.root;
+		int shift = this.shift;
+		while((index >>> shift) >= WIDTH) {
+			root = root == null ? null : branchOver(root);
+			shift += BITS;
+		}
+		return new PersistentIntTrie(setIn(root, shift, index, value), shift);
+	}
+	
+	private static Object setIn(Object node, int level, int index, int value) {
+		if(level == 0) {
+			int[] leaf = node == null ? new int[WIDTH] : ((int[]) node).clone();
+			leaf[index & MASK] = value;
+			return leaf;
+		}
+		
+		Object[] branch = node == null ? new Object[WIDTH] : ((Object[]) node).clone();
+		int child = (index >>> level) & MASK;
+		branch[child] = setIn(branch[child], level - BITS, index, value);
+		return branch;
+	}
+	
+	/**
+	 * Visits every index at which <i>other</i> holds a different value than
+	 * this trie, skipping the subtrees the two share.
+	 * @param other another version of this trie
+	 * @param visitor told each index, this trie's value and <i>other</i>'s
+	 */
+	void diff(PersistentIntTrie other, DiffVisitor visitor) {
+		int shift = Math.max(this.shift, other.shift);
+		diff(raise(this.root, this.shift, shift), raise(other.root, other.shift, shift), shift, 0, visitor);
+	}
+	
+	/**
+	 * Wraps <i>node</i> in branches until it sits at level <i>to</i>, where 
+	 * it holds the same indexes as child zero of each new branch.
+	 */
+	private static Object raise(Object node, int from, int to) {
+		for(int level = from; level < to && node != null; level += BITS) {
+			node = branchOver(node);
+		}
+		return node;
+	}
+	
+	private static Object[] branchOver(Object node) {
+		Object[] branch = new Object[WIDTH];
+		branch[0] = node;
+		return branch;
+	}
+	
+	private static void diff(Object one, Object other, int level, int base, DiffVisitor visitor) {
+		if(one == other) {
+			return;
+		}
+		
+		if(level == 0) {
+			int[] a = (int[]) one;
+			int[] b = (int[]) other;
+			for(int i=0; i<WIDTH; i++) {
+				int from = a == null ? 0 : a[i];
+				int to = b == null ? 0 : b[i];
+				if(from != to) {
+					visitor.changed(base + i, from, to);
+				}
+			}
+			return;
+		}
+		
+		Object[] a = (Object[]) one;
+		Object[] b = (Object[]) other;
+		for(int i=0; i<WIDTH; i++) {
+			diff(a == null ? null : a[i], b == null ? null : b[i], level - BITS, base + (i << level), visitor);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package game.venturead.core.world;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A sequence of moves and lock toggles found by a {@link Planner}, that 
+ * leads from a start <tt>Location</tt> to one its goal accepts.
+ * @author recardona
+ */
+public class Plan implements Iterable<PlanStep> {
+	
+	private final List<PlanStep> steps;
+	private final Location destination;
+	private final int cost;
+	
+	Plan(List<PlanStep> steps, Location destination, int cost) {
+		this.steps = Collections.unmodifiableList(steps);
+		this.destination = destination;
+		this.cost = cost;
+	}
+	
+	/**
+	 * @return the steps, in the order to take them
+	 */
+	public List<PlanStep> getSteps() {
+		return steps;
+	}
+	
+	/**
+	 * @return the number of steps
+	 */
+	public int size() {
+		return steps.size();
+	}
+	
+	/**
+	 * @return the <tt>Location</tt> the plan ends at
+	 */
+	public Location getDestination() {
+		return destination;
+	}
+	
+	/**
+	 * @return the summed cost of the moves and toggles
+	 */
+	public int getCost() {
+		return cost;
+	}
+	
+	@Override
+	public Iterator<PlanStep> iterator() {
+		return steps.iterator();
+	}
+	
+	@Override
+	public String toString() {
+		return steps.toString();
+	}
+}
@@ -0,0 +1,48 @@
+package game.venturead.core.world;
+
+/**
+ * One step of a {@link Plan}: walking along a <tt>Route</tt>, or toggling
+ * its lock.
+ * @author recardona
+ */
+public class PlanStep {
+	
+	/**
+	 * The kinds of <tt>PlanStep</tt>.
+	 */
+	public enum Kind {
+		
+		/** Walk along the <tt>Route</tt> */
+		MOVE,
+		
+		/** Toggle the lock of the <tt>Route</tt> */
+		TOGGLE_LOCK
+	}
+	
+	private final Kind kind;
+	private final Route route;
+	
+	PlanStep(Kind kind, Route route) {
+		this.kind = kind;
+		this.route = route;
+	}
+	
+	/**
+	 * @return what to do
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+	
+	/**
+	 * @return the <tt>Route</tt> to do it to
+	 */
+	public Route getRoute() {
+		return route;
+	}
+	
+	@Override
+	public String toString() {
+		return kind == Kind.MOVE ? "take the "+route : "toggle the lock of the "+route;
+	}
+}
@@ -0,0 +1,456 @@
+package game.venturead.core.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plans through locked doors: finds the cheapest sequence of moves and lock
+ * toggles that leads from a <tt>Location</tt> to one a 
+ * {@link LocationMatcher} accepts, where plain path finding would stop at 
+ * the first locked <tt>Route</tt>.
+ * <p>
+ * The planner searches over states made of a <tt>Location</tt>, the lock
+ * state of the <tt>Route</tt>s it was told are lockable, and the keys picked
+ * up so far.  Standing at either end of a locked lockable <tt>Route</tt>, it
+ * may unlock it, once it holds the key that <tt>Route</tt> needs, if any; a
+ * key is picked up by visiting the <tt>Location</tt> it lies at, as given to
+ * {@link #requireKey(Route, Location)}.  Any other <tt>Route</tt> keeps the
+ * lock it has in the <tt>WorldSnapshot</tt> planned from.  Locking a 
+ * <tt>Route</tt> only ever takes moves away, so it can't help reach a 
+ * <tt>Location</tt>, and the planner doesn't try it.  A state is a run of 
+ * <tt>long</tt>s in one arena: the <tt>Location</tt> id, then one bit per
+ * lockable <tt>Route</tt>, then one bit per key <tt>Location</tt>.  Visited
+ * states are found through an open-addressing table of arena indexes, and
+ * the frontier is a heap of packed (cost, state) <tt>long</tt>s, so the 
+ * search allocates nothing per state once its arrays have grown.
+ * <p>
+ * A <tt>Planner</tt> keeps its arrays from one plan to the next, and must 
+ * not be used by several threads at once.
+ * @author recardona
+ */
+public class Planner {
+	
+	public static final int DEFAULT_TOGGLE_COST = 1;
+	public static final int DEFAULT_MAX_STATES = 1 << 20;
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int ROOT = -1;
+	
+	private final World world;
+	private final Route[] lockable;
+	private final int[] lockableIndex;
+	//the bit of each lockable route, by route id; -1 for the others
+	private final int[][] togglesAt;
+	//the bits of the lockable routes with an end at each location, by location id
+	private final int[] keyNeeded;
+	//the key bit each lockable route needs to be unlocked, by its bit; -1 if none
+	private int[] keyAt;
+	//the key bit picked up at each location, by location id; -1 if none
+	private int keyCount;
+	private final int lockWords;
+	private int words;
+	//longs per state: the location id, then the lock bits, then the key bits
+	
+	private int toggleCost;
+	private int maxStates;
+	
+	private long[] arena;
+	private int[] costs;
+	private int[] parents;
+	private int[] actions;
+	//(route id << 1) | 1 for a toggle, 0 for a move, that led to each state
+	private int stateCount;
+	private boolean truncated;
+	
+	private int[] table;
+	//arena indexes of the visited states, or -1
+	private long[] heap;
+	private int heapSize;
+	private long[] scratch;
+	
+	/**
+	 * @param world the <tt>World</tt> to plan in
+	 * @param lockableRoutes the <tt>Route</tt>s whose locks may be toggled along the way
+	 * @throws <tt>IllegalArgumentException</tt> if a <tt>Route</tt> doesn't leave a <tt>Location</tt> of <i>world</i>
+	 */
+	public Planner(World world, Collection<Route> lockableRoutes) {
+		this.world = world;
+		
+		List<Route> routes = new ArrayList<Route>();
+		boolean[] seen = new boolean[world.getRouteCount()];
+		int maxRouteId = -1;
+		for(Route route : lockableRoutes) {
+			if(route.getSource().world != world || route.id < 0 || route.id >= seen.length) {
+				throw new IllegalArgumentException("The "+route+" does not leave a Location of this World.");
+			}
+			if(!seen[route.id]) {
+				seen[route.id] = true;
+				routes.add(route);
+				maxRouteId = Math.max(maxRouteId, route.id);
+			}
+		}
+		this.lockable = routes.toArray(new Route[routes.size()]);
+		this.lockableIndex = new int[maxRouteId + 1];
+		Arrays.fill(this.lockableIndex, -1);
+		
+		int[] counts = new int[world.getLocationCount()];
+		for(int bit=0; bit<lockable.length; bit++) {
+			lockableIndex[lockable[bit].id] = bit;
+			counts[lockable[bit].getSource().id]++;
+			counts[lockable[bit].getDestination().id]++;
+		}
+		this.togglesAt = new int[counts.length][];
+		for(int id=0; id<counts.length; id++) {
+			togglesAt[id] = new int[counts[id]];
+			counts[id] = 0;
+		}
+		for(int bit=0; bit<lockable.length; bit++) {
+			int source = lockable[bit].getSource().id;
+			int destination = lockable[bit].getDestination().id;
+			togglesAt[source][counts[source]++] = bit;
+			togglesAt[destination][counts[destination]++] = bit;
+		}
+		
+		this.keyNeeded = new int[lockable.length];
+		Arrays.fill(this.keyNeeded, -1);
+		this.keyAt = new int[counts.length];
+		Arrays.fill(this.keyAt, -1);
+		this.keyCount = 0;
+		
+		this.lockWords = (lockable.length + 63) / 64;
+		this.words = 1 + lockWords;
+		this.toggleCost = DEFAULT_TOGGLE_COST;
+		this.maxStates = DEFAULT_MAX_STATES;
+		this.arena = new long[words * 64];
+		this.costs = new int[64];
+		this.parents = new int[64];
+		this.actions = new int[64];
+		this.table = new int[128];
+		this.heap = new long[64];
+		this.scratch = new long[words];
+	}
+	
+	/**
+	 * Makes a lockable <tt>Route</tt> unlockable only once the key lying at
+	 * <i>key</i> has been picked up, by visiting it.  Several 
+	 * <tt>Route</tt>s may need the key at one <tt>Location</tt>; a 
+	 * <tt>Route</tt> needs one key at most, the last one given.
+	 * @param route a <tt>Route</tt> this planner was told is lockable
+	 * @param key where its key lies
+	 * @throws <tt>IllegalArgumentException</tt> if <i>route</i> isn't lockable, or <i>key</i> isn't registered in this planner's <tt>World</tt>
+	 */
+	public void requireKey(Route route, Location key) {
+		int bit = route.id >= 0 && route.id < lockableIndex.length ? lockableIndex[route.id] : -1;
+		if(bit < 0 || lockable[bit] != route) {
+			throw new IllegalArgumentException("The "+route+" is not lockable by this planner.");
+		}
+		if(key.world != world || key.id < 0) {
+			throw new IllegalArgumentException("Location "+key.getName()+" is not registered in this planner's World.");
+		}
+		
+		if(key.id >= keyAt.length) {
+			int oldLength = keyAt.length;
+			keyAt = Arrays.copyOf(keyAt, key.id + 1);
+			Arrays.fill(keyAt, oldLength, keyAt.length, -1);
+		}
+		if(keyAt[key.id] < 0) {
+			keyAt[key.id] = keyCount++;
+			words = 1 + lockWords + (keyCount + 63) / 64;
+			arena = new long[words * costs.length];
+			scratch = new long[words];
+		}
+		keyNeeded[bit] = keyAt[key.id];
+	}
+	
+	/**
+	 * @return the cost of toggling a lock
+	 */
+	public int getToggleCost() {
+		return toggleCost;
+	}
+	
+	/**
+	 * @param toggleCost the cost of unlocking a <tt>Route</tt>, like the cost of a <tt>Route</tt>
+	 * @throws <tt>IllegalArgumentException</tt> if <i>toggleCost</i> is negative
+	 */
+	public void setToggleCost(int toggleCost) {
+		if(toggleCost < 0) {
+			throw new IllegalArgumentException("Toggling a lock cannot have a negative cost.");
+		}
+		this.toggleCost = toggleCost;
+	}
+	
+	/**
+	 * @return the most states a plan may visit before the planner gives up
+	 */
+	public int getMaxStates() {
+		return maxStates;
+	}
+	
+	/**
+	 * @param maxStates the most states a plan may visit before the planner gives up
+	 * @throws <tt>IllegalArgumentException</tt> if <i>maxStates</i> is less than one
+	 */
+	public void setMaxStates(int maxStates) {
+		if(maxStates < 1) {
+			throw new IllegalArgumentException("A plan must be allowed at least one state.");
+		}
+		this.maxStates = maxStates;
+	}
+	
+	/**
+	 * @return the number of states the last plan visited
+	 */
+	public int getStatesVisited() {
+		return stateCount;
+	}
+	
+	/**
+	 * @return true if the last plan ran out of states, so a cheaper plan, or any plan, may have been missed
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+	/**
+	 * Plans from the live state of the <tt>World</tt>.
+	 * @see #plan(WorldSnapshot, Location, LocationMatcher)
+	 */
+	public Plan plan(Location start, LocationMatcher goal) {
+		return plan(world.snapshot(), start, goal);
+	}
+	
+	/**
+	 * Finds the cheapest sequence of moves and toggles that leads from 
+	 * <i>start</i> to a <tt>Location</tt> <i>goal</i> accepts, with the 
+	 * locks as they are in <i>snapshot</i>.
+	 * @param snapshot the lock state to plan from; no keys are held at first
+	 * @param start where to start
+	 * @param goal the <tt>Location</tt>s to get to
+	 * @return the cheapest <tt>Plan</tt>, or null if there is none within {@link #getMaxStates()} states
+	 * @throws <tt>IllegalArgumentException</tt> if <i>start</i> or <i>snapshot</i> are not of this planner's <tt>World</tt>
+	 */
+	public Plan plan(WorldSnapshot snapshot, Location start, LocationMatcher goal) {
+		if(snapshot.getWorld() != world || start.world != world || start.id < 0) {
+			throw new IllegalArgumentException("Location "+start.getName()+" is not registered in this planner's World.");
+		}
+		reset();
+		
+		Arrays.fill(scratch, 0L);
+		scratch[0] = start.id;
+		for(int bit=0; bit<lockable.length; bit++) {
+			if(snapshot.isLocked(lockable[bit])) {
+				scratch[1 + (bit >>> 6)] |= 1L << bit;
+			}
+		}
+		pickUpKeyAt(start.id);
+		relax(0, ROOT, ROOT);
+		
+		while(heapSize > 0) {
+			long top = poll();
+			int cost = (int) (top >>> 32);
+			int state = (int) top;
+			if(cost > costs[state]) {
+				continue;	//already settled more cheaply
+			}
+			
+			int base = state * words;
+			Location here = world.getLocation((int) arena[base]);
+			if(goal.matches(here)) {
+				return buildPlan(state, here);
+			}
+			
+			for(int mask = here.getRouteMask(); mask != 0; mask &= mask - 1) {
+				Route route = here.getRoute(DIRECTIONS[Integer.numberOfTrailingZeros(mask)]);
+				if(isLocked(snapshot, route, base)) {
+					continue;
+				}
+				System.arraycopy(arena, base, scratch, 0, words);
+				scratch[0] = route.getDestination().id;
+				pickUpKeyAt(route.getDestination().id);
+				relax(cost + route.getCost(), state, route.id << 1);
+			}
+			
+			if(here.id < togglesAt.length) {
+				for(int bit : togglesAt[here.id]) {
+					if((arena[base + 1 + (bit >>> 6)] & (1L << bit)) == 0) {
+						continue;	//already unlocked
+					}
+					int key = keyNeeded[bit];
+					if(key >= 0 && (arena[base + 1 + lockWords + (key >>> 6)] & (1L << key)) == 0) {
+						continue;	//the key hasn't been picked up
+					}
+					System.arraycopy(arena, base, scratch, 0, words);
+					scratch[1 + (bit >>> 6)] ^= 1L << bit;
+					relax(cost + toggleCost, state, (lockable[bit].id << 1) | 1);
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Adds the key lying at the <tt>Location</tt> with id <i>locationId</i>,
+	 * if any, to the state in {@link #scratch}.
+	 */
+	private void pickUpKeyAt(int locationId) {
+		if(locationId < keyAt.length && keyAt[locationId] >= 0) {
+			int key = keyAt[locationId];
+			scratch[1 + lockWords + (key >>> 6)] |= 1L << key;
+		}
+	}
+	
+	private boolean isLocked(WorldSnapshot snapshot, Route route, int base) {
+		int bit = route.id < lockableIndex.length ? lockableIndex[route.id] : -1;
+		if(bit >= 0) {
+			return (arena[base + 1 + (bit >>> 6)] & (1L << bit)) != 0;
+		}
+		return route.id < snapshot.getRouteCount() ? snapshot.isLocked(route) : route.isLocked();
+	}
+	
+	/**
+	 * Reaches the state in {@link #scratch} at <i>cost</i>, visiting it if
+	 * it is new, and queueing it if that is cheaper than before.
+	 */
+	private void relax(int cost, int parent, int action) {
+		int slot = find();
+		int state = table[slot];
+		if(state < 0) {
+			if(stateCount == maxStates) {
+				truncated = true;
+				return;
+			}
+			state = add(slot);
+		}
+		else if(cost >= costs[state]) {
+			return;
+		}
+		
+		costs[state] = cost;
+		parents[state] = parent;
+		actions[state] = action;
+		push(((long) cost << 32) | state);
+	}
+	
+	/**
+	 * @return the slot of {@link #table} holding the state in {@link #scratch}, or the free slot where it belongs
+	 */
+	private int find() {
+		int mask = table.length - 1;
+		int slot = hash(scratch, 0) & mask;
+		while(table[slot] >= 0 && !sameState(table[slot])) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private boolean sameState(int state) {
+		int base = state * words;
+		for(int word=0; word<words; word++) {
+			if(arena[base + word] != scratch[word]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private int add(int slot) {
+		int state = stateCount++;
+		if(stateCount > costs.length) {
+			int capacity = costs.length * 2;
+			arena = Arrays.copyOf(arena, capacity * words);
+			costs = Arrays.copyOf(costs, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			actions = Arrays.copyOf(actions, capacity);
+		}
+		System.arraycopy(scratch, 0, arena, state * words, words);
+		table[slot] = state;
+		
+		if(stateCount * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+		return state;
+	}
+	
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		Arrays.fill(table, -1);
+		int mask = capacity - 1;
+		for(int state=0; state<stateCount; state++) {
+			int slot = hash(arena, state * words) & mask;
+			while(table[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = state;
+		}
+	}
+	
+	private int hash(long[] words, int base) {
+		long hash = 0x9E3779B97F4A7C15L;
+		for(int word=0; word<this.words; word++) {
+			hash = (hash ^ words[base + word]) * 0xff51afd7ed558ccdL;
+			hash ^= hash >>> 33;
+		}
+		return (int) hash;
+	}
+	
+	private void reset() {
+		stateCount = 0;
+		heapSize = 0;
+		truncated = false;
+		Arrays.fill(table, -1);
+	}
+	
+	private Plan buildPlan(int state, Location destination) {
+		List<PlanStep> steps = new ArrayList<PlanStep>();
+		for(int at = state; parents[at] != ROOT; at = parents[at]) {
+			Route route = world.getRoute(actions[at] >>> 1);
+			steps.add(new PlanStep((actions[at] & 1) == 0 ? PlanStep.Kind.MOVE : PlanStep.Kind.TOGGLE_LOCK, route));
+		}
+		Collections.reverse(steps);
+		return new Plan(steps, destination, costs[state]);
+	}
+	
+	private void push(long entry) {
+		if(heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		}
+		int i = heapSize++;
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(heap[parent] <= entry) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = entry;
+	}
+	
+	private long poll() {
+		long top = heap[0];
+		long last = heap[--heapSize];
+		int i = 0;
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= heapSize) {
+				break;
+			}
+			if(child + 1 < heapSize && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if(last <= heap[child]) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		if(heapSize > 0) {
+			heap[i] = last;
+		}
+		return top;
+	}
+}
@@ -0,0 +1,407 @@
+package game.venturead.core.world;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages the contents of a <tt>World</tt>'s <tt>Location</tt>s in and out of
+ * the heap, a region at a time, under a memory budget.  A region is a run
+ * of <tt>regionSize</tt> consecutive <tt>Location</tt> ids; both loaders
+ * hand out ids in file order, so a region is usually a neighbourhood.
+ * <p>
+ * Only <tt>Location</tt>s whose descriptions are kept off the heap, in the
+ * <tt>World</tt>'s {@link StringStore} or in a mapped {@link WorldFile},
+ * can be paged, since their descriptions can be decoded again.  While its
+ * region is out, such a <tt>Location</tt> is a stub: its id, name and
+ * <tt>Route</tt>s, which the <tt>World</tt>'s indexes are built on, stay
+ * put, but its description and rendered text are dropped.  A region is
+ * paged in when a <tt>Character</tt> is placed in it or moves into it,
+ * when a description in it is asked for, and when 
+ * {@link World#findPath(Location, Location)} first finds a <tt>Path</tt> 
+ * through it, rather than answering from its cache.
+ * <p>
+ * When more bytes are resident than the budget allows, the least recently
+ * used regions are evicted, skipping those that are pinned or that have
+ * <tt>Character</tt>s in them.  Given a prefetch <tt>Executor</tt>, the
+ * pager pages in the regions next to each region it pages in, and those a
+ * <tt>Path</tt> passes through, in the background, so that a
+ * <tt>Character</tt> moving on seldom waits for a page-in.
+ * @author recardona
+ */
+public final class RegionPager {
+
+	private final World world;
+	private final int regionSize;
+	private volatile long budget;
+	private volatile Executor prefetchExecutor;
+
+	private final LinkedHashMap<Integer,Region> resident;
+	//the resident regions, least recently used first; also guards regions and residentBytes
+	private Region[] regions;
+	private long residentBytes;
+
+	private final AtomicLong loads;
+	private final AtomicLong prefetches;
+	private final AtomicLong evictions;
+	private final AtomicLong hits;
+	private final AtomicLong loadNanos;
+	private final AtomicLong maxLoadNanos;
+
+	/**
+	 * Creates a pager for a <tt>World</tt>, replacing any it had.  Every
+	 * region starts out paged out; descriptions already decoded are counted
+	 * once their region is first paged in.
+	 * @param world the <tt>World</tt> to page
+	 * @param regionSize how many consecutive <tt>Location</tt> ids make a region
+	 * @param budget how many bytes of <tt>Location</tt> contents may be resident
+	 * @throws <tt>IllegalArgumentException</tt> if <i>regionSize</i> isn't positive or <i>budget</i> is negative
+	 */
+	public RegionPager(World world, int regionSize, long budget) {
+		if(regionSize < 1) {
+			throw new IllegalArgumentException("A region must hold at least one location.");
+		}
+		if(budget < 0) {
+			throw new IllegalArgumentException("The memory budget can't be negative.");
+		}
+		this.world = world;
+		this.regionSize = regionSize;
+		this.budget = budget;
+		this.resident = new LinkedHashMap<Integer,Region>(16, 0.75f, true);
+		this.regions = new Region[0];
+		this.loads = new AtomicLong();
+		this.prefetches = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.hits = new AtomicLong();
+		this.loadNanos = new AtomicLong();
+		this.maxLoadNanos = new AtomicLong();
+		world.pager = this;
+	}
+
+	/**
+	 * @return how many consecutive <tt>Location</tt> ids make a region
+	 */
+	public int getRegionSize() {
+		return this.regionSize;
+	}
+
+	/**
+	 * @param location a <tt>Location</tt> in the paged <tt>World</tt>
+	 * @return the index of its region
+	 */
+	public int getRegionOf(Location location) {
+		return location.getId() / regionSize;
+	}
+
+	/**
+	 * @return how many bytes of <tt>Location</tt> contents may be resident
+	 */
+	public long getBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * Changes the memory budget, evicting regions if it is now exceeded.
+	 * @param budget how many bytes of <tt>Location</tt> contents may be resident
+	 * @throws <tt>IllegalArgumentException</tt> if <i>budget</i> is negative
+	 */
+	public void setBudget(long budget) {
+		if(budget < 0) {
+			throw new IllegalArgumentException("The memory budget can't be negative.");
+		}
+		this.budget = budget;
+		evictOverBudget(null);
+	}
+
+	/**
+	 * @param executor pages in neighbouring regions in the background, or null to not prefetch
+	 */
+	public void setPrefetchExecutor(Executor executor) {
+		this.prefetchExecutor = executor;
+	}
+
+	/**
+	 * @return roughly how many bytes of <tt>Location</tt> contents this pager has paged in and not evicted
+	 */
+	public long getResidentBytes() {
+		synchronized(resident) {
+			return residentBytes;
+		}
+	}
+
+	/**
+	 * @param location a <tt>Location</tt> in the paged <tt>World</tt>
+	 * @return true if its region is paged in
+	 */
+	public boolean isResident(Location location) {
+		return regionFor(location.getId()).isResident;
+	}
+
+	/**
+	 * Pages in the region of a <tt>Location</tt> if it is out, and marks it
+	 * as the most recently used.
+	 * @param location a <tt>Location</tt> in the paged <tt>World</tt>
+	 */
+	public void touch(Location location) {
+		Region region = regionFor(location.getId());
+		if(load(region)) {
+			prefetchNeighbours(region);
+			evictOverBudget(region);
+		}
+		else {
+			hits.incrementAndGet();
+			synchronized(resident) {
+				resident.get(region.index);
+			}
+		}
+	}
+
+	/**
+	 * Pages in the region of a <tt>Location</tt> and keeps it in until it is
+	 * unpinned as many times as it was pinned.
+	 * @param location a <tt>Location</tt> in the paged <tt>World</tt>
+	 */
+	public void pin(Location location) {
+		Region region = regionFor(location.getId());
+		synchronized(resident) {
+			region.pins++;
+		}
+		touch(location);
+	}
+
+	/**
+	 * @param location a <tt>Location</tt> pinned by {@link #pin(Location)}
+	 * @throws <tt>IllegalStateException</tt> if its region isn't pinned
+	 */
+	public void unpin(Location location) {
+		Region region = regionFor(location.getId());
+		synchronized(resident) {
+			if(region.pins == 0) {
+				throw new IllegalStateException("The region of "+location.getName()+" isn't pinned.");
+			}
+			region.pins--;
+		}
+		evictOverBudget(null);
+	}
+
+	/**
+	 * Pages in the regions some <tt>Location</tt>s are in, on the prefetch
+	 * <tt>Executor</tt> if there is one, or else right away.  A run of
+	 * <tt>Location</tt>s in the same region, as along a <tt>Path</tt>, 
+	 * looks the region up once.
+	 * @param locations <tt>Location</tt>s in the paged <tt>World</tt>, such as a <tt>Path</tt>
+	 */
+	public void prefetch(Iterable<Location> locations) {
+		int previous = -1;
+		for(Location location : locations) {
+			int index = location.getId() / regionSize;
+			if(index != previous) {
+				previous = index;
+				Region region = regionFor(location.getId());
+				if(!region.isResident) {
+					schedule(region);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return how many regions have been paged in, by prefetching or otherwise
+	 */
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	/**
+	 * @return how many of those were paged in by prefetching
+	 */
+	public long getPrefetchCount() {
+		return prefetches.get();
+	}
+
+	/**
+	 * @return how many regions have been evicted
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return how many times a region was touched while already resident
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the nanoseconds spent paging regions in, in total
+	 */
+	public long getLoadNanos() {
+		return loadNanos.get();
+	}
+
+	/**
+	 * @return the nanoseconds taken by the slowest page-in
+	 */
+	public long getMaxLoadNanos() {
+		return maxLoadNanos.get();
+	}
+
+	/**
+	 * @param id the id of a <tt>Location</tt>
+	 * @return its region, created paged out if it hasn't been seen yet
+	 */
+	private Region regionFor(int id) {
+		int index = id / regionSize;
+		synchronized(resident) {
+			if(index >= regions.length) {
+				regions = Arrays.copyOf(regions, Math.max(index + 1, regions.length * 2));
+			}
+			Region region = regions[index];
+			if(region == null) {
+				region = new Region(index);
+				regions[index] = region;
+			}
+			return region;
+		}
+	}
+
+	/**
+	 * @return true if <i>region</i> was paged in, false if it was already resident
+	 */
+	private boolean load(Region region) {
+		synchronized(region) {
+			if(region.isResident) {
+				return false;
+			}
+			long start = System.nanoTime();
+			long bytes = 0;
+			int end = Math.min((region.index + 1) * regionSize, world.getLocationCount());
+			for(int id=region.index * regionSize; id<end; id++) {
+				bytes += world.getLocation(id).pageIn();
+			}
+			long took = System.nanoTime() - start;
+
+			synchronized(resident) {
+				region.bytes = bytes;
+				region.isResident = true;
+				resident.put(region.index, region);
+				residentBytes += bytes;
+			}
+			loads.incrementAndGet();
+			loadNanos.addAndGet(took);
+			long max;
+			while(took > (max = maxLoadNanos.get()) && !maxLoadNanos.compareAndSet(max, took)) {
+			}
+			return true;
+		}
+	}
+
+	private void prefetchNeighbours(Region region) {
+		if(prefetchExecutor == null) {
+			return;
+		}
+		Set<Integer> seen = new HashSet<Integer>();
+		int end = Math.min((region.index + 1) * regionSize, world.getLocationCount());
+		for(int id=region.index * regionSize; id<end; id++) {
+			for(Route route : world.getLocation(id).getConnectingRoutes().values()) {
+				int neighbour = route.getDestination().getId();
+				if(neighbour >= 0 && neighbour / regionSize != region.index && seen.add(neighbour / regionSize)) {
+					Region next = regionFor(neighbour);
+					if(!next.isResident) {
+						schedule(next);
+					}
+				}
+			}
+		}
+	}
+
+	private void schedule(final Region region) {
+		Executor executor = this.prefetchExecutor;
+		if(executor == null) {
+			if(load(region)) {
+				evictOverBudget(region);
+			}
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				if(load(region)) {
+					prefetches.incrementAndGet();
+					evictOverBudget(region);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Evicts the least recently used regions that may be evicted until the
+	 * budget is met, other than <i>keep</i>, the region just paged in.
+	 * Whether a region has <tt>Character</tt>s in it is read without
+	 * locking; a <tt>Character</tt> arriving as its region is evicted only
+	 * means a description is decoded again.
+	 */
+	private void evictOverBudget(Region keep) {
+		while(true) {
+			Region victim = null;
+			synchronized(resident) {
+				if(residentBytes <= budget) {
+					return;
+				}
+				Iterator<Region> leastRecent = resident.values().iterator();
+				while(victim == null && leastRecent.hasNext()) {
+					Region region = leastRecent.next();
+					if(region != keep && region.pins == 0 && !isOccupied(region)) {
+						victim = region;
+					}
+				}
+			}
+			if(victim == null) {
+				return;
+			}
+
+			synchronized(victim) {
+				synchronized(resident) {
+					if(resident.get(victim.index) != victim || victim.pins > 0) {
+						continue;
+					}
+					resident.remove(victim.index);
+					residentBytes -= victim.bytes;
+					victim.isResident = false;
+				}
+				int end = Math.min((victim.index + 1) * regionSize, world.getLocationCount());
+				for(int id=victim.index * regionSize; id<end; id++) {
+					world.getLocation(id).pageOut();
+				}
+			}
+			evictions.incrementAndGet();
+		}
+	}
+
+	private boolean isOccupied(Region region) {
+		int end = Math.min((region.index + 1) * regionSize, world.getLocationCount());
+		for(int id=region.index * regionSize; id<end; id++) {
+			if(!world.getLocation(id).getCharactersThatAreHere().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Region {
+
+		final int index;
+		volatile boolean isResident;
+		long bytes;
+		int pins;
+		//guarded by the pager's resident map
+
+		Region(int index) {
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package game.venturead.core.world;
+
+import java.nio.charset.Charset;
+
+/**
+ * A piece of a <tt>Location</tt>'s description, kept both as text and as
+ * UTF-8, with the version of the <tt>Location</tt> it was rendered from.
+ * @author recardona
+ */
+final class RenderedFragment {
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	final int version;
+	final String text;
+	final byte[] utf8;
+	
+	RenderedFragment(int version, String text) {
+		this.version = version;
+		this.text = text;
+		this.utf8 = text.getBytes(UTF8);
+	}
+}
@@ -7,25 +7,53 @@ package game.venturead.core.world;
  */
 public class Route {
 
-	private boolean isLocked;
+	private volatile boolean isLocked;
 	private Location source;
 	private Location destination;
+	private int cost;
+	
+	Direction direction;
+	//the Direction this Route leaves its source at, once connected
+	int id;
+	//dense index assigned by the World this Route was created in; -1 otherwise
+	int compiledEdge;
+	//the edge standing for this Route in its World's CompiledGraph, or -1
+	boolean isChangedSinceSnapshot;
+	//whether its World's next snapshot must read its lock; guarded by the stripe of its source
 
 	/**
 	 * Creates a <tt>Route</tt> from the <i>source</i> <tt>Location</tt>
-	 * to the <i>destination</i>
+	 * to the <i>destination</i>, with a traversal cost of 1
 	 * @param source one <tt>Location</tt>
 	 * @param destination another <tt>Location</tt>
 	 * @throws <tt>IllegalArgumentException</tt> if <i>source</i> and <i>destination</i> are the same
 	 */
 	public Route(Location source, Location destination) {
+		this(source, destination, 1);
+	}
+
+	/**
+	 * Creates a <tt>Route</tt> from the <i>source</i> <tt>Location</tt>
+	 * to the <i>destination</i>, with the given traversal cost
+	 * @param source one <tt>Location</tt>
+	 * @param destination another <tt>Location</tt>
+	 * @param cost the cost of traversing this <tt>Route</tt>, such as its distance or travel time
+	 * @throws <tt>IllegalArgumentException</tt> if <i>source</i> and <i>destination</i> are the same, or <i>cost</i> is negative
+	 */
+	public Route(Location source, Location destination, int cost) {
 		if(source.equals(destination)) {
 			throw new IllegalArgumentException("Locations cannot be connected to themselves.");
 		}
+		if(cost < 0) {
+			throw new IllegalArgumentException("A Route cannot have a negative cost.");
+		}
 
 		this.source = source;
 		this.destination = destination;
+		this.cost = cost;
 		this.isLocked = false;
+		this.compiledEdge = -1;
+		this.id = -1;
 	}
 
 	/**
@@ -35,10 +63,39 @@ public class Route {
 		return isLocked;
 	}
 
+	/**
+	 * @return the id of this <tt>Route</tt> in its <tt>World</tt>, or -1 if it leaves an unregistered <tt>Location</tt>
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the cost of traversing this <tt>Route</tt>
+	 */
+	public int getCost() {
+		return cost;
+	}
+
 	/**
 	 * Toggles this <tt>Route</tt>'s lock
 	 */
 	public void toggleLock() {
+		if(this.source.world != null) {
+			this.source.world.toggleRouteLock(this);
+			return;
+		}
+		
+		flipLock();
+		if(this.direction != null) {
+			this.source.routeLockToggled(this);
+		}
+	}
+	
+	/**
+	 * Flips the lock bit alone; the <tt>World</tt> brings everything else up to date.
+	 */
+	void flipLock() {
 		this.isLocked = !this.isLocked;
 	}
 
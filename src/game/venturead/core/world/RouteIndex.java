@@ -0,0 +1,105 @@
+package game.venturead.core.world;
+
+import java.util.Arrays;
+
+/**
+ * Finds the <tt>Route</tt> from one <tt>Location</tt> to another in O(1),
+ * keyed by their ids packed into one <tt>long</tt>.  An open-addressing table
+ * with linear probing, so lookups neither box keys nor chase entry objects.
+ * Where several <tt>Route</tt>s lead from one <tt>Location</tt> to the same 
+ * other, the first one indexed is kept.
+ * @author recardona
+ */
+class RouteIndex {
+	
+	private static final long EMPTY = -1L;
+		//packed ids are never negative
+	
+	private long[] keys;
+	private Route[] routes;
+	private int size;
+	
+	RouteIndex() {
+		this.keys = new long[16];
+		this.routes = new Route[16];
+		Arrays.fill(this.keys, EMPTY);
+	}
+	
+	/**
+	 * @return the number of (source, destination) pairs indexed
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * @param source the id of the source <tt>Location</tt>
+	 * @param destination the id of the destination <tt>Location</tt>
+	 * @return the <tt>Route</tt> from <i>source</i> to <i>destination</i>, or null
+	 */
+	Route get(int source, int destination) {
+		long key = pack(source, destination);
+		int mask = keys.length - 1;
+		for(int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if(keys[slot] == key) {
+				return routes[slot];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Indexes <i>route</i> under its source and destination, unless a 
+	 * <tt>Route</tt> between them is already indexed.
+	 * @param source the id of the source <tt>Location</tt>
+	 * @param destination the id of the destination <tt>Location</tt>
+	 * @param route the <tt>Route</tt> between them
+	 */
+	void add(int source, int destination, Route route) {
+		if((size + 1) * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+		insert(pack(source, destination), route);
+	}
+	
+	private void insert(long key, Route route) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while(keys[slot] != EMPTY) {
+			if(keys[slot] == key) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		keys[slot] = key;
+		routes[slot] = route;
+		size++;
+	}
+	
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Route[] oldRoutes = routes;
+		keys = new long[capacity];
+		routes = new Route[capacity];
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		
+		for(int slot=0; slot<oldKeys.length; slot++) {
+			if(oldKeys[slot] != EMPTY) {
+				insert(oldKeys[slot], oldRoutes[slot]);
+			}
+		}
+	}
+	
+	static long pack(int source, int destination) {
+		return ((long) source << 32) | (destination & 0xFFFFFFFFL);
+	}
+	
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
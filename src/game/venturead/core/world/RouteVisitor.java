@@ -0,0 +1,16 @@
+package game.venturead.core.world;
+
+/**
+ * Receives the <tt>Route</tt>s leaving a <tt>Location</tt>, one at a time,
+ * from {@link Location#forEachRoute(RouteVisitor)} and 
+ * {@link Location#forEachUnlockedRoute(RouteVisitor)}.
+ * @author recardona
+ */
+public interface RouteVisitor {
+	
+	/**
+	 * @param direction the <tt>Direction</tt> of the <tt>Route</tt>, relative to the <tt>Location</tt>
+	 * @param route the <tt>Route</tt>
+	 */
+	void visit(Direction direction, Route route);
+}
@@ -0,0 +1,49 @@
+package game.venturead.core.world;
+
+/**
+ * The search engines that {@link World#findPath(Location, Location, SearchAlgorithm)}
+ * can use to connect two <tt>Location</tt>s.  All engines honour locked
+ * <tt>Route</tt>s; they differ only in how they explore the <tt>World</tt>.
+ * @author recardona
+ */
+public enum SearchAlgorithm {
+	
+	/**
+	 * The original search, which keeps its open and closed <tt>Path</tt>s in
+	 * queues and scans them linearly on every expansion.  Kept around so its
+	 * results can be compared against the other engines.
+	 */
+	LEGACY,
+	
+	/**
+	 * Dijkstra over per-<tt>Location</tt> distance and parent arrays, with an
+	 * indexed binary heap supporting decrease-key.  O((V+E) log V) per query.
+	 */
+	DIJKSTRA,
+	
+	/**
+	 * Dijkstra run from both ends at once: forwards from the start, and 
+	 * backwards from the goal over incoming <tt>Route</tt>s, until the two
+	 * frontiers prove they have met on a shortest <tt>Path</tt>.  Settles 
+	 * roughly half as many <tt>Location</tt>s as <tt>DIJKSTRA</tt> on large,
+	 * open maps.
+	 */
+	BIDIRECTIONAL,
+	
+	/**
+	 * A*, guided by the positions of the <tt>World</tt>'s 
+	 * {@link World#getCoordinateEmbedding() CoordinateEmbedding}.  On grid-like
+	 * maps it settles a small fraction of the <tt>Location</tt>s that 
+	 * <tt>DIJKSTRA</tt> does, and it is never worse than it.
+	 */
+	A_STAR,
+	
+	/**
+	 * HPA*-style search over clusters of nearby <tt>Location</tt>s: the
+	 * abstract graph of cluster entrances is searched first, and only the
+	 * clusters on its <tt>Path</tt> are searched in full.  Meant for worlds
+	 * with millions of <tt>Location</tt>s; see 
+	 * {@link World#setClusterSize(int)}.
+	 */
+	HIERARCHICAL;
+}
@@ -0,0 +1,42 @@
+package game.venturead.core.world;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Somewhere a <tt>Location</tt>'s description is kept as UTF-8 outside of
+ * the heap, by index: a {@link StringStore}, or the string table of a
+ * mapped {@link WorldFile}.
+ * @author recardona
+ */
+interface StringSource {
+	
+	/**
+	 * @param index the index of a string
+	 * @return the string, decoded
+	 */
+	String get(int index);
+	
+	/**
+	 * @param index the index of a string
+	 * @return how many bytes the string takes in UTF-8
+	 */
+	int getByteLength(int index);
+	
+	/**
+	 * Copies the UTF-8 bytes of a string to a stream, without decoding them.
+	 * @param index the index of a string
+	 * @param out where to write it
+	 * @throws IOException if <i>out</i> does
+	 */
+	void writeTo(int index, OutputStream out) throws IOException;
+	
+	/**
+	 * Copies the UTF-8 bytes of a string to a buffer, without decoding them.
+	 * @param index the index of a string
+	 * @param out where to put it
+	 * @throws <tt>BufferOverflowException</tt> if <i>out</i> has less room than {@link #getByteLength(int)}
+	 */
+	void writeTo(int index, ByteBuffer out);
+}
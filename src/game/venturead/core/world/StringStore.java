@@ -0,0 +1,222 @@
+package game.venturead.core.world;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An interned table of strings kept as UTF-8 in direct <tt>ByteBuffer</tt>s,
+ * outside of the heap and so out of the way of the garbage collector.  Each
+ * distinct string is stored once and named by an int handle, however many
+ * times it is interned; a <tt>World</tt> keeps the descriptions of its
+ * <tt>Location</tt>s here, where the long, much repeated ones of generated
+ * worlds cost a few bytes per <tt>Location</tt> rather than a
+ * <tt>String</tt> each.
+ * <p>
+ * Strings are packed into chunks of {@link #CHUNK_SIZE} bytes, and never
+ * move once stored, so reading one takes no lock; interning is
+ * synchronized.
+ * @author recardona
+ */
+public final class StringStore implements StringSource {
+
+	public static final int CHUNK_SIZE = 1 << 20;
+
+	private volatile ByteBuffer[] chunks;
+	private int chunkCount;
+	private volatile long[] positions;
+	//by handle: (chunk << 32) | position in the chunk
+	private volatile int[] lengths;
+	//by handle: how many bytes the string takes in UTF-8
+	private int[] hashes;
+	//by handle: the String hashCode of the string
+	private int[] table;
+	//open-addressed handles + 1 by hash; 0 is empty
+	private volatile int size;
+	//written last when a string is stored, so that a handle below it can be read without locking
+	private long byteCount;
+
+	public StringStore() {
+		this.chunks = new ByteBuffer[4];
+		this.chunkCount = 0;
+		this.positions = new long[64];
+		this.lengths = new int[64];
+		this.hashes = new int[64];
+		this.table = new int[128];
+		this.size = 0;
+		this.byteCount = 0;
+	}
+
+	/**
+	 * Stores a string, unless an equal one is stored already.
+	 * @param string the string to store
+	 * @return the handle of the stored string
+	 * @throws <tt>IllegalArgumentException</tt> if <i>string</i> is null
+	 */
+	public synchronized int intern(String string) {
+		if(string == null) {
+			throw new IllegalArgumentException("A null string can't be stored.");
+		}
+		int hash = string.hashCode();
+		byte[] bytes = string.getBytes(RenderedFragment.UTF8);
+		int mask = table.length - 1;
+		int slot = mix(hash) & mask;
+		for(int entry = table[slot]; entry != 0; entry = table[slot]) {
+			int handle = entry - 1;
+			if(hashes[handle] == hash && contentEquals(handle, bytes)) {
+				return handle;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		int handle = size;
+		if(handle == lengths.length) {
+			int capacity = handle * 2;
+			hashes = Arrays.copyOf(hashes, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+		positions[handle] = append(bytes);
+		lengths[handle] = bytes.length;
+		hashes[handle] = hash;
+		table[slot] = handle + 1;
+		byteCount += bytes.length;
+		size = handle + 1;
+		if(size * 2 > table.length) {
+			rehash();
+		}
+		return handle;
+	}
+
+	/**
+	 * @return how many distinct strings are stored
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return how many bytes of UTF-8 are stored, off the heap
+	 */
+	public synchronized long getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * @param handle the handle of a stored string
+	 * @return the string, decoded
+	 */
+	public String get(int handle) {
+		int length = getByteLength(handle);
+		byte[] bytes = new byte[length];
+		view(handle, length).get(bytes);
+		return new String(bytes, RenderedFragment.UTF8);
+	}
+
+	/**
+	 * @param handle the handle of a stored string
+	 * @return how many bytes it takes in UTF-8
+	 */
+	public int getByteLength(int handle) {
+		if(handle < 0 || handle >= size) {
+			throw new IndexOutOfBoundsException("No string has the handle "+handle);
+		}
+		return lengths[handle];
+	}
+
+	/**
+	 * Copies the UTF-8 bytes of a stored string to a stream, without decoding them.
+	 * @param handle the handle of a stored string
+	 * @param out where to write it
+	 * @throws IOException if <i>out</i> does
+	 */
+	public void writeTo(int handle, OutputStream out) throws IOException {
+		int length = getByteLength(handle);
+		ByteBuffer view = view(handle, length);
+		byte[] buffer = new byte[Math.min(length, 8192)];
+		while(view.hasRemaining()) {
+			int piece = Math.min(buffer.length, view.remaining());
+			view.get(buffer, 0, piece);
+			out.write(buffer, 0, piece);
+		}
+	}
+
+	/**
+	 * Copies the UTF-8 bytes of a stored string to a buffer, without decoding them.
+	 * @param handle the handle of a stored string
+	 * @param out where to put it
+	 * @throws <tt>BufferOverflowException</tt> if <i>out</i> has less room than {@link #getByteLength(int)}
+	 */
+	public void writeTo(int handle, ByteBuffer out) {
+		int length = getByteLength(handle);
+		if(out.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		out.put(view(handle, length));
+	}
+
+	/**
+	 * @return a buffer over the bytes of the string with <i>handle</i>, of its own position and limit
+	 */
+	private ByteBuffer view(int handle, int length) {
+		long position = positions[handle];
+		ByteBuffer view = chunks[(int) (position >>> 32)].duplicate();
+		view.limit((int) position + length);
+		view.position((int) position);
+		return view;
+	}
+
+	private boolean contentEquals(int handle, byte[] bytes) {
+		if(lengths[handle] != bytes.length) {
+			return false;
+		}
+		long position = positions[handle];
+		ByteBuffer chunk = chunks[(int) (position >>> 32)];
+		int start = (int) position;
+		for(int i=0; i<bytes.length; i++) {
+			if(chunk.get(start + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies <i>bytes</i> into the last chunk, starting a new one if they
+	 * don't fit; a string longer than a chunk gets a chunk of its own.
+	 * @return where they were put, as (chunk << 32) | position
+	 */
+	private long append(byte[] bytes) {
+		ByteBuffer current = chunkCount == 0 ? null : chunks[chunkCount - 1];
+		if(current == null || current.remaining() < bytes.length) {
+			current = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, bytes.length));
+			if(chunkCount == chunks.length) {
+				chunks = Arrays.copyOf(chunks, chunkCount * 2);
+			}
+			chunks[chunkCount++] = current;
+		}
+		int position = current.position();
+		current.put(bytes);
+		return ((long) (chunkCount - 1) << 32) | position;
+	}
+
+	private void rehash() {
+		int[] grown = new int[table.length * 2];
+		int mask = grown.length - 1;
+		for(int handle=0; handle<size; handle++) {
+			int slot = mix(hashes[handle]) & mask;
+			while(grown[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			grown[slot] = handle + 1;
+		}
+		table = grown;
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -1,57 +1,537 @@
 package game.venturead.core.world;
 
+import game.venturead.core.characters.Character;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class World 
 {
-	private HashSet<Location> worldLocations;
-	//locations must be unique, hashset provides O(1) basic operations
+	private static final int STRIPE_COUNT = 64;
+	//must be a power of two
+
+	private Set<Location> worldLocations;
+	//locations must be unique, a concurrent set provides O(1) basic operations
 
-	private HashSet<Character> worldCharacters;
+	private Set<Character> worldCharacters;
 	//characters must be unique!
 
+	final ReentrantReadWriteLock structureLock;
+	//held for writing while locations, characters or routes are registered
+	private final ReentrantLock[] stripes;
+	//a location's stripe guards its occupants and the locks of the routes leaving it
+	private final Object queryLock;
+	//guards the derived indexes and the search engines' scratch space
+
+	private AppendOnlyList<Location> locationsById;
+	//every registered location, indexed by its id
+	private final StringStore strings;
+	//the descriptions of registered locations, interned off the heap
+	private NameIndex nameIndex;
+	//location ids by name, and by name prefix
+	private AppendOnlyList<Character> charactersById;
+	//every registered character, indexed by its id
+	private OccupancyTable occupancy;
+	//where each character is, by character id
+	private volatile WorldSnapshot published;
+	//the route locks and character placement as of the last snapshot, kept persistently
+	private final ChangeLog[] changeLogs;
+	//by stripe: the routes and characters changed under it since the last snapshot
+
+	private AppendOnlyList<Route> routesById;
+	//every route leaving a registered location, indexed by its id
+	private RouteIndex routeIndex;
+	//routes by (source id, destination id)
+
+	private CompiledGraph compiledGraph;
+	//compiled lazily, and dropped whenever the world changes shape
+	private CoordinateEmbedding coordinateEmbedding;
+	//laid out lazily from the compiled graph, and dropped with it
+
+	private ConnectivityIndex connectivityIndex;
+
+	private long epoch;
+	//moves on whenever a route is created or (un)locked, invalidating cached paths
+	private PathCache pathCache;
+
+	private SearchAlgorithm searchAlgorithm;
+	private DijkstraSearch dijkstraSearch;
+	private BidirectionalSearch bidirectionalSearch;
+	private HierarchicalSearch hierarchicalSearch;
+
+	volatile RegionPager pager;
+	//pages location contents in and out, if this world is paged
+	volatile MutationJournal journal;
+	//records every change, if this world is journaled
+
 	public World() {
-		worldLocations  = new HashSet<Location>();
-		worldCharacters = new HashSet<Character>(); 
+		worldLocations  = Collections.newSetFromMap(new ConcurrentHashMap<Location,Boolean>());
+		worldCharacters = Collections.newSetFromMap(new ConcurrentHashMap<Character,Boolean>()); 
+		structureLock   = new ReentrantReadWriteLock();
+		stripes         = new ReentrantLock[STRIPE_COUNT];
+		for(int i=0; i<STRIPE_COUNT; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		changeLogs      = new ChangeLog[STRIPE_COUNT];
+		for(int i=0; i<STRIPE_COUNT; i++) {
+			changeLogs[i] = new ChangeLog();
+		}
+		queryLock       = new Object();
+		locationsById   = new AppendOnlyList<Location>();
+		strings         = new StringStore();
+		nameIndex       = new NameIndex(locationsById);
+		charactersById  = new AppendOnlyList<Character>();
+		occupancy       = new OccupancyTable();
+		published       = new WorldSnapshot(this, PersistentIntTrie.EMPTY, PersistentIntTrie.EMPTY, 0, 0);
+		routesById      = new AppendOnlyList<Route>();
+		routeIndex      = new RouteIndex();
+		connectivityIndex = new ConnectivityIndex(locationsById);
+		pathCache       = new PathCache(PathCache.DEFAULT_CAPACITY);
+		searchAlgorithm = SearchAlgorithm.DIJKSTRA;
+		dijkstraSearch  = new DijkstraSearch();
+		bidirectionalSearch = new BidirectionalSearch();
+		hierarchicalSearch = new HierarchicalSearch(HierarchicalSearch.DEFAULT_CLUSTER_SIZE);
+	}
+
+	/**
+	 * @return the <tt>MutationJournal</tt> recording the changes to this <tt>World</tt>, or null if it isn't journaled
+	 * @see MutationJournal#recover(CharacterResolver)
+	 */
+	public MutationJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * @return the off-heap <tt>StringStore</tt> the descriptions of this <tt>World</tt>'s <tt>Location</tt>s are kept in
+	 */
+	public StringStore getStringStore() {
+		return strings;
+	}
+
+	/**
+	 * @return the <tt>RegionPager</tt> paging this <tt>World</tt>, or null if it isn't paged
+	 */
+	public RegionPager getRegionPager() {
+		return pager;
 	}
 
 	/**
 	 * @return the worldLocations
 	 */
-	public HashSet<Location> getWorldLocations() {
+	public Set<Location> getWorldLocations() {
 		return worldLocations;
 	}
 
 	/**
 	 * @return the worldCharacters
 	 */
-	public HashSet<Character> getWorldCharacters() {
+	public Set<Character> getWorldCharacters() {
 		return worldCharacters;
 	}
 
+	/**
+	 * Returns the <tt>CompiledGraph</tt> of this <tt>World</tt>, compiling it 
+	 * first if <tt>Location</tt>s or <tt>Route</tt>s were added since the last one.
+	 * <p>
+	 * This is the live graph the <tt>World</tt> searches, not a copy: locking
+	 * or unlocking a <tt>Route</tt> changes its lock bits in place, under the
+	 * <tt>World</tt>'s query lock.  Reading them while <tt>Route</tt>s are 
+	 * being toggled on other threads needs the copy from 
+	 * {@link #getFrozenGraph()}.
+	 * @return the current <tt>CompiledGraph</tt>
+	 * @see #getFrozenGraph()
+	 */
+	public CompiledGraph getCompiledGraph() {
+		synchronized(queryLock) {
+			if(compiledGraph == null) {
+				compiledGraph = CompiledGraph.compile(locationsById);
+			}
+			return compiledGraph;
+		}
+	}
+
+	/**
+	 * Returns positions for the <tt>Location</tt>s of this <tt>World</tt>, as 
+	 * laid out by the <tt>Direction</tt>s of their <tt>Route</tt>s.  
+	 * <tt>Route</tt>s that disagree with the layout are reported by the 
+	 * embedding's {@link CoordinateEmbedding#getConflicts() getConflicts()}.
+	 * @return the <tt>CoordinateEmbedding</tt> of the current <tt>CompiledGraph</tt>
+	 */
+	public CoordinateEmbedding getCoordinateEmbedding() {
+		synchronized(queryLock) {
+			CompiledGraph graph = getCompiledGraph();
+			if(coordinateEmbedding == null) {
+				coordinateEmbedding = CoordinateEmbedding.embed(graph);
+			}
+			return coordinateEmbedding;
+		}
+	}
+
+	/**
+	 * @return the <tt>PathCache</tt> serving {@link #findPath(Location, Location)}
+	 */
+	public PathCache getPathCache() {
+		return pathCache;
+	}
+
+	/**
+	 * @return the <tt>SearchAlgorithm</tt> used by {@link #findPath(Location, Location)}
+	 */
+	public SearchAlgorithm getSearchAlgorithm() {
+		return searchAlgorithm;
+	}
+
+	/**
+	 * Sets the <tt>SearchAlgorithm</tt> used by {@link #findPath(Location, Location)}.
+	 * @param searchAlgorithm the engine to use
+	 */
+	public void setSearchAlgorithm(SearchAlgorithm searchAlgorithm) {
+		if(searchAlgorithm == null) {
+			throw new IllegalArgumentException("The SearchAlgorithm cannot be null.");
+		}
+		synchronized(queryLock) {
+			this.searchAlgorithm = searchAlgorithm;
+		}
+	}
+
+	/**
+	 * @return the number of <tt>Location</tt>s per cluster used by {@link SearchAlgorithm#HIERARCHICAL}
+	 */
+	public int getClusterSize() {
+		synchronized(queryLock) {
+			return hierarchicalSearch.getClusterSize();
+		}
+	}
+
+	/**
+	 * Sets the number of <tt>Location</tt>s per cluster used by 
+	 * {@link SearchAlgorithm#HIERARCHICAL}.  The clusters are rebuilt on the
+	 * next hierarchical query.
+	 * @param clusterSize the number of <tt>Location</tt>s to grow each cluster to
+	 * @throws <tt>IllegalArgumentException</tt> if <i>clusterSize</i> is less than one
+	 */
+	public void setClusterSize(int clusterSize) {
+		HierarchicalSearch search = new HierarchicalSearch(clusterSize);
+		synchronized(queryLock) {
+			hierarchicalSearch = search;
+		}
+	}
+
 	/**
 	 * Registers a new <tt>Location</tt> in this <tt>World</tt>.
 	 * The <tt>Location</tt> must be uniquely named, otherwise, this method
-	 * throws an exception.
+	 * throws an exception.  Its description is interned in the
+	 * {@link #getStringStore() StringStore} rather than kept as a 
+	 * <tt>String</tt>.
 	 * @param name the name of the new <tt>Location</tt>
 	 * @param description the description of the new <tt>Location</tt>
 	 * @return the freshly created <tt>Location</tt>
 	 * @throws <tt>IllegalArgumentException</tt> if the <tt>Location</tt> name has already been registered
 	 */
 	public Location registerNewLocation(String name, String description) {
-		Location newLocation = Location.newLocation(name, description);
-		if(worldLocations.contains(newLocation)) {
-			throw new IllegalArgumentException("There has already been a location registered with name "+name);
+		structureLock.writeLock().lock();
+		try {
+			if(nameIndex.get(name) >= 0) {
+				throw new IllegalArgumentException("There has already been a location registered with name "+name);
+			}
+
+			Location newLocation = Location.newLocation(name, description);
+			if(description != null) {
+				newLocation.setDescriptionSource(strings, strings.intern(description));
+			}
+			newLocation.id = locationsById.size();
+			newLocation.world = this;
+			locationsById.add(newLocation);
+			worldLocations.add(newLocation);
+			nameIndex.add(name, newLocation.id);
+			synchronized(queryLock) {
+				topologyChanged();
+			}
+			MutationJournal journal = this.journal;
+			if(journal != null) {
+				journal.locationRegistered(newLocation, description);
+			}
+			return newLocation;
+		}
+		finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Registers a <tt>Character</tt> in this <tt>World</tt>, assigning it the
+	 * next dense id.
+	 * @param character the <tt>Character</tt> to register
+	 * @throws <tt>IllegalStateException</tt> if the <tt>Character</tt> is already registered in a <tt>World</tt>
+	 */
+	public void registerCharacter(Character character) {
+		structureLock.writeLock().lock();
+		try {
+			int id = charactersById.size();
+			character.assignId(id);
+			occupancy.add(id);
+			charactersById.add(character);
+			worldCharacters.add(character);
+			MutationJournal journal = this.journal;
+			if(journal != null) {
+				journal.characterRegistered(character);
+			}
 		}
+		finally {
+			structureLock.writeLock().unlock();
+		}
+	}
 
-		worldLocations.add(newLocation);
-		return newLocation;
+	/**
+	 * @param character a <tt>Character</tt>
+	 * @return the <tt>Location</tt> <i>character</i> is at, or null if it isn't at one in this <tt>World</tt>
+	 */
+	public Location getLocationOf(Character character) {
+		int id = character.getId();
+		if(id < 0 || id >= charactersById.size() || charactersById.get(id) != character) {
+			return null;
+		}
+		int locationId = occupancy.getLocation(id);
+		return locationId == OccupancyTable.NOWHERE ? null : locationsById.get(locationId);
+	}
+
+	/**
+	 * @param location a registered <tt>Location</tt>
+	 * @return a copy of the <tt>Character</tt>s at <i>location</i>, taken atomically with respect to moves
+	 * @throws <tt>IllegalArgumentException</tt> if <i>location</i> is not registered in this <tt>World</tt>
+	 */
+	public List<Character> getCharactersAt(Location location) {
+		checkRegistered(location);
+		ReentrantLock stripe = stripeFor(location.id);
+		stripe.lock();
+		try {
+			return new ArrayList<Character>(location.getCharactersThatAreHere());
+		}
+		finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Puts a <tt>Character</tt> at a <tt>Location</tt>, taking it from 
+	 * wherever it was.  Unlike {@link #moveCharacter(Character, Route)}, the
+	 * two need not be connected.  A <tt>Character</tt> that isn't registered
+	 * in any <tt>World</tt> yet is registered in this one.
+	 * @param character the <tt>Character</tt> to place
+	 * @param location where to put it
+	 * @throws <tt>IllegalArgumentException</tt> if <i>location</i> or <i>character</i> are registered elsewhere
+	 */
+	public void placeCharacter(Character character, Location location) {
+		checkRegistered(location);
+		if(character.getId() < 0) {
+			registerCharacter(character);
+		}
+		checkRegistered(character);
+		
+		RegionPager pager = this.pager;
+		if(pager != null) {
+			pager.touch(location);
+		}
+		
+		int id = character.getId();
+		while(true) {
+			int from = occupancy.getLocation(id);
+			int fromStripe = from == OccupancyTable.NOWHERE ? location.id : from;
+			lockStripes(fromStripe, location.id);
+			try {
+				if(occupancy.getLocation(id) != from) {
+					continue;	//moved meanwhile; lock where it went instead
+				}
+				if(from != OccupancyTable.NOWHERE) {
+					detachCharacter(id);
+				}
+				attachCharacter(id, location);
+				return;
+			}
+			finally {
+				unlockStripes(fromStripe, location.id);
+			}
+		}
+	}
+
+	/**
+	 * Takes a <tt>Character</tt> out of the <tt>Location</tt> it is at.  It
+	 * stays registered in this <tt>World</tt>.
+	 * @param character the <tt>Character</tt> to remove
+	 * @throws <tt>IllegalArgumentException</tt> if <i>character</i> isn't registered in this <tt>World</tt>
+	 */
+	public void removeCharacter(Character character) {
+		checkRegistered(character);
+		
+		int id = character.getId();
+		while(true) {
+			int from = occupancy.getLocation(id);
+			if(from == OccupancyTable.NOWHERE) {
+				return;
+			}
+			ReentrantLock stripe = stripeFor(from);
+			stripe.lock();
+			try {
+				if(occupancy.getLocation(id) == from) {
+					detachCharacter(id);
+					occupancy.setLocation(id, OccupancyTable.NOWHERE);
+					recordPlacement(id, from);
+					return;
+				}
+			}
+			finally {
+				stripe.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Moves a <tt>Character</tt> along a <tt>Route</tt> leaving the 
+	 * <tt>Location</tt> it is at, unless that <tt>Route</tt> is locked.
+	 * The check and the move are atomic: holding the locks of both ends, 
+	 * so moves between unrelated <tt>Location</tt>s don't contend.
+	 * @param character the <tt>Character</tt> to move
+	 * @param route the <tt>Route</tt> to take
+	 * @return true if <i>character</i> moved, false if <i>route</i> is locked
+	 * @throws <tt>IllegalArgumentException</tt> if <i>character</i> isn't at the source of <i>route</i>
+	 */
+	public boolean moveCharacter(Character character, Route route) {
+		checkRegistered(character);
+		Location source = route.getSource();
+		Location destination = route.getDestination();
+		checkRegistered(source);
+		checkRegistered(destination);
+		
+		RegionPager pager = this.pager;
+		if(pager != null) {
+			pager.touch(destination);
+		}
+		
+		int id = character.getId();
+		lockStripes(source.id, destination.id);
+		try {
+			if(occupancy.getLocation(id) != source.id) {
+				throw new IllegalArgumentException("Character "+character.getName()+" is not at the start of the "+route+".");
+			}
+			if(route.isLocked()) {
+				return false;
+			}
+			
+			detachCharacter(id);
+			attachCharacter(id, destination);
+			return true;
+		}
+		finally {
+			unlockStripes(source.id, destination.id);
+		}
+	}
+
+	/**
+	 * @param name the exact name of a <tt>Location</tt>
+	 * @return the registered <tt>Location</tt> with that name, or null if there is none
+	 */
+	public Location getLocation(String name) {
+		structureLock.readLock().lock();
+		try {
+			int id = nameIndex.get(name);
+			return id < 0 ? null : locationsById.get(id);
+		}
+		finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of registered <tt>Location</tt>s; their ids run from zero to one less
+	 */
+	public int getLocationCount() {
+		return locationsById.size();
+	}
+
+	/**
+	 * @return the number of registered <tt>Character</tt>s; their ids run from zero to one less
+	 */
+	public int getCharacterCount() {
+		return charactersById.size();
+	}
+
+	/**
+	 * @param id the id of a registered <tt>Location</tt>
+	 * @return the <tt>Location</tt> with that id
+	 * @throws <tt>IllegalArgumentException</tt> if no <tt>Location</tt> has that id
+	 */
+	public Location getLocation(int id) {
+		if(id < 0 || id >= locationsById.size()) {
+			throw new IllegalArgumentException("There is no location with id "+id);
+		}
+		return locationsById.get(id);
+	}
+
+	/**
+	 * @return the number of <tt>Route</tt>s leaving registered <tt>Location</tt>s; their ids run from zero to one less
+	 */
+	public int getRouteCount() {
+		return routesById.size();
+	}
+
+	/**
+	 * @param id the id of a <tt>Route</tt> leaving a registered <tt>Location</tt>
+	 * @return the <tt>Route</tt> with that id
+	 * @throws <tt>IllegalArgumentException</tt> if no <tt>Route</tt> has that id
+	 */
+	public Route getRoute(int id) {
+		if(id < 0 || id >= routesById.size()) {
+			throw new IllegalArgumentException("There is no route with id "+id);
+		}
+		return routesById.get(id);
+	}
+
+	/**
+	 * @param id the id of a registered <tt>Character</tt>
+	 * @return the <tt>Character</tt> with that id
+	 * @throws <tt>IllegalArgumentException</tt> if no <tt>Character</tt> has that id
+	 */
+	public Character getCharacter(int id) {
+		if(id < 0 || id >= charactersById.size()) {
+			throw new IllegalArgumentException("There is no character with id "+id);
+		}
+		return charactersById.get(id);
+	}
+
+	/**
+	 * Resolves a partial name, as typed into the command parser, to the 
+	 * <tt>Location</tt>s it could mean.  Case is ignored.
+	 * @param prefix the start of a <tt>Location</tt> name
+	 * @return the registered <tt>Location</tt>s whose names start with <i>prefix</i>, in alphabetical order
+	 */
+	public List<Location> findLocationsByPrefix(String prefix) {
+		int[] ids;
+		structureLock.readLock().lock();
+		try {
+			ids = nameIndex.findByPrefix(prefix);
+		}
+		finally {
+			structureLock.readLock().unlock();
+		}
+		
+		List<Location> matches = new ArrayList<Location>(ids.length);
+		for(int id : ids) {
+			matches.add(locationsById.get(id));
+		}
+		return matches;
 	}
 
 	/**
@@ -66,20 +546,549 @@ public class World
 	 * @param to another <tt>Location</tt>
 	 */
 	public void createPath(Location from, Direction throughThisDirection, Location to) {
-		from.connectToLocation(to, throughThisDirection);
-		to.connectToLocation(from, Direction.findOppositeDirection(throughThisDirection));
+		createPath(from, throughThisDirection, to, 1);
+	}
+
+	/**
+	 * Creates a Route from one <tt>Location</tt> to another <tt>Location</tt>,
+	 * and back, each costing <i>cost</i> to traverse.
+	 * 
+	 * @param from a <tt>Location</tt>
+	 * @param throughThisDirection the <tt>Direction</tt> of <i>to</i>, relative to <i>from</i>
+	 * @param to another <tt>Location</tt>
+	 * @param cost the traversal cost of both <tt>Route</tt>s, such as distance or travel time
+	 * @see #createPath(Location, Direction, Location)
+	 */
+	public void createPath(Location from, Direction throughThisDirection, Location to, int cost) {
+		structureLock.writeLock().lock();
+		try {
+			from.connectToLocation(to, throughThisDirection, cost);
+			to.connectToLocation(from, Direction.findOppositeDirection(throughThisDirection), cost);
+		}
+		finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the <tt>Route</tt> leading straight from one <tt>Location</tt> to
+	 * another, in O(1).  If several do, the first one created is returned.
+	 * @param from the source <tt>Location</tt>
+	 * @param to the destination <tt>Location</tt>
+	 * @return the <tt>Route</tt> from <i>from</i> to <i>to</i>, or null if there is none
+	 * @throws <tt>IllegalArgumentException</tt> if <i>from</i> or <i>to</i> are not registered in this <tt>World</tt>
+	 */
+	public Route getRoute(Location from, Location to) {
+		checkRegistered(from);
+		checkRegistered(to);
+		structureLock.readLock().lock();
+		try {
+			return routeIndex.get(from.id, to.id);
+		}
+		finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Toggles the locks of the <tt>Route</tt>s both ways between two
+	 * <tt>Location</tt>s, as made by {@link #createPath(Location, Direction, Location)}.
+	 * No move can see one of them toggled and not the other.
+	 * @param one a <tt>Location</tt>
+	 * @param other another <tt>Location</tt>
+	 * @throws <tt>IllegalArgumentException</tt> if there isn't a <tt>Route</tt> each way between them
+	 */
+	public void togglePathLock(Location one, Location other) {
+		Route there = getRoute(one, other);
+		Route back = getRoute(other, one);
+		if(there == null || back == null) {
+			throw new IllegalArgumentException("There is no path both ways between "+one.getName()+" and "+other.getName()+".");
+		}
+
+		lockStripes(one.id, other.id);
+		try {
+			there.toggleLock();
+			back.toggleLock();
+		}
+		finally {
+			unlockStripes(one.id, other.id);
+		}
+	}
+
+	/**
+	 * Locks every given <tt>Route</tt> that isn't locked already.  Takes a
+	 * <tt>List</tt> since a <tt>Route</tt> equals the one back, so that a 
+	 * <tt>Set</tt> would drop one way of each path.
+	 * @param routes the <tt>Route</tt>s to lock
+	 * @throws <tt>IllegalArgumentException</tt> if a <tt>Route</tt> doesn't leave a <tt>Location</tt> registered in this <tt>World</tt>
+	 */
+	public void lockRoutes(List<Route> routes) {
+		for(Route route : routes) {
+			setRouteLock(route, true);
+		}
+	}
+
+	/**
+	 * Unlocks every given <tt>Route</tt> that isn't unlocked already.
+	 * @param routes the <tt>Route</tt>s to unlock
+	 * @throws <tt>IllegalArgumentException</tt> if a <tt>Route</tt> doesn't leave a <tt>Location</tt> registered in this <tt>World</tt>
+	 * @see #lockRoutes(List)
+	 */
+	public void unlockRoutes(List<Route> routes) {
+		for(Route route : routes) {
+			setRouteLock(route, false);
+		}
+	}
+
+	/**
+	 * Locks or unlocks a <tt>Route</tt>, unless it already is, checking and
+	 * toggling under its source's stripe so that two threads can't both 
+	 * toggle it.
+	 * @param route a <tt>Route</tt> leaving a registered <tt>Location</tt>
+	 * @param locked whether it should be locked
+	 * @return true if it was toggled
+	 * @throws <tt>IllegalArgumentException</tt> if the source of <i>route</i> isn't registered in this <tt>World</tt>
+	 */
+	public boolean setRouteLock(Route route, boolean locked) {
+		checkRegistered(route.getSource());
+		ReentrantLock stripe = stripeFor(route.getSource().id);
+		stripe.lock();
+		try {
+			if(route.isLocked() == locked) {
+				return false;
+			}
+			flipRouteLock(route);
+			return true;
+		}
+		finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Toggles the lock of a <tt>Route</tt> on behalf of a <tt>Character</tt>,
+	 * who has to be at one of its ends.  The check and the toggle are atomic,
+	 * holding the locks of both ends, as a move is.
+	 * @param character the <tt>Character</tt> toggling it
+	 * @param route a <tt>Route</tt> leaving a registered <tt>Location</tt>
+	 * @return true if it was toggled, false if <i>character</i> is at neither end of <i>route</i>
+	 * @throws <tt>IllegalArgumentException</tt> if <i>character</i> or either end of <i>route</i> aren't registered in this <tt>World</tt>
+	 */
+	public boolean toggleRouteLock(Character character, Route route) {
+		checkRegistered(character);
+		Location source = route.getSource();
+		Location destination = route.getDestination();
+		checkRegistered(source);
+		checkRegistered(destination);
+		
+		int id = character.getId();
+		lockStripes(source.id, destination.id);
+		try {
+			int at = occupancy.getLocation(id);
+			if(at != source.id && at != destination.id) {
+				return false;
+			}
+			flipRouteLock(route);
+			return true;
+		}
+		finally {
+			unlockStripes(source.id, destination.id);
+		}
+	}
+
+	/**
+	 * Called by a registered <tt>Location</tt> when it gains a <tt>Route</tt>,
+	 * with {@link #structureLock} held for writing.
+	 * @param route the new <tt>Route</tt>
+	 */
+	void routeAdded(Route route) {
+		route.id = routesById.size();
+		routesById.add(route);
+		MutationJournal journal = this.journal;
+		if(journal != null) {
+			journal.routeAdded(route);
+		}
+		if(route.getDestination().id >= 0) {
+			routeIndex.add(route.getSource().id, route.getDestination().id, route);
+		}
+
+		synchronized(queryLock) {
+			epoch++;
+			topologyChanged();
+			connectivityIndex.routeAdded(route);
+			hierarchicalSearch.routeAdded(route);
+		}
+	}
+
+	/**
+	 * Toggles the lock of a <tt>Route</tt> leaving a registered 
+	 * <tt>Location</tt>, holding that <tt>Location</tt>'s stripe so that no
+	 * move sees it half way, then brings the derived indexes up to date.
+	 * @param route the <tt>Route</tt> to toggle
+	 */
+	void toggleRouteLock(Route route) {
+		ReentrantLock stripe = stripeFor(route.getSource().id);
+		stripe.lock();
+		try {
+			flipRouteLock(route);
+		}
+		finally {
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Must be called holding the stripe of the source of <i>route</i>.
+	 */
+	private void flipRouteLock(Route route) {
+		route.flipLock();
+		if(route.direction != null) {
+			route.getSource().routeLockToggled(route);
+		}
+		if(route.id >= 0) {
+			recordLock(route);
+		}
+		MutationJournal journal = this.journal;
+		if(journal != null) {
+			journal.lockChanged(route, route.isLocked());
+		}
+		
+		synchronized(queryLock) {
+			epoch++;
+			connectivityIndex.routeLockToggled(route);
+			hierarchicalSearch.routeLockToggled(route);
+			if(compiledGraph != null && route.compiledEdge >= 0) {
+				compiledGraph.setLocked(route.compiledEdge, route.isLocked());
+			}
+		}
+	}
+
+	/**
+	 * Must be called holding {@link #queryLock}.
+	 */
+	private void topologyChanged() {
+		if(compiledGraph != null) {
+			compiledGraph.markStale();
+			compiledGraph = null;
+		}
+		coordinateEmbedding = null;
+	}
+
+	/**
+	 * Takes a snapshot of the locks of every <tt>Route</tt> and the 
+	 * placement of every <tt>Character</tt>.  The snapshot never changes,
+	 * however the <tt>World</tt> moves on, and can be explored with
+	 * hypothetical moves and toggles without touching the <tt>World</tt>.
+	 * <p>
+	 * Moves and toggles only note, under the stripe they already hold, which
+	 * <tt>Character</tt> or <tt>Route</tt> they changed; the snapshot is
+	 * brought up to date here, holding every stripe, in time proportional to
+	 * what has changed since the last one.  With nothing changed it is O(1).
+	 * @return the current <tt>WorldSnapshot</tt>
+	 * @see #restore(WorldSnapshot)
+	 */
+	public WorldSnapshot snapshot() {
+		WorldSnapshot current = published;
+		if(current.getRouteCount() == routesById.size() 
+				&& current.getCharacterCount() == charactersById.size() && !hasChanges()) {
+			return current;
+		}
+		
+		for(ReentrantLock stripe : stripes) {
+			stripe.lock();
+		}
+		try {
+			current = published;
+			PersistentIntTrie locks = current.getLocks();
+			PersistentIntTrie placements = current.getPlacements();
+			for(ChangeLog log : changeLogs) {
+				for(int i=0; i<log.routeCount; i++) {
+					Route route = routesById.get(log.routeIds[i]);
+					route.isChangedSinceSnapshot = false;
+					locks = locks.set(route.id, route.isLocked() ? 1 : 0);
+				}
+				for(int i=0; i<log.characterCount; i++) {
+					int id = log.characterIds[i];
+					occupancy.clearChanged(id);
+					placements = placements.set(id, occupancy.getLocation(id) + 1);
+					//NOWHERE is -1, which is stored as 0
+				}
+				log.clear();
+			}
+			current = new WorldSnapshot(this, locks, placements, routesById.size(), charactersById.size());
+			published = current;
+			return current;
+		}
+		finally {
+			for(ReentrantLock stripe : stripes) {
+				stripe.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Brings the <tt>Route</tt> locks and <tt>Character</tt> placement back
+	 * to what they are in <i>snapshot</i>, undoing everything since, or 
+	 * applying a line of play explored from it.  Only what differs is 
+	 * touched, found without visiting what the two share.  
+	 * <tt>Route</tt>s and <tt>Character</tt>s registered after <i>snapshot</i>
+	 * was taken are left as they are.  Other threads should not change the
+	 * <tt>World</tt> meanwhile.
+	 * @param snapshot a snapshot of this <tt>World</tt>
+	 * @throws <tt>IllegalArgumentException</tt> if <i>snapshot</i> is of another <tt>World</tt>
+	 */
+	public void restore(final WorldSnapshot snapshot) {
+		if(snapshot.getWorld() != this) {
+			throw new IllegalArgumentException("The snapshot is of another World.");
+		}
+		
+		WorldSnapshot current = snapshot();
+		current.getLocks().diff(snapshot.getLocks(), new PersistentIntTrie.DiffVisitor() {
+			@Override
+			public void changed(int index, int from, int to) {
+				Route route = routesById.get(index);
+				if(index < snapshot.getRouteCount() && route.isLocked() != (to != 0)) {
+					route.toggleLock();
+				}
+			}
+		});
+		current.getPlacements().diff(snapshot.getPlacements(), new PersistentIntTrie.DiffVisitor() {
+			@Override
+			public void changed(int index, int from, int to) {
+				if(index >= snapshot.getCharacterCount()) {
+					return;
+				}
+				Character character = charactersById.get(index);
+				if(to == 0) {
+					removeCharacter(character);
+				}
+				else {
+					placeCharacter(character, locationsById.get(to - 1));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks whether <i>goal</i> can be reached from <i>start</i> through
+	 * unlocked <tt>Route</tt>s, without building the <tt>Path</tt>.  Backed by
+	 * an index that is kept up to date as <tt>Route</tt>s are created and
+	 * toggled, so most checks take near-constant time.
+	 * @param start the starting <tt>Location</tt>
+	 * @param goal the target <tt>Location</tt>
+	 * @return true if a <tt>Path</tt> from <i>start</i> to <i>goal</i> exists
+	 * @throws <tt>IllegalArgumentException</tt> if <i>start</i> or <i>goal</i> are not registered in this <tt>World</tt>
+	 */
+	public boolean canReach(Location start, Location goal) {
+		checkRegistered(start);
+		checkRegistered(goal);
+		synchronized(queryLock) {
+			return connectivityIndex.canReach(start.id, goal.id, getCompiledGraph());
+		}
+	}
+
+	/**
+	 * Computes the distance from <i>source</i> to every <tt>Location</tt> 
+	 * reachable from it through unlocked <tt>Route</tt>s, in a single search.
+	 * @param source the <tt>Location</tt> to measure from
+	 * @param field a <tt>DistanceField</tt> to refill, or null to make a new one
+	 * @return the filled <tt>DistanceField</tt>
+	 * @throws <tt>IllegalArgumentException</tt> if <i>source</i> is not registered in this <tt>World</tt>
+	 */
+	public DistanceField computeDistanceField(Location source, DistanceField field) {
+		checkRegistered(source);
+		if(field == null) {
+			field = new DistanceField();
+		}
+		synchronized(queryLock) {
+			field.compute(getCompiledGraph(), source.id, null);
+		}
+		return field;
+	}
+
+	/**
+	 * Finds the nearest <tt>Location</tt> to <i>source</i> that <i>matcher</i>
+	 * accepts, searching outwards from <i>source</i> and stopping as soon as 
+	 * one is found.  <i>source</i> itself is tested first.
+	 * @param source the <tt>Location</tt> to search from
+	 * @param matcher the <tt>Location</tt>s being looked for
+	 * @param field a <tt>DistanceField</tt> to refill, or null; on return it holds the distances settled before the match
+	 * @return the nearest matching <tt>Location</tt>, or null if none is reachable
+	 * @throws <tt>IllegalArgumentException</tt> if <i>source</i> is not registered in this <tt>World</tt>
+	 */
+	public Location findNearest(Location source, LocationMatcher matcher, DistanceField field) {
+		checkRegistered(source);
+		if(field == null) {
+			field = new DistanceField();
+		}
+		synchronized(queryLock) {
+			field.compute(getCompiledGraph(), source.id, matcher);
+		}
+		return field.getMatch();
 	}
 
 	/**
 	 * Finds a <tt>Path</tt> that connects the parameter <tt>Location</tt><i>from</i> 
 	 * to the <i>target</i><tt>Location</tt>, or null if none exists.  Considers the
 	 * available <tt>Route</tt>s between <tt>Location</tt>s, as well as whether or not
-	 * the <tt>Route</tt>s are locked.
+	 * the <tt>Route</tt>s are locked.  Results are cached until a <tt>Route</tt> 
+	 * is created or toggled.
 	 * @param start the starting <tt>Location</tt> for search
 	 * @param goal the target <tt>Location</tt> for search
 	 * @return a sequence of <tt>Location</tt>s
+	 * @see #setSearchAlgorithm(SearchAlgorithm)
+	 * @see #getPathCache()
 	 */
 	public Path<Location> findPath(Location start, Location goal) {
+		checkRegistered(start);
+		checkRegistered(goal);
+
+		Path<Location> path;
+		synchronized(queryLock) {
+			PathCache.CachedPath cached = pathCache.get(start.id, goal.id, epoch);
+			if(cached != null) {
+				return cached.path;
+				//its regions were prefetched when it was found
+			}
+			path = findPath(start, goal, searchAlgorithm);
+			pathCache.put(start.id, goal.id, epoch, path);
+		}
+		
+		RegionPager pager = this.pager;
+		if(pager != null && path != null) {
+			pager.prefetch(path);
+		}
+		return path;
+	}
+
+	/**
+	 * Finds a <tt>Path</tt> that connects the parameter <tt>Location</tt><i>from</i> 
+	 * to the <i>target</i><tt>Location</tt> with the given engine, or null if none 
+	 * exists.
+	 * @param start the starting <tt>Location</tt> for search
+	 * @param goal the target <tt>Location</tt> for search
+	 * @param algorithm the <tt>SearchAlgorithm</tt> to search with
+	 * @return a sequence of <tt>Location</tt>s
+	 * @throws <tt>IllegalArgumentException</tt> if <i>start</i> or <i>goal</i> are not registered in this <tt>World</tt>
+	 */
+	public Path<Location> findPath(Location start, Location goal, SearchAlgorithm algorithm) {
+		checkRegistered(start);
+		checkRegistered(goal);
+
+		synchronized(queryLock) {
+			switch(algorithm)
+			{
+				case LEGACY:
+					return findPathLegacy(start, goal);
+	
+				case DIJKSTRA:
+					return findPathDijkstra(start, goal);
+	
+				case BIDIRECTIONAL:
+					return findPathBidirectional(start, goal);
+	
+				case A_STAR:
+					return findPathAStar(start, goal);
+	
+				case HIERARCHICAL:
+					return hierarchicalSearch.findPath(getCompiledGraph(), start.id, goal.id);
+	
+				default:
+					throw new IllegalArgumentException("SearchAlgorithm " +algorithm.name()+" not recognized.");
+			}
+		}
+	}
+
+	/**
+	 * Answers a batch of <tt>PathQuery</tt>s in parallel, on the common
+	 * <tt>ForkJoinPool</tt>.  Every query sees the <tt>Route</tt> locks as they
+	 * were when this method was called, and the answers are the same as
+	 * {@link #findPath(Location, Location, SearchAlgorithm)} with 
+	 * <tt>DIJKSTRA</tt> would give.
+	 * @param queries the queries to answer
+	 * @return the <tt>Path</tt> for each query, in the order <i>queries</i> iterates; null where none exists
+	 * @throws <tt>IllegalArgumentException</tt> if a query names a <tt>Location</tt> not registered in this <tt>World</tt>
+	 */
+	public List<Path<Location>> findPaths(Collection<PathQuery> queries) {
+		PathQuery[] batch = prepareBatch(queries);
+		return BatchPathfinder.findPaths(getFrozenGraph(), batch);
+	}
+
+	/**
+	 * Answers a batch of <tt>PathQuery</tt>s in parallel, on the given 
+	 * <tt>Executor</tt>, and waits for the answers.
+	 * @param queries the queries to answer
+	 * @param executor runs the queries, in chunks
+	 * @return the <tt>Path</tt> for each query, in the order <i>queries</i> iterates; null where none exists
+	 * @throws <tt>IllegalArgumentException</tt> if a query names a <tt>Location</tt> not registered in this <tt>World</tt>
+	 * @see #findPaths(Collection)
+	 */
+	public List<Path<Location>> findPaths(Collection<PathQuery> queries, Executor executor) {
+		PathQuery[] batch = prepareBatch(queries);
+		return BatchPathfinder.findPaths(getFrozenGraph(), batch, executor);
+	}
+
+	/**
+	 * Returns a copy of the current <tt>CompiledGraph</tt> whose lock bits 
+	 * stay as they are now, however <tt>Route</tt>s are toggled later, so it 
+	 * can be read from any thread without the <tt>World</tt>'s locks.
+	 * @return the frozen <tt>CompiledGraph</tt>
+	 */
+	public CompiledGraph getFrozenGraph() {
+		synchronized(queryLock) {
+			return getCompiledGraph().freezeLocks();
+		}
+	}
+
+	private PathQuery[] prepareBatch(Collection<PathQuery> queries) {
+		PathQuery[] batch = queries.toArray(new PathQuery[queries.size()]);
+		for(PathQuery query : batch) {
+			checkRegistered(query.getStart());
+			checkRegistered(query.getGoal());
+		}
+		return batch;
+	}
+
+	/**
+	 * Runs {@link DijkstraSearch} and rebuilds the <tt>Path</tt> it found
+	 * from its parent array.
+	 */
+	private Path<Location> findPathDijkstra(Location start, Location goal) {
+		CompiledGraph graph = getCompiledGraph();
+		if(!dijkstraSearch.search(graph, start.id, goal.id)) {
+			return null;
+		}
+		return dijkstraSearch.buildPath(graph, goal.id);
+	}
+
+	/**
+	 * Runs {@link DijkstraSearch} as A*, with the <tt>CoordinateEmbedding</tt>
+	 * estimating the distance left.
+	 */
+	private Path<Location> findPathAStar(Location start, Location goal) {
+		CompiledGraph graph = getCompiledGraph();
+		if(!dijkstraSearch.search(graph, start.id, goal.id, getCoordinateEmbedding())) {
+			return null;
+		}
+		return dijkstraSearch.buildPath(graph, goal.id);
+	}
+
+	/**
+	 * Runs {@link BidirectionalSearch} and rebuilds the <tt>Path</tt> it found.
+	 */
+	private Path<Location> findPathBidirectional(Location start, Location goal) {
+		CompiledGraph graph = getCompiledGraph();
+		if(!bidirectionalSearch.search(graph, start.id, goal.id)) {
+			return null;
+		}
+		return bidirectionalSearch.buildPath(graph);
+	}
+
+	/**
+	 * The original search: keeps its open and closed <tt>Path</tt>s in queues,
+	 * and scans them linearly on every expansion.
+	 */
+	private Path<Location> findPathLegacy(Location start, Location goal) {
 		// uses Djikstra to compute the path
 
 		PriorityQueue<Path<Location>> closedPaths = new PriorityQueue<Path<Location>>();
@@ -106,7 +1115,7 @@ public class World
 			closedPaths.add(tempPath);
 			//add it to the closed paths so we don't check it again
 
-			HashMap<Direction,Route> expandedRoutes = tempPath.getLastItem().getUnlockedRoutes();
+			Map<Direction,Route> expandedRoutes = tempPath.getLastItem().getUnlockedRoutes();
 			//find all the routes that connect to other Locations
 
 			for(Entry<Direction,Route> expandedRoute : expandedRoutes.entrySet()) {
@@ -114,9 +1123,8 @@ public class World
 				Location expandedLocation = routeInfo.getDestination();
 				//the destination of the route is the next step to explore 
 
-				Path<Location> expandedPath = new Path<Location>(tempPath.append(expandedLocation), tempPath.pathCost++);
-				//the expanded path is the old path, expanded by 1, and with its cost also incremented by 1.
-				//admittedly, the increase cost of 1 is arbitrary, but since we're exploring by 1, it makes sense
+				Path<Location> expandedPath = tempPath.append(expandedLocation, routeInfo.getCost());
+				//the expanded path is the old path, expanded by 1, and with its cost increased by the route's
 
 
 				Path<Location> repeatedPath = null;
@@ -132,7 +1140,11 @@ public class World
 					if(expandedPath.pathCost < repeatedPath.pathCost) {
 						closedPaths.remove(repeatedPath);
 						//if it's cheaper, then we need to consider it again!
-					}						
+					}
+					else {
+						continue;
+						//otherwise there's nothing new to explore down this path
+					}
 				}
 
 				repeatedPath = findPathWithEndLocation(expandedPath.getLastItem(), openPaths);
@@ -147,6 +1159,9 @@ public class World
 						openPaths.remove(repeatedPath);
 						//if it's cheaper, then we need to consider the cheaper one only!
 					}
+					else {
+						continue;
+					}
 				}
 
 				//this sorts the nodes from smallest to largest!
@@ -174,60 +1189,285 @@ public class World
 		return null;
 	}
 
+	/**
+	 * Must be called holding the stripe of <i>location</i>.
+	 */
+	private void attachCharacter(int id, Location location) {
+		occupancy.setSlot(id, location.addOccupant(charactersById.get(id)));
+		occupancy.setLocation(id, location.id);
+		recordPlacement(id, location.id);
+	}
+
+	/**
+	 * Takes the <tt>Character</tt> with id <i>id</i> out of its 
+	 * <tt>Location</tt>'s occupants, leaving its recorded <tt>Location</tt>
+	 * for the caller to update, so lock-free readers never see a moving
+	 * <tt>Character</tt> as nowhere.  Must be called holding the stripe of 
+	 * the <tt>Location</tt> it is at.
+	 */
+	private void detachCharacter(int id) {
+		Location location = locationsById.get(occupancy.getLocation(id));
+		int slot = occupancy.getSlot(id);
+		Character moved = location.removeOccupant(slot);
+		if(moved != null) {
+			occupancy.setSlot(moved.getId(), slot);
+		}
+	}
+
+	/**
+	 * Notes that the lock of <i>route</i> has changed, for the next 
+	 * snapshot.  Must be called holding the stripe of its source.
+	 */
+	private void recordLock(Route route) {
+		if(!route.isChangedSinceSnapshot) {
+			route.isChangedSinceSnapshot = true;
+			changeLogs[route.getSource().id & (STRIPE_COUNT - 1)].addRoute(route.id);
+		}
+	}
 
+	/**
+	 * Notes that the <tt>Character</tt> with id <i>characterId</i> has been
+	 * placed, for the next snapshot, and journals it.  Must be called 
+	 * holding the stripe of <i>lockedLocationId</i>.
+	 */
+	private void recordPlacement(int characterId, int lockedLocationId) {
+		if(occupancy.markChanged(characterId)) {
+			changeLogs[lockedLocationId & (STRIPE_COUNT - 1)].addCharacter(characterId);
+		}
+		MutationJournal journal = this.journal;
+		if(journal != null) {
+			journal.characterPlaced(characterId, occupancy.getLocation(characterId));
+		}
+	}
+
+	private boolean hasChanges() {
+		for(ChangeLog log : changeLogs) {
+			if(!log.isEmpty) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private ReentrantLock stripeFor(int locationId) {
+		return stripes[locationId & (STRIPE_COUNT - 1)];
+	}
+
+	/**
+	 * Locks the stripes of two <tt>Location</tt>s, in stripe order so that 
+	 * threads locking the same two cannot deadlock.
+	 */
+	private void lockStripes(int one, int other) {
+		int first = Math.min(one & (STRIPE_COUNT - 1), other & (STRIPE_COUNT - 1));
+		int second = Math.max(one & (STRIPE_COUNT - 1), other & (STRIPE_COUNT - 1));
+		stripes[first].lock();
+		if(second != first) {
+			stripes[second].lock();
+		}
+	}
+
+	private void unlockStripes(int one, int other) {
+		int first = one & (STRIPE_COUNT - 1);
+		int second = other & (STRIPE_COUNT - 1);
+		stripes[first].unlock();
+		if(second != first) {
+			stripes[second].unlock();
+		}
+	}
+
+	private void checkRegistered(Character character) {
+		int id = character.getId();
+		if(id < 0 || id >= charactersById.size() || charactersById.get(id) != character) {
+			throw new IllegalArgumentException("Character "+character.getName()+" is not registered in this World.");
+		}
+	}
+
+	private void checkRegistered(Location location) {
+		int id = location.id;
+		if(id < 0 || id >= locationsById.size() || locationsById.get(id) != location) {
+			throw new IllegalArgumentException("Location "+location.getName()+" is not registered in this World.");
+		}
+	}
+
+
+	/**
+	 * Builds the whole dump in memory; {@link LocationRenderer#renderWorld(World, Appendable)}
+	 * streams it instead.
+	 */
 	@Override
 	public String toString() {
 
 		StringBuilder sb = new StringBuilder();
 
 		for(Location location : worldLocations) {
-			sb.append(location.toString());
+			sb.append(LocationRenderer.describe(location));
 		}
 
 		return sb.toString();
 	}
 
-	public class Path<T> implements Iterable<T>, Comparable<T>
+	/**
+	 * The ids of the <tt>Route</tt>s and <tt>Character</tt>s changed under
+	 * one stripe since the last snapshot, each noted once.  Written holding
+	 * the stripe, or every stripe when cleared; whether it is empty may be
+	 * read without locking.
+	 */
+	private static final class ChangeLog {
+		int[] routeIds;
+		int routeCount;
+		int[] characterIds;
+		int characterCount;
+		volatile boolean isEmpty;
+
+		ChangeLog() {
+			this.routeIds = new int[8];
+			this.characterIds = new int[8];
+			this.isEmpty = true;
+		}
+
+		void addRoute(int id) {
+			if(routeCount == routeIds.length) {
+				routeIds = Arrays.copyOf(routeIds, routeCount * 2);
+			}
+			routeIds[routeCount++] = id;
+			isEmpty = false;
+		}
+
+		void addCharacter(int id) {
+			if(characterCount == characterIds.length) {
+				characterIds = Arrays.copyOf(characterIds, characterCount * 2);
+			}
+			characterIds[characterCount++] = id;
+			isEmpty = false;
+		}
+
+		void clear() {
+			routeCount = 0;
+			characterCount = 0;
+			isEmpty = true;
+		}
+	}
+
+	/**
+	 * An immutable sequence of items, with the cost of traversing it.  
+	 * Each <tt>Path</tt> is one step that points back to the <tt>Path</tt> it
+	 * extends, so appending is O(1) and shares every earlier step with the 
+	 * original, which is left untouched.
+	 * @param <T> the type of the items on the <tt>Path</tt>
+	 */
+	public static class Path<T> implements Iterable<T>, Comparable<Path<T>>
 	{
-		private LinkedList<T> pathList;
-		private int pathCost;
+		private final Path<T> previous;
+		private final T lastItem;
+		private final int pathCost;
+		private final int size;
+		private final Object[] items;
+		//the items in traversal order, shared by every step of a Path built whole by a search; null if built by append
+		private volatile Object[] appendedItems;
+		//for a Path built by append, its items in traversal order, filled the first time it is iterated
 
 		public Path() {
-			this.pathList = new LinkedList<T>();
-			this.pathCost = 0;
+			this(null, null, 0, 0, null);
 		}
 
 		public Path(T init, int pathCost) {
-			this.pathList = new LinkedList<T>();
-			this.pathList.add(init);
-			this.pathCost = 0;
+			this(null, init, pathCost, 1, null);
 		}
 
-		public Path(LinkedList<T> existingPathList, int pathCost) {
-			this.pathList = existingPathList;
+		private Path(Path<T> previous, T lastItem, int pathCost, int size, Object[] items) {
+			this.previous = previous;
+			this.lastItem = lastItem;
 			this.pathCost = pathCost;
+			this.size = size;
+			this.items = items;
 		}
 
-		public Path(Path<T> existingPath, int pathCost) {
-			this.pathList = existingPath.pathList;
-			this.pathCost = pathCost;
+		/**
+		 * Builds a whole <tt>Path</tt> at once, as the searches do from their
+		 * parent arrays, so that it is iterated from <i>items</i> itself.
+		 * Every step of it shares <i>items</i>, which must not be changed.
+		 * @param items the items in traversal order
+		 * @param costs the cost of the <tt>Path</tt> up to each item
+		 * @return the <tt>Path</tt> through <i>items</i>
+		 */
+		@SuppressWarnings("unchecked")
+		static <T> Path<T> of(Object[] items, int[] costs) {
+			Path<T> path = new Path<T>();
+			for(int i=0; i<items.length; i++) {
+				path = new Path<T>(i == 0 ? null : path, (T) items[i], costs[i], i + 1, items);
+			}
+			return path;
 		}
 
 		/**
-		 * Appends the item to this <tt>Path</tt>, and returns the list with this item.
+		 * @return this <tt>Path</tt> built whole, as by {@link #of(Object[], int[])}; 
+		 * this one if it already is
+		 */
+		Path<T> seal() {
+			if(this.items != null) {
+				return this;
+			}
+			Object[] items = new Object[this.size];
+			int[] costs = new int[this.size];
+			Path<T> step = this;
+			for(int i = this.size-1; i >= 0; i--) {
+				items[i] = step.lastItem;
+				costs[i] = step.pathCost;
+				step = step.previous;
+			}
+			return of(items, costs);
+		}
+
+		/**
+		 * Returns a new <tt>Path</tt> made of this one followed by the item.  
+		 * This <tt>Path</tt> is not modified.
 		 * @param item the item to add.
 		 * @return the <tt>Path</tt> after appending
 		 */
 		public Path<T> append(T item) {
-			this.pathList.add(item);
-			return this;
+			return append(item, 0);
+		}
+
+		/**
+		 * Returns a new <tt>Path</tt> made of this one followed by the item, 
+		 * costing <i>stepCost</i> more.  This <tt>Path</tt> is not modified.
+		 * @param item the item to add.
+		 * @param stepCost the cost of stepping from the last item to <i>item</i>
+		 * @return the <tt>Path</tt> after appending
+		 */
+		public Path<T> append(T item, int stepCost) {
+			if(this.size == 0) {
+				return new Path<T>(null, item, this.pathCost + stepCost, 1, null);
+			}
+			return new Path<T>(this, item, this.pathCost + stepCost, this.size + 1, null);
+		}
+
+		/**
+		 * @return the cost of traversing this <tt>Path</tt>
+		 */
+		public int getPathCost() {
+			return this.pathCost;
+		}
+
+		/**
+		 * @return the number of items in this <tt>Path</tt>
+		 */
+		public int size() {
+			return this.size;
 		}
 
 		/**
 		 * @return the last item of this <tt>Path</tt>
 		 */
 		public T getLastItem() {
-			return this.pathList.get(this.pathList.size()-1);
+			return this.lastItem;
+		}
+
+		/**
+		 * @return this <tt>Path</tt> without its last item, or null if it has one item or less
+		 */
+		public Path<T> getPrevious() {
+			return this.previous;
 		}
 
 		@Override
@@ -243,11 +1483,17 @@ public class World
 
 			else {
 				Path<?> other = (Path<?>) obj;
-				if(this.pathCost != other.pathCost)
+				if(this.pathCost != other.pathCost || this.size != other.size)
 					return false;
 
-				if(!this.pathList.equals(other.pathList))
-					return false;
+				Path<?> mine = this;
+				while(mine != null && mine != other) {
+					if(mine.lastItem == null ? other.lastItem != null : !mine.lastItem.equals(other.lastItem))
+						return false;
+
+					mine = mine.previous;
+					other = other.previous;
+				}
 			}
 
 			return true;
@@ -255,20 +1501,18 @@ public class World
 
 		@Override
 		public int hashCode() {
-			int hash = 11 * this.pathList.peekLast().hashCode();
+			if(this.lastItem == null)
+				return 0;
+
+			int hash = 11 * this.lastItem.hashCode();
 			return hash;
 		}
 
 		@Override
-		public int compareTo(Object arg0) {
-
-			if(arg0 == null)
-				throw new NullPointerException(arg0 + " cannot be null");
+		public int compareTo(Path<T> other) {
 
-			else if(!(arg0 instanceof Path<?>))
-				throw new ClassCastException(arg0.getClass().getName() +" is not of type "+this.getClass().getName());
-
-			Path<?> other = (Path<?>) arg0;
+			if(other == null)
+				throw new NullPointerException(other + " cannot be null");
 
 			if(this.pathCost < other.pathCost)
 				return -1;
@@ -282,35 +1526,58 @@ public class World
 
 		@Override
 		public Iterator<T> iterator() {
-			return new PathIterator<T>(this);
+			return new PathIterator();
 		}
 
 		/**
-		 * The PathIterator that makes <tt>World.Path</tt> iterable.
-		 * @param <S> the PathIterator type.
+		 * @return the items of this <tt>Path</tt> in traversal order, at least 
+		 * {@link #size()} of them, shared by all its iterators
+		 */
+		private Object[] itemsInOrder() {
+			if(this.items != null) {
+				return this.items;
+			}
+			Object[] result = this.appendedItems;
+			if(result == null) {
+				result = new Object[this.size];
+				Path<T> step = this;
+				for(int i = this.size-1; i >= 0; i--) {
+					result[i] = step.lastItem;
+					step = step.previous;
+				}
+				this.appendedItems = result;
+				//a race only builds it twice; the volatile write publishes it whole
+			}
+			return result;
+		}
+
+		/**
+		 * The PathIterator that makes <tt>World.Path</tt> iterable, by index
+		 * over the items of the <tt>Path</tt> in traversal order, without
+		 * copying them.
 		 * @see <tt>World.Path<T></tt> at <tt>World.java</tt> 
 		 */
-		private class PathIterator<S> implements Iterator<S> {
+		private class PathIterator implements Iterator<T> {
 			private int iteratorIndex;
-			private int iterablePathSize;
-			private Path<S> iterablePath;
+			private final Object[] iterableItems;
 
-			public PathIterator(Path<S> p) {
+			public PathIterator() {
 				iteratorIndex = 0;
-				iterablePathSize = p.pathList.size();
+				iterableItems = itemsInOrder();
 			}
 
 			@Override
 			public boolean hasNext() {
-				if(iterablePathSize > 0 || iteratorIndex < iterablePathSize-1)
-					return true;
-
-				return false;
+				return iteratorIndex < size;
 			}
 
 			@Override
-			public S next() {
-				S pathItem = iterablePath.pathList.get(iteratorIndex);
+			@SuppressWarnings("unchecked")
+			public T next() {
+				if(!hasNext())
+					throw new NoSuchElementException("The Path has no more items.");
+
+				T pathItem = (T) iterableItems[iteratorIndex];
 				iteratorIndex++;
 				return pathItem;
 			}
@@ -323,8 +1590,6 @@ public class World
 
 		}
 
-
-
 	}
 
 }
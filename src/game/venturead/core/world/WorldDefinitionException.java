@@ -0,0 +1,44 @@
+package game.venturead.core.world;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by a {@link WorldDefinitionLoader} when a world definition has
+ * mistakes in it, listing all of them rather than only the first.
+ * @author recardona
+ */
+public class WorldDefinitionException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+	private static final int ERRORS_IN_MESSAGE = 10;
+
+	private final List<String> errors;
+
+	/**
+	 * @param errors every mistake found, in the order they appear in the definition
+	 */
+	public WorldDefinitionException(List<String> errors) {
+		super(summarize(errors));
+		this.errors = Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * @return every mistake found, each starting with the line it is on
+	 */
+	public List<String> getErrors() {
+		return this.errors;
+	}
+
+	private static String summarize(List<String> errors) {
+		StringBuilder message = new StringBuilder();
+		message.append("The world definition has ").append(errors.size()).append(errors.size() == 1 ? " error:" : " errors:");
+		for(int i=0; i<errors.size() && i<ERRORS_IN_MESSAGE; i++) {
+			message.append("\n\t").append(errors.get(i));
+		}
+		if(errors.size() > ERRORS_IN_MESSAGE) {
+			message.append("\n\t... and ").append(errors.size() - ERRORS_IN_MESSAGE).append(" more");
+		}
+		return message.toString();
+	}
+}
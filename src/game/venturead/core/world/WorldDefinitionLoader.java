@@ -0,0 +1,499 @@
+package game.venturead.core.world;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a <tt>World</tt> from a text world definition, one line at a time,
+ * so that the text is never held in memory all at once.  Each line is one
+ * of:
+ * <pre>
+ *   # a comment, as are blank lines
+ *   location The House | a quaint house, with tons of knickknacks.
+ *   path The House | UP | The Attic
+ *   path The House | WEST | The Garden | 3 | locked
+ * </pre>
+ * A <tt>path</tt> is made as by {@link World#createPath(Location, Direction, Location, int)},
+ * costing 1 unless a cost is given, and may be <tt>locked</tt> both ways.
+ * It may name <tt>Location</tt>s defined further down.
+ * <p>
+ * <tt>Location</tt>s are registered as they are read, while <tt>path</tt>s
+ * are kept as compact records until the end.  They are then checked in
+ * parallel, in chunks: every name they use must be defined, neither end
+ * may be the same <tt>Location</tt>, and no two may need the same
+ * <tt>Direction</tt> out of a <tt>Location</tt>.  Only if nothing is wrong
+ * are the <tt>Route</tt>s created; otherwise a {@link WorldDefinitionException}
+ * lists every mistake found, by line.
+ * @author recardona
+ */
+public final class WorldDefinitionLoader {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final ForkJoinPool pool;
+	private int chunkSize;
+
+	/**
+	 * Creates a loader that checks definitions on the common <tt>ForkJoinPool</tt>.
+	 */
+	public WorldDefinitionLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool the pool to check definitions on
+	 */
+	public WorldDefinitionLoader(ForkJoinPool pool) {
+		if(pool == null) {
+			throw new IllegalArgumentException("A WorldDefinitionLoader needs a ForkJoinPool.");
+		}
+		this.pool = pool;
+		this.chunkSize = 4096;
+	}
+
+	/**
+	 * @return how many <tt>path</tt>s are checked by one task at most
+	 */
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * @param chunkSize how many <tt>path</tt>s are checked by one task at most
+	 * @throws <tt>IllegalArgumentException</tt> if <i>chunkSize</i> isn't positive
+	 */
+	public void setChunkSize(int chunkSize) {
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive.");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Loads a world definition from a UTF-8 file.
+	 * @param file the file to load
+	 * @return the <tt>World</tt> it defines
+	 * @throws IOException if the file can't be read
+	 * @throws WorldDefinitionException if the definition has mistakes in it
+	 */
+	public World load(File file) throws IOException, WorldDefinitionException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), RenderedFragment.UTF8);
+		try {
+			return load(reader);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Loads a world definition.
+	 * @param reader the definition; it is read to the end but not closed
+	 * @return the <tt>World</tt> it defines
+	 * @throws IOException if the definition can't be read
+	 * @throws WorldDefinitionException if the definition has mistakes in it
+	 */
+	public World load(Reader reader) throws IOException, WorldDefinitionException {
+		World world = new World();
+		Queue<Problem> problems = new ConcurrentLinkedQueue<Problem>();
+		PendingPaths paths = new PendingPaths();
+		Map<String,Integer> definedOn = new HashMap<String,Integer>();
+
+		BufferedReader lines = new BufferedReader(reader, 1 << 16);
+		String text;
+		int line = 0;
+		while((text = lines.readLine()) != null) {
+			line++;
+			text = text.trim();
+			if(text.length() == 0 || text.charAt(0) == '#') {
+				continue;
+			}
+			int space = firstSpace(text);
+			String keyword = text.substring(0, space);
+			String rest = text.substring(space).trim();
+			if(keyword.equals("location")) {
+				readLocation(world, rest, line, definedOn, problems);
+			}
+			else if(keyword.equals("path")) {
+				readPath(rest, line, paths, problems);
+			}
+			else {
+				problems.add(new Problem(line, "Unknown kind of line \""+keyword+"\"; expected location or path."));
+			}
+		}
+
+		if(paths.size > 0) {
+			paths.sourceIds = new int[paths.size];
+			paths.destinationIds = new int[paths.size];
+			pool.invoke(new ResolveTask(world, paths, 0, paths.size, problems));
+
+			int parts = Math.max(1, Math.min(pool.getParallelism(), (paths.size + chunkSize - 1) / chunkSize));
+			paths.bucketEnds(parts);
+			pool.invoke(new SlotTask(world, paths, 0, parts, problems));
+		}
+
+		if(!problems.isEmpty()) {
+			List<Problem> sorted = new ArrayList<Problem>(problems);
+			Collections.sort(sorted);
+			List<String> errors = new ArrayList<String>(sorted.size());
+			for(Problem problem : sorted) {
+				errors.add("line "+problem.line+": "+problem.message);
+			}
+			throw new WorldDefinitionException(errors);
+		}
+
+		for(int i=0; i<paths.size; i++) {
+			Location from = world.getLocation(paths.sourceIds[i]);
+			Location to = world.getLocation(paths.destinationIds[i]);
+			Direction direction = DIRECTIONS[paths.directions[i]];
+			world.createPath(from, direction, to, paths.costs[i]);
+			if(paths.locked[i]) {
+				from.getRoute(direction).toggleLock();
+				to.getRoute(Direction.findOppositeDirection(direction)).toggleLock();
+			}
+		}
+		return world;
+	}
+
+	private static void readLocation(World world, String rest, int line, Map<String,Integer> definedOn, Queue<Problem> problems) {
+		int bar = rest.indexOf('|');
+		String name = (bar < 0 ? rest : rest.substring(0, bar)).trim();
+		String description = bar < 0 ? "" : rest.substring(bar + 1).trim();
+		if(name.length() == 0) {
+			problems.add(new Problem(line, "A location needs a name."));
+			return;
+		}
+		Integer earlier = definedOn.get(name);
+		if(earlier != null) {
+			problems.add(new Problem(line, "There is already a location named "+name+", on line "+earlier+"."));
+			return;
+		}
+		definedOn.put(name, line);
+		world.registerNewLocation(name, description);
+	}
+
+	private static void readPath(String rest, int line, PendingPaths paths, Queue<Problem> problems) {
+		String[] fields = rest.split("\\|", -1);
+		if(fields.length < 3 || fields.length > 5) {
+			problems.add(new Problem(line, "A path needs a location, a direction and a location, then may have a cost and \"locked\"."));
+			return;
+		}
+		String from = fields[0].trim();
+		String to = fields[2].trim();
+		if(from.length() == 0 || to.length() == 0) {
+			problems.add(new Problem(line, "A path needs a location at both ends."));
+			return;
+		}
+
+		Direction direction;
+		try {
+			direction = Direction.valueOf(fields[1].trim().toUpperCase(Locale.ENGLISH));
+		}
+		catch(IllegalArgumentException e) {
+			problems.add(new Problem(line, "Unknown direction \""+fields[1].trim()+"\"."));
+			return;
+		}
+
+		int cost = 1;
+		if(fields.length > 3) {
+			try {
+				cost = Integer.parseInt(fields[3].trim());
+			}
+			catch(NumberFormatException e) {
+				cost = -1;
+			}
+			if(cost < 0) {
+				problems.add(new Problem(line, "The cost \""+fields[3].trim()+"\" isn't a whole number of at least 0."));
+				return;
+			}
+		}
+
+		boolean locked = false;
+		if(fields.length > 4) {
+			String lock = fields[4].trim();
+			if(lock.equals("locked")) {
+				locked = true;
+			}
+			else if(!lock.equals("unlocked") && lock.length() > 0) {
+				problems.add(new Problem(line, "Expected \"locked\" or \"unlocked\", not \""+lock+"\"."));
+				return;
+			}
+		}
+		paths.add(line, paths.intern(from), (byte) direction.ordinal(), paths.intern(to), cost, locked);
+	}
+
+	private static int firstSpace(String text) {
+		for(int i=0; i<text.length(); i++) {
+			if(Character.isWhitespace(text.charAt(i))) {
+				return i;
+			}
+		}
+		return text.length();
+	}
+
+	/**
+	 * The <tt>path</tt>s read so far, column by column.  Names are interned
+	 * so that a <tt>Location</tt> named by many <tt>path</tt>s is kept once.
+	 */
+	private static final class PendingPaths {
+
+		int size;
+		int[] lines = new int[1024];
+		String[] sources = new String[1024];
+		String[] destinations = new String[1024];
+		byte[] directions = new byte[1024];
+		int[] costs = new int[1024];
+		boolean[] locked = new boolean[1024];
+		int[] sourceIds;
+		int[] destinationIds;
+		//filled in by a ResolveTask; -1 where the name isn't defined
+		int[] ends;
+		int[] partStarts;
+		//filled in by bucketEnds: the ends of part p are ends[partStarts[p]] to ends[partStarts[p + 1]]
+		private final Map<String,String> names = new HashMap<String,String>();
+
+		/**
+		 * Sorts the ends of the resolved <tt>path</tt>s into <i>parts</i> by
+		 * the id of their <tt>Location</tt>, keeping them in line order, so 
+		 * that each {@link SlotTask} reads only its own.  End 2<i>i</i> is
+		 * where <tt>path</tt> <i>i</i> starts, and 2<i>i</i> + 1 where it 
+		 * ends.
+		 */
+		void bucketEnds(int parts) {
+			partStarts = new int[parts + 1];
+			for(int i=0; i<size; i++) {
+				if(sourceIds[i] >= 0 && destinationIds[i] >= 0) {
+					partStarts[sourceIds[i] % parts + 1]++;
+					partStarts[destinationIds[i] % parts + 1]++;
+				}
+			}
+			for(int part=0; part<parts; part++) {
+				partStarts[part + 1] += partStarts[part];
+			}
+			ends = new int[partStarts[parts]];
+			int[] next = Arrays.copyOf(partStarts, parts);
+			for(int i=0; i<size; i++) {
+				if(sourceIds[i] >= 0 && destinationIds[i] >= 0) {
+					ends[next[sourceIds[i] % parts]++] = i * 2;
+					ends[next[destinationIds[i] % parts]++] = i * 2 + 1;
+				}
+			}
+		}
+
+		String intern(String name) {
+			String interned = names.get(name);
+			if(interned == null) {
+				names.put(name, name);
+				interned = name;
+			}
+			return interned;
+		}
+
+		void add(int line, String source, byte direction, String destination, int cost, boolean isLocked) {
+			if(size == lines.length) {
+				int capacity = size * 2;
+				lines = Arrays.copyOf(lines, capacity);
+				sources = Arrays.copyOf(sources, capacity);
+				destinations = Arrays.copyOf(destinations, capacity);
+				directions = Arrays.copyOf(directions, capacity);
+				costs = Arrays.copyOf(costs, capacity);
+				locked = Arrays.copyOf(locked, capacity);
+			}
+			lines[size] = line;
+			sources[size] = source;
+			destinations[size] = destination;
+			directions[size] = direction;
+			costs[size] = cost;
+			locked[size] = isLocked;
+			size++;
+		}
+	}
+
+	/**
+	 * Looks up the <tt>Location</tt>s at both ends of a range of
+	 * <tt>path</tt>s, splitting it until it is no longer than a chunk.
+	 */
+	private class ResolveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final World world;
+		private final PendingPaths paths;
+		private final int from;
+		private final int to;
+		private final Queue<Problem> problems;
+
+		ResolveTask(World world, PendingPaths paths, int from, int to, Queue<Problem> problems) {
+			this.world = world;
+			this.paths = paths;
+			this.from = from;
+			this.to = to;
+			this.problems = problems;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > chunkSize) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ResolveTask(world, paths, from, middle, problems),
+						new ResolveTask(world, paths, middle, to, problems));
+				return;
+			}
+			for(int i=from; i<to; i++) {
+				paths.sourceIds[i] = resolve(paths.sources[i], i);
+				paths.destinationIds[i] = resolve(paths.destinations[i], i);
+				if(paths.sourceIds[i] >= 0 && paths.sourceIds[i] == paths.destinationIds[i]) {
+					problems.add(new Problem(paths.lines[i], "A path can't lead from "+paths.sources[i]+" to itself."));
+					paths.sourceIds[i] = -1;
+				}
+			}
+		}
+
+		private int resolve(String name, int path) {
+			Location location = world.getLocation(name);
+			if(location == null) {
+				problems.add(new Problem(paths.lines[path], "There is no location named "+name+"."));
+				return -1;
+			}
+			return location.getId();
+		}
+	}
+
+	/**
+	 * Finds <tt>path</tt>s that need the same <tt>Direction</tt> out of a
+	 * <tt>Location</tt>.  Part <i>p</i> of <i>parts</i> looks only at the
+	 * ends {@link PendingPaths#bucketEnds(int)} sorted into it, at
+	 * <tt>Location</tt>s whose id leaves <i>p</i> when divided by 
+	 * <i>parts</i>, so the parts share nothing.
+	 */
+	private static class SlotTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final World world;
+		private final PendingPaths paths;
+		private final int firstPart;
+		private final int endPart;
+		private final Queue<Problem> problems;
+
+		SlotTask(World world, PendingPaths paths, int firstPart, int endPart, Queue<Problem> problems) {
+			this.world = world;
+			this.paths = paths;
+			this.firstPart = firstPart;
+			this.endPart = endPart;
+			this.problems = problems;
+		}
+
+		@Override
+		protected void compute() {
+			if(endPart - firstPart > 1) {
+				int middle = (firstPart + endPart) >>> 1;
+				invokeAll(new SlotTask(world, paths, firstPart, middle, problems),
+						new SlotTask(world, paths, middle, endPart, problems));
+				return;
+			}
+			int first = paths.partStarts[firstPart];
+			int end = paths.partStarts[firstPart + 1];
+			SlotTable taken = new SlotTable(end - first);
+			for(int e=first; e<end; e++) {
+				int path = paths.ends[e] >>> 1;
+				Direction direction = DIRECTIONS[paths.directions[path]];
+				int location = paths.sourceIds[path];
+				if((paths.ends[e] & 1) != 0) {
+					direction = Direction.findOppositeDirection(direction);
+					location = paths.destinationIds[path];
+				}
+				
+				int earlier = taken.putIfAbsent(((long) location << 4) | direction.ordinal(), path);
+				if(earlier >= 0) {
+					problems.add(new Problem(paths.lines[path], world.getLocation(location).getName()+" already has a way "+direction+", from the path on line "+paths.lines[earlier]+"."));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The <tt>path</tt> that first took each slot, a <tt>Location</tt> id 
+	 * and a <tt>Direction</tt> packed into one <tt>long</tt>.  An 
+	 * open-addressing table with linear probing, as {@link RouteIndex} is,
+	 * sized up front for the ends of one part so it never grows.
+	 */
+	private static final class SlotTable {
+
+		private static final long EMPTY = -1L;
+		//packed slots are never negative
+
+		private final long[] keys;
+		private final int[] values;
+
+		SlotTable(int expected) {
+			int capacity = 16;
+			while(capacity < expected * 2) {
+				capacity *= 2;
+			}
+			this.keys = new long[capacity];
+			this.values = new int[capacity];
+			Arrays.fill(this.keys, EMPTY);
+		}
+
+		/**
+		 * @return the <tt>path</tt> that took <i>key</i> earlier, or -1 if <i>path</i> has taken it now
+		 */
+		int putIfAbsent(long key, int path) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while(keys[slot] != EMPTY) {
+				if(keys[slot] == key) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = path;
+			return -1;
+		}
+
+		private static int hash(long key) {
+			key ^= key >>> 33;
+			key *= 0xff51afd7ed558ccdL;
+			key ^= key >>> 33;
+			return (int) key;
+		}
+	}
+
+	/**
+	 * A mistake on a line of a world definition.
+	 */
+	private static final class Problem implements Comparable<Problem> {
+
+		final int line;
+		final String message;
+
+		Problem(int line, String message) {
+			this.line = line;
+			this.message = message;
+		}
+
+		public int compareTo(Problem other) {
+			if(this.line != other.line) {
+				return this.line < other.line ? -1 : 1;
+			}
+			return this.message.compareTo(other.message);
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package game.venturead.core.world;
+
+import game.venturead.core.characters.Character;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a <tt>World</tt> in a compact binary format and loads it back by
+ * memory-mapping the file, so that loading a large <tt>World</tt> costs
+ * about as much as registering its <tt>Location</tt>s and <tt>Route</tt>s,
+ * and not parsing text.
+ * <p>
+ * All numbers are big-endian.  A file is laid out as:
+ * <pre>
+ *   header      magic "VWLD", version, string, location, route and
+ *               character counts, and the position of each table
+ *   strings     (count + 1) longs, where each string starts in the data,
+ *               then the UTF-8 data itself; every name and description
+ *               is written once, however many times it is used
+ *   locations   name and description string, by <tt>Location</tt> id
+ *   routes      source, destination, cost, <tt>Direction</tt> ordinal and
+ *               lock flag, by <tt>Route</tt> id
+ *   characters  name string and <tt>Location</tt> id (-1 if nowhere), by
+ *               <tt>Character</tt> id
+ * </pre>
+ * Names are decoded as the file is loaded, since the <tt>World</tt> indexes
+ * them; descriptions stay in the mapped file, and are decoded from it when
+ * asked for.  Because the <tt>Route</tt>s are replayed in id order, a loaded
+ * <tt>World</tt> gives every <tt>Location</tt>, <tt>Route</tt> and
+ * <tt>Character</tt> the same id it had when it was saved; a registered
+ * <tt>Location</tt> can only be connected to another in its <tt>World</tt>,
+ * so every <tt>Route</tt> can be saved.
+ * @author recardona
+ */
+public final class WorldFile {
+
+	/** "VWLD" */
+	public static final int MAGIC = 0x56574C44;
+	public static final short VERSION = 1;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int LOCATION_RECORD_SIZE = 8;
+	private static final int ROUTE_RECORD_SIZE = 16;
+	private static final int CHARACTER_RECORD_SIZE = 8;
+	private static final byte LOCKED = 1;
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private WorldFile() {
+	}
+
+	/**
+	 * Saves a <tt>World</tt> to a file, replacing whatever was there.
+	 * @param world the <tt>World</tt> to save
+	 * @param file the file to save it to
+	 * @throws IOException if the file can't be written
+	 */
+	public static void save(World world, File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			save(world, out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Saves a <tt>World</tt> to a stream.  What is saved is taken while no
+	 * <tt>Location</tt>, <tt>Route</tt> or <tt>Character</tt> can be 
+	 * registered, and the locks and placements saved are those of a single
+	 * {@link World#snapshot()}; the stream is written after, while the
+	 * <tt>World</tt> goes on.
+	 * @param world the <tt>World</tt> to save
+	 * @param out the stream to save it to; it is flushed but not closed
+	 * @throws IOException if the stream can't be written
+	 */
+	public static void save(World world, OutputStream out) throws IOException {
+		WorldSnapshot snapshot;
+		int locationCount;
+		int characterCount;
+		List<Route> routes;
+		StringTableBuilder strings = new StringTableBuilder();
+		int[] locationStrings;
+		int[] characterRecords;
+		world.structureLock.readLock().lock();
+		try {
+			snapshot = world.snapshot();
+			locationCount = world.getLocationCount();
+			characterCount = snapshot.getCharacterCount();
+
+			routes = new ArrayList<Route>(snapshot.getRouteCount());
+			for(int id=0; id<snapshot.getRouteCount(); id++) {
+				routes.add(world.getRoute(id));
+			}
+
+			locationStrings = new int[locationCount * 2];
+			for(int id=0; id<locationCount; id++) {
+				Location location = world.getLocation(id);
+				locationStrings[id * 2] = strings.intern(location.getName());
+				locationStrings[id * 2 + 1] = strings.intern(location.getDescription());
+			}
+			characterRecords = new int[characterCount * 2];
+			for(int id=0; id<characterCount; id++) {
+				Character character = world.getCharacter(id);
+				Location location = snapshot.getLocationOf(character);
+				characterRecords[id * 2] = strings.intern(character.getName());
+				characterRecords[id * 2 + 1] = location == null ? -1 : location.id;
+			}
+		}
+		finally {
+			world.structureLock.readLock().unlock();
+			//what is written next was all taken above, so the World can grow meanwhile
+		}
+
+		long offsetsPosition = HEADER_SIZE;
+		long dataPosition = offsetsPosition + (strings.size() + 1) * 8L;
+		long locationsPosition = dataPosition + strings.dataSize;
+		long routesPosition = locationsPosition + (long) locationCount * LOCATION_RECORD_SIZE;
+		long charactersPosition = routesPosition + (long) routes.size() * ROUTE_RECORD_SIZE;
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeShort(0);
+		data.writeInt(strings.size());
+		data.writeInt(locationCount);
+		data.writeInt(routes.size());
+		data.writeInt(characterCount);
+		data.writeLong(offsetsPosition);
+		data.writeLong(dataPosition);
+		data.writeLong(locationsPosition);
+		data.writeLong(routesPosition);
+		data.writeLong(charactersPosition);
+
+		long offset = 0;
+		for(byte[] bytes : strings.encoded) {
+			data.writeLong(offset);
+			offset += bytes.length;
+		}
+		data.writeLong(offset);
+		for(byte[] bytes : strings.encoded) {
+			data.write(bytes);
+		}
+
+		for(int value : locationStrings) {
+			data.writeInt(value);
+		}
+
+		for(Route route : routes) {
+			data.writeInt(route.getSource().id);
+			data.writeInt(route.getDestination().id);
+			data.writeInt(route.getCost());
+			data.writeByte(route.direction.ordinal());
+			data.writeByte(snapshot.isLocked(route) ? LOCKED : 0);
+			data.writeShort(0);
+		}
+
+		for(int value : characterRecords) {
+			data.writeInt(value);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Loads a <tt>World</tt> saved by {@link #save(World, File)}.  The file
+	 * stays mapped for as long as the <tt>World</tt> is used.
+	 * @param file the file to load
+	 * @param resolver makes the saved <tt>Character</tt>s; those it returns
+	 * null for are left out, and so are all of them if it is null
+	 * @return the loaded <tt>World</tt>
+	 * @throws IOException if the file can't be read, or isn't a saved <tt>World</tt>
+	 */
+	public static World load(File file, CharacterResolver resolver) throws IOException {
+		return load(file, resolver, false);
+	}
+
+	/**
+	 * Loads a <tt>World</tt> as {@link #load(File, CharacterResolver)} does,
+	 * or fails rather than leave a <tt>Character</tt> out, which would give
+	 * those after it other ids; a {@link MutationJournal} replays records 
+	 * naming <tt>Character</tt>s by id on top of what it loads.
+	 * @param requireEvery whether <i>resolver</i> must make every saved <tt>Character</tt>
+	 * @throws IOException if the file can't be read, or isn't a saved <tt>World</tt>, or a <tt>Character</tt> required isn't made
+	 */
+	static World load(File file, CharacterResolver resolver, boolean requireEvery) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException(file+" is not a saved world");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if(header.getInt(0) != MAGIC) {
+				throw new IOException(file+" is not a saved world");
+			}
+			short version = header.getShort(4);
+			if(version != VERSION) {
+				throw new IOException(file+" was saved in version "+version+", which can't be read");
+			}
+			int stringCount = header.getInt(8);
+			int locationCount = header.getInt(12);
+			int routeCount = header.getInt(16);
+			int characterCount = header.getInt(20);
+			long charactersPosition = header.getLong(56);
+			if(stringCount < 0 || locationCount < 0 || routeCount < 0 || characterCount < 0
+					|| charactersPosition + (long) characterCount * CHARACTER_RECORD_SIZE > channel.size()) {
+				throw new IOException(file+" is truncated or corrupt");
+			}
+
+			MappedStringTable strings = new MappedStringTable(channel, stringCount, header.getLong(24), header.getLong(32));
+			MappedRecords locations = new MappedRecords(channel, header.getLong(40), (long) locationCount * LOCATION_RECORD_SIZE);
+			MappedRecords routes = new MappedRecords(channel, header.getLong(48), (long) routeCount * ROUTE_RECORD_SIZE);
+			MappedRecords characters = new MappedRecords(channel, charactersPosition, (long) characterCount * CHARACTER_RECORD_SIZE);
+
+			World world = new World();
+			world.structureLock.writeLock().lock();
+			try {
+				for(int id=0; id<locationCount; id++) {
+					long at = (long) id * LOCATION_RECORD_SIZE;
+					Location location = world.registerNewLocation(strings.get(locations.getInt(at)), null);
+					location.setDescriptionSource(strings, locations.getInt(at + 4));
+				}
+
+				for(int id=0; id<routeCount; id++) {
+					long at = (long) id * ROUTE_RECORD_SIZE;
+					int direction = routes.get(at + 12);
+					if(direction < 0 || direction >= DIRECTIONS.length) {
+						throw new IOException(file+" has a route with an unknown direction "+direction);
+					}
+					Location from = locationAt(world, routes.getInt(at), file);
+					Location to = locationAt(world, routes.getInt(at + 4), file);
+					from.connectToLocation(to, DIRECTIONS[direction], routes.getInt(at + 8));
+					if((routes.get(at + 13) & LOCKED) != 0) {
+						from.getRoute(DIRECTIONS[direction]).toggleLock();
+					}
+				}
+
+				if(resolver != null || requireEvery) {
+					for(int id=0; id<characterCount; id++) {
+						long at = (long) id * CHARACTER_RECORD_SIZE;
+						String name = strings.get(characters.getInt(at));
+						Character character = resolver == null ? null : resolver.resolve(name);
+						if(character == null && requireEvery) {
+							throw new IOException("No character was made for "+name);
+						}
+						if(character != null) {
+							world.registerCharacter(character);
+							int locationId = characters.getInt(at + 4);
+							if(locationId >= 0) {
+								world.placeCharacter(character, locationAt(world, locationId, file));
+							}
+						}
+					}
+				}
+			}
+			finally {
+				world.structureLock.writeLock().unlock();
+			}
+			return world;
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static Location locationAt(World world, int id, File file) throws IOException {
+		if(id < 0 || id >= world.getLocationCount()) {
+			throw new IOException(file+" refers to a location "+id+" that isn't in it");
+		}
+		return world.getLocation(id);
+	}
+
+	/**
+	 * Gives each distinct string the next index, encoding it as it goes.
+	 */
+	private static final class StringTableBuilder {
+
+		private final Map<String,Integer> indexes = new HashMap<String,Integer>();
+		private final List<byte[]> encoded = new ArrayList<byte[]>();
+		private long dataSize = 0;
+
+		int intern(String string) {
+			if(string == null) {
+				string = "";
+			}
+			Integer index = indexes.get(string);
+			if(index == null) {
+				byte[] bytes = string.getBytes(RenderedFragment.UTF8);
+				index = encoded.size();
+				indexes.put(string, index);
+				encoded.add(bytes);
+				dataSize += bytes.length;
+			}
+			return index;
+		}
+
+		int size() {
+			return encoded.size();
+		}
+	}
+}
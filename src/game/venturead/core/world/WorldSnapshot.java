@@ -0,0 +1,152 @@
+package game.venturead.core.world;
+
+import game.venturead.core.characters.Character;
+
+/**
+ * The state of a <tt>World</tt>'s <tt>Route</tt> locks and 
+ * <tt>Character</tt> placement at one moment, as taken by 
+ * {@link World#snapshot()}.
+ * <p>
+ * Snapshots are immutable, so one may be kept and read while the 
+ * <tt>World</tt> moves on, and forking one costs nothing: hold on to the
+ * reference.  Changing a snapshot, to try out what a move or a toggle would
+ * do, returns a new one in O(log n) that shares everything else with the 
+ * old.  The <tt>World</tt>'s <tt>Location</tt>s and <tt>Route</tt>s are 
+ * shared, not copied; <tt>Location</tt>s, <tt>Route</tt>s and 
+ * <tt>Character</tt>s registered after the snapshot was taken are not part
+ * of it.  {@link World#restore(WorldSnapshot)} makes a snapshot live again.
+ * @author recardona
+ */
+public final class WorldSnapshot {
+	
+	private final World world;
+	private final PersistentIntTrie locks;
+	//1 for each locked route, by route id
+	private final PersistentIntTrie placements;
+	//one more than the id of the location each character is at, by character id; 0 if it is nowhere
+	private final int routeCount;
+	private final int characterCount;
+	
+	WorldSnapshot(World world, PersistentIntTrie locks, PersistentIntTrie placements, int routeCount, int characterCount) {
+		this.world = world;
+		this.locks = locks;
+		this.placements = placements;
+		this.routeCount = routeCount;
+		this.characterCount = characterCount;
+	}
+	
+	/**
+	 * @return the <tt>World</tt> this is a snapshot of
+	 */
+	public World getWorld() {
+		return world;
+	}
+	
+	/**
+	 * @return the number of <tt>Route</tt>s in this snapshot; their ids run from zero to one less
+	 */
+	public int getRouteCount() {
+		return routeCount;
+	}
+	
+	/**
+	 * @return the number of <tt>Character</tt>s in this snapshot; their ids run from zero to one less
+	 */
+	public int getCharacterCount() {
+		return characterCount;
+	}
+	
+	/**
+	 * @param route a <tt>Route</tt> of this snapshot
+	 * @return true if <i>route</i> is locked in this snapshot
+	 * @throws <tt>IllegalArgumentException</tt> if <i>route</i> isn't part of this snapshot
+	 */
+	public boolean isLocked(Route route) {
+		checkRoute(route);
+		return locks.get(route.id) != 0;
+	}
+	
+	/**
+	 * @param character a <tt>Character</tt> of this snapshot
+	 * @return the <tt>Location</tt> <i>character</i> is at in this snapshot, or null if it is nowhere
+	 * @throws <tt>IllegalArgumentException</tt> if <i>character</i> isn't part of this snapshot
+	 */
+	public Location getLocationOf(Character character) {
+		checkCharacter(character);
+		int placement = placements.get(character.getId());
+		return placement == 0 ? null : world.getLocation(placement - 1);
+	}
+	
+	/**
+	 * @param route a <tt>Route</tt> of this snapshot
+	 * @return a snapshot like this one, but with the lock of <i>route</i> toggled
+	 * @throws <tt>IllegalArgumentException</tt> if <i>route</i> isn't part of this snapshot
+	 */
+	public WorldSnapshot toggleLock(Route route) {
+		checkRoute(route);
+		return withLock(route.id, locks.get(route.id) == 0);
+	}
+	
+	/**
+	 * @param character a <tt>Character</tt> of this snapshot
+	 * @param location where to put it, or null for nowhere
+	 * @return a snapshot like this one, but with <i>character</i> at <i>location</i>
+	 * @throws <tt>IllegalArgumentException</tt> if <i>character</i> isn't part of this snapshot, or <i>location</i> isn't registered in its <tt>World</tt>
+	 */
+	public WorldSnapshot placeCharacter(Character character, Location location) {
+		checkCharacter(character);
+		if(location != null && (location.world != world || location.id < 0)) {
+			throw new IllegalArgumentException("Location "+location.getName()+" is not registered in this World.");
+		}
+		return withPlacement(character.getId(), location == null ? 0 : location.id + 1);
+	}
+	
+	/**
+	 * Moves a <tt>Character</tt> along a <tt>Route</tt> leaving the 
+	 * <tt>Location</tt> it is at in this snapshot, as 
+	 * {@link World#moveCharacter(Character, Route)} would.
+	 * @param character a <tt>Character</tt> of this snapshot
+	 * @param route the <tt>Route</tt> to take
+	 * @return a snapshot like this one, but with <i>character</i> moved; null if <i>route</i> is locked in this snapshot
+	 * @throws <tt>IllegalArgumentException</tt> if <i>character</i> isn't at the source of <i>route</i> in this snapshot
+	 */
+	public WorldSnapshot moveCharacter(Character character, Route route) {
+		checkRoute(route);
+		if(getLocationOf(character) != route.getSource()) {
+			throw new IllegalArgumentException("Character "+character.getName()+" is not at the start of the "+route+".");
+		}
+		if(locks.get(route.id) != 0) {
+			return null;
+		}
+		return withPlacement(character.getId(), route.getDestination().id + 1);
+	}
+	
+	WorldSnapshot withLock(int routeId, boolean locked) {
+		return new WorldSnapshot(world, locks.set(routeId, locked ? 1 : 0), placements, routeCount, characterCount);
+	}
+	
+	WorldSnapshot withPlacement(int characterId, int placement) {
+		return new WorldSnapshot(world, locks, placements.set(characterId, placement), routeCount, characterCount);
+	}
+	
+	PersistentIntTrie getLocks() {
+		return locks;
+	}
+	
+	PersistentIntTrie getPlacements() {
+		return placements;
+	}
+	
+	private void checkRoute(Route route) {
+		if(route.getSource().world != world || route.id < 0 || route.id >= routeCount) {
+			throw new IllegalArgumentException("The "+route+" is not part of this snapshot.");
+		}
+	}
+	
+	private void checkCharacter(Character character) {
+		int id = character.getId();
+		if(id < 0 || id >= characterCount || world.getCharacter(id) != character) {
+			throw new IllegalArgumentException("Character "+character.getName()+" is not part of this snapshot.");
+		}
+	}
+}
@@ -2,12 +2,23 @@ package game.venturead.core.world.test;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.apache.commons.lang3.RandomStringUtils;
 
+import game.venturead.core.characters.Character;
 import game.venturead.core.world.Direction;
 import game.venturead.core.world.Location;
+import game.venturead.core.world.LocationRenderer;
+import game.venturead.core.world.Route;
+import game.venturead.core.world.RouteVisitor;
+import game.venturead.core.world.World;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -82,9 +93,119 @@ public class LocationTest {
 		assertEquals(1, maxTimesLocationHashClashed);
 	}
 
+	@Test
+	public void testGetUnlockedRoutes() {
+		house.getRoute(Direction.UP).toggleLock();
+		
+		Map<Direction,Route> unlocked = house.getUnlockedRoutes();
+		assertEquals(1, unlocked.size());
+		assertSame(house.getRoute(Direction.EAST), unlocked.get(Direction.EAST));
+		assertEquals("Locked routes are not removed from the Location", 2, house.getConnectingRoutes().size());
+		assertEquals(1 << Direction.EAST.ordinal(), house.getUnlockedMask());
+		
+		house.getRoute(Direction.UP).toggleLock();
+		assertEquals(2, house.getUnlockedRoutes().size());
+		assertEquals(house.getRouteMask(), house.getUnlockedMask());
+	}
+	
+	@Test
+	public void testForEachUnlockedRoute() {
+		house.getRoute(Direction.EAST).toggleLock();
+		final List<Direction> visited = new ArrayList<Direction>();
+		house.forEachUnlockedRoute(new RouteVisitor() {
+			@Override
+			public void visit(Direction direction, Route route) {
+				visited.add(direction);
+			}
+		});
+		assertEquals(1, visited.size());
+		assertEquals(Direction.UP, visited.get(0));
+		
+		visited.clear();
+		house.forEachRoute(new RouteVisitor() {
+			@Override
+			public void visit(Direction direction, Route route) {
+				visited.add(direction);
+			}
+		});
+		assertEquals(2, visited.size());
+		assertEquals("Routes are visited in Direction order", Direction.EAST, visited.get(0));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testConnectingRoutesAreReadOnly() {
+		house.getConnectingRoutes().remove(Direction.UP);
+	}
+
 	@Test
 	public void testRegisterCharacter() {
-		fail("Not yet implemented");
+		World world = new World();
+		Location hall = world.registerNewLocation("The Hall", "A long hall.");
+		Location kitchen = world.registerNewLocation("The Kitchen", "Pots and pans everywhere.");
+		Character butler = new Character("The Butler", 5) {};
+		Character cook = new Character("The Cook", 5) {};
+		
+		hall.registerCharacter(butler);
+		hall.registerCharacter(cook);
+		hall.registerCharacter(butler);
+		assertEquals("Registering twice should not duplicate the butler", 2, hall.getCharactersThatAreHere().size());
+		assertTrue(hall.isHere(butler));
+		
+		kitchen.registerCharacter(butler);
+		assertFalse(hall.isHere(butler));
+		assertTrue(kitchen.getCharactersThatAreHere().contains(butler));
+		assertEquals(1, hall.getCharactersThatAreHere().size());
+		assertSame(cook, hall.getCharactersThatAreHere().get(0));
+		
+		hall.unregisterCharacter(cook);
+		assertTrue(hall.getCharactersThatAreHere().isEmpty());
+		assertNull(world.getLocationOf(cook));
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testRegisterCharacterOutsideWorld() {
+		house.registerCharacter(new Character("The Butler", 5) {});
+	}
+
+	@Test
+	public void testRenderer() throws Exception {
+		String expected = "The House\nYou see A quaint house, with tons of knickknacks.\n"
+				+"There is a path to The Garden, EAST from here.\n"
+				+"There is a path to The Attic, UP from here.\n"
+				+"There is no one here.\n\n";
+		StringBuilder sb = new StringBuilder();
+		LocationRenderer.render(house, sb);
+		assertEquals(expected, sb.toString());
+		assertEquals(expected, house.toString());
+		
+		ByteBuffer buffer = ByteBuffer.allocate(LocationRenderer.renderedLength(house));
+		LocationRenderer.render(house, buffer);
+		assertEquals(0, buffer.remaining());
+		assertEquals(expected, new String(buffer.array(), "UTF-8"));
+		
+		house.connectToLocation(Location.newLocation("The Cellar", "Cobwebs."), Direction.DOWN);
+		assertTrue("Adding a route renders the exits again", house.toString().contains("path to The Cellar, DOWN"));
+	}
+
+	@Test
+	public void testRendererFollowsOccupants() throws Exception {
+		World world = new World();
+		Location hall = world.registerNewLocation("The Hall", "A long hall.");
+		Character butler = new Character("The Butler", 5) {};
+		assertTrue(hall.toString().endsWith("There is no one here.\n\n"));
+		
+		hall.registerCharacter(butler);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LocationRenderer.render(hall, out);
+		assertEquals("The Hall\nYou see A long hall.\n\n You can see The Butler, and no one else.\n", out.toString("UTF-8"));
+		
+		hall.unregisterCharacter(butler);
+		assertTrue(hall.toString().endsWith("There is no one here.\n\n"));
+	}
+
+	@Test(expected=BufferOverflowException.class)
+	public void testRendererOverflow() {
+		LocationRenderer.render(house, ByteBuffer.allocate(8));
 	}
 
 }
@@ -1,10 +1,52 @@
 package game.venturead.core.world.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import game.venturead.core.characters.Character;
+import game.venturead.core.world.CharacterResolver;
+import game.venturead.core.world.CompiledGraph;
+import game.venturead.core.world.CoordinateEmbedding;
 import game.venturead.core.world.Direction;
+import game.venturead.core.world.DistanceField;
 import game.venturead.core.world.Location;
+import game.venturead.core.world.LocationMatcher;
+import game.venturead.core.world.LocationRenderer;
+import game.venturead.core.world.MutationJournal;
+import game.venturead.core.world.PathCache;
+import game.venturead.core.world.PathQuery;
+import game.venturead.core.world.Plan;
+import game.venturead.core.world.PlanStep;
+import game.venturead.core.world.Planner;
+import game.venturead.core.world.RegionPager;
+import game.venturead.core.world.Route;
+import game.venturead.core.world.SearchAlgorithm;
+import game.venturead.core.world.StringStore;
 import game.venturead.core.world.World;
+import game.venturead.core.world.World.Path;
+import game.venturead.core.world.WorldDefinitionException;
+import game.venturead.core.world.WorldDefinitionLoader;
+import game.venturead.core.world.WorldFile;
+import game.venturead.core.world.WorldSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -36,12 +78,1211 @@ public class WorldTest {
 		}
 	}
 
+	@Test
+	public void testGetLocation() {
+		assertSame(house, world.getLocation("The House"));
+		assertSame(house, world.getLocation(house.getId()));
+		assertNull(world.getLocation("The house"));
+		assertNull(world.getLocation("The Shed"));
+		
+		for(int i=0; i<100; i++) {
+			world.registerNewLocation("Room "+i, "one of many rooms.");
+		}
+		assertEquals("Room 42", world.getLocation("Room 42").getName());
+		assertSame(attic, world.getLocation("The Attic"));
+	}
+
+	@Test
+	public void testFindLocationsByPrefix() {
+		world.registerNewLocation("The Gazebo", "a creaky gazebo.");
+		
+		List<Location> matches = world.findLocationsByPrefix("the g");
+		assertEquals(2, matches.size());
+		assertSame(garden, matches.get(0));
+		assertEquals("The Gazebo", matches.get(1).getName());
+		assertEquals(4, world.findLocationsByPrefix("").size());
+		assertTrue(world.findLocationsByPrefix("The Shed").isEmpty());
+	}
+
+	@Test
+	public void testRegisterCharacter() {
+		Character hero = new Character("The Hero", 10) {};
+		Character gnome = new Character("A Gnome", 2) {};
+		world.registerCharacter(hero);
+		world.registerCharacter(gnome);
+		
+		assertEquals(0, hero.getId());
+		assertEquals(1, gnome.getId());
+		assertSame(gnome, world.getCharacter(1));
+		assertEquals(2, world.getWorldCharacters().size());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testRegisterCharacterTwice() {
+		Character hero = new Character("The Hero", 10) {};
+		world.registerCharacter(hero);
+		world.registerCharacter(hero);
+	}
+
+	@Test
+	public void testMoveCharacter() {
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(garden, Direction.EAST, house);
+		Character hero = new Character("The Hero", 10) {};
+		List<Character> gnomes = new ArrayList<Character>();
+		for(int i=0; i<1000; i++) {
+			Character gnome = new Character("Gnome "+i, 2) {};
+			world.placeCharacter(gnome, garden);
+			gnomes.add(gnome);
+		}
+		world.placeCharacter(hero, attic);
+		assertSame(attic, world.getLocationOf(hero));
+		
+		assertTrue(world.moveCharacter(hero, attic.getRoute(Direction.DOWN)));
+		assertSame(house, world.getLocationOf(hero));
+		assertTrue(house.isHere(hero));
+		assertFalse(attic.isHere(hero));
+		
+		Route toGarden = house.getRoute(Direction.WEST);
+		toGarden.toggleLock();
+		assertFalse("A locked route cannot be taken", world.moveCharacter(hero, toGarden));
+		assertSame(house, world.getLocationOf(hero));
+		toGarden.toggleLock();
+		assertTrue(world.moveCharacter(hero, toGarden));
+		
+		for(int i=0; i<1000; i+=2) {
+			assertTrue(world.moveCharacter(gnomes.get(i), garden.getRoute(Direction.EAST)));
+		}
+		assertEquals(501, garden.getCharactersThatAreHere().size());
+		assertEquals(500, house.getCharactersThatAreHere().size());
+		for(Character gnome : gnomes) {
+			assertTrue(world.getLocationOf(gnome).isHere(gnome));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMoveCharacterFromElsewhere() {
+		world.createPath(attic, Direction.DOWN, house);
+		Character hero = new Character("The Hero", 10) {};
+		world.placeCharacter(hero, garden);
+		world.moveCharacter(hero, attic.getRoute(Direction.DOWN));
+	}
+
+	@Test
+	public void testConcurrentMoves() throws Exception {
+		final int size = 16;
+		final Location[][] grid = new Location[size][size];
+		for(int row=0; row<size; row++) {
+			for(int column=0; column<size; column++) {
+				grid[row][column] = world.registerNewLocation("Cell "+row+","+column, "a cell.");
+				if(row > 0) {
+					world.createPath(grid[row][column], Direction.NORTH, grid[row-1][column]);
+				}
+				if(column > 0) {
+					world.createPath(grid[row][column], Direction.WEST, grid[row][column-1]);
+				}
+			}
+		}
+		
+		final List<Character> characters = new ArrayList<Character>();
+		for(int i=0; i<400; i++) {
+			Character character = new Character("Wanderer "+i, 5) {};
+			world.placeCharacter(character, grid[i % size][(i / size) % size]);
+			characters.add(character);
+		}
+		
+		final int threads = 8;
+		final AtomicInteger moves = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for(int t=0; t<threads; t++) {
+			final int seed = t;
+			tasks.add(new Runnable() {
+				public void run() {
+					Random random = new Random(seed);
+					for(int i=0; i<20000; i++) {
+						Character character = characters.get(random.nextInt(characters.size()));
+						Location here = world.getLocationOf(character);
+						List<Route> routes = new ArrayList<Route>(here.getConnectingRoutes().values());
+						try {
+							if(world.moveCharacter(character, routes.get(random.nextInt(routes.size())))) {
+								moves.incrementAndGet();
+							}
+						} catch(IllegalArgumentException e) {
+							//another thread moved it first
+						} catch(RuntimeException e) {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		tasks.add(new Runnable() {
+			public void run() {
+				Random random = new Random(threads);
+				for(int i=0; i<5000; i++) {
+					Location cell = grid[random.nextInt(size)][random.nextInt(size)];
+					List<Route> routes = new ArrayList<Route>(cell.getConnectingRoutes().values());
+					routes.get(random.nextInt(routes.size())).toggleLock();
+					world.canReach(grid[0][0], cell);
+					world.snapshot();
+				}
+			}
+		});
+		runConcurrently(tasks);
+		
+		assertEquals(0, errors.get());
+		assertTrue(moves.get() > 0);
+		int placed = 0;
+		for(Location location : world.getWorldLocations()) {
+			for(Character character : world.getCharactersAt(location)) {
+				assertSame("Each character is where the world says it is", location, world.getLocationOf(character));
+			}
+			placed += location.getCharactersThatAreHere().size();
+		}
+		assertEquals("Each character is in exactly one location", characters.size(), placed);
+		WorldSnapshot snapshot = world.snapshot();
+		for(Character character : characters) {
+			assertTrue(world.getLocationOf(character).isHere(character));
+			assertSame(world.getLocationOf(character), snapshot.getLocationOf(character));
+		}
+		for(int id=0; id<snapshot.getRouteCount(); id++) {
+			assertEquals(world.getRoute(id).isLocked(), snapshot.isLocked(world.getRoute(id)));
+		}
+	}
+
+	@Test
+	public void testConcurrentRegistration() throws Exception {
+		final int threads = 8;
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for(int t=0; t<threads; t++) {
+			final int thread = t;
+			tasks.add(new Runnable() {
+				public void run() {
+					Location below = null;
+					for(int i=0; i<500; i++) {
+						Location room = world.registerNewLocation("Room "+thread+"-"+i, "a room.");
+						if(below != null) {
+							world.createPath(room, Direction.DOWN, below);
+						}
+						world.registerCharacter(new Character("Guest "+thread+"-"+i, 1) {});
+						below = room;
+					}
+				}
+			});
+		}
+		runConcurrently(tasks);
+		
+		assertEquals(3 + threads * 500, world.getWorldLocations().size());
+		assertEquals(threads * 500, world.getWorldCharacters().size());
+		for(int id=0; id<3 + threads * 500; id++) {
+			assertEquals(id, world.getLocation(id).getId());
+		}
+		Location room = world.getLocation("Room 3-42");
+		assertSame(room.getRoute(Direction.DOWN), world.getRoute(room, world.getLocation("Room 3-41")));
+		assertTrue(world.canReach(room, world.getLocation("Room 3-0")));
+		assertFalse(world.canReach(room, world.getLocation("Room 4-0")));
+	}
+
+	private static void runConcurrently(List<Runnable> tasks) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(Runnable task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for(Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSnapshot() {
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(garden, Direction.EAST, house);
+		Route stairs = attic.getRoute(Direction.DOWN);
+		Route gate = house.getRoute(Direction.WEST);
+		Character hero = new Character("The Hero", 10) {};
+		world.placeCharacter(hero, attic);
+		
+		WorldSnapshot before = world.snapshot();
+		assertSame("Nothing changed, so the snapshot is the same", before, world.snapshot());
+		world.moveCharacter(hero, stairs);
+		gate.toggleLock();
+		
+		assertSame(attic, before.getLocationOf(hero));
+		assertFalse(before.isLocked(gate));
+		WorldSnapshot now = world.snapshot();
+		assertSame(house, now.getLocationOf(hero));
+		assertTrue(now.isLocked(gate));
+		
+		WorldSnapshot unlocked = now.toggleLock(gate);
+		WorldSnapshot explored = unlocked.moveCharacter(hero, gate);
+		assertSame(garden, explored.getLocationOf(hero));
+		assertNull("The gate is locked in the live world", now.moveCharacter(hero, gate));
+		assertSame("Exploring leaves the world alone", house, world.getLocationOf(hero));
+		assertTrue(gate.isLocked());
+		
+		world.restore(before);
+		assertSame(attic, world.getLocationOf(hero));
+		assertFalse(gate.isLocked());
+		assertTrue(attic.isHere(hero));
+		
+		world.restore(explored);
+		assertSame(garden, world.getLocationOf(hero));
+		assertFalse(gate.isLocked());
+		assertTrue(world.canReach(attic, garden));
+	}
+
+	@Test
+	public void testLargeSnapshot() {
+		List<Character> characters = new ArrayList<Character>();
+		for(int i=0; i<5000; i++) {
+			Character character = new Character("Extra "+i, 1) {};
+			world.placeCharacter(character, i % 2 == 0 ? house : garden);
+			characters.add(character);
+		}
+		WorldSnapshot snapshot = world.snapshot();
+		WorldSnapshot moved = snapshot.placeCharacter(characters.get(4321), attic);
+		assertSame(attic, moved.getLocationOf(characters.get(4321)));
+		assertSame(garden, snapshot.getLocationOf(characters.get(4321)));
+		assertSame(house, moved.getLocationOf(characters.get(4320)));
+		
+		world.placeCharacter(characters.get(17), attic);
+		world.removeCharacter(characters.get(18));
+		world.restore(snapshot);
+		assertSame(garden, world.getLocationOf(characters.get(17)));
+		assertSame(house, world.getLocationOf(characters.get(18)));
+		assertEquals(2500, house.getCharactersThatAreHere().size());
+	}
+
+	@Test
+	public void testPlanner() {
+		final Location vault = world.registerNewLocation("The Vault", "piles of gold.");
+		Location cellar = world.registerNewLocation("The Cellar", "damp and dark.");
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(house, Direction.EAST, vault);
+		world.createPath(house, Direction.DOWN, cellar, 5);
+		world.createPath(cellar, Direction.NORTH, vault, 5);
+		world.togglePathLock(house, vault);
+		world.togglePathLock(cellar, vault);
+		
+		LocationMatcher inVault = new LocationMatcher() {
+			public boolean matches(Location location) {
+				return location == vault;
+			}
+		};
+		assertNull(world.findPath(attic, vault));
+		
+		List<Route> doors = new ArrayList<Route>();
+		doors.add(world.getRoute(house, vault));
+		doors.add(world.getRoute(vault, house));
+		Planner planner = new Planner(world, doors);
+		Plan plan = planner.plan(attic, inVault);
+		assertEquals(3, plan.size());
+		assertEquals(PlanStep.Kind.MOVE, plan.getSteps().get(0).getKind());
+		assertSame(attic.getRoute(Direction.DOWN), plan.getSteps().get(0).getRoute());
+		assertEquals(PlanStep.Kind.TOGGLE_LOCK, plan.getSteps().get(1).getKind());
+		assertSame(house.getRoute(Direction.EAST), plan.getSteps().get(1).getRoute());
+		assertSame(vault, plan.getDestination());
+		assertEquals(3, plan.getCost());
+		assertTrue("Planning leaves the world alone", house.getRoute(Direction.EAST).isLocked());
+		
+		Planner stuck = new Planner(world, new ArrayList<Route>());
+		assertNull("The cellar's door is locked and not lockable", stuck.plan(attic, inVault));
+		assertFalse(stuck.isTruncated());
+		
+		world.togglePathLock(cellar, vault);
+		planner.setToggleCost(20);
+		plan = planner.plan(attic, inVault);
+		assertSame("Unlocking is now dearer than going round", cellar.getRoute(Direction.NORTH), plan.getSteps().get(plan.size() - 1).getRoute());
+		assertEquals(1 + 5 + 5, plan.getCost());
+		world.togglePathLock(cellar, vault);
+		
+		WorldSnapshot opened = world.snapshot().toggleLock(world.getRoute(house, vault));
+		assertEquals(2, stuck.plan(opened, attic, inVault).size());
+	}
+
+	@Test
+	public void testPlannerWithKey() {
+		final Location vault = world.registerNewLocation("The Vault", "piles of gold.");
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(house, Direction.EAST, vault);
+		world.createPath(house, Direction.WEST, garden, 2);
+		world.togglePathLock(house, vault);
+		
+		LocationMatcher inVault = new LocationMatcher() {
+			public boolean matches(Location location) {
+				return location == vault;
+			}
+		};
+		List<Route> doors = new ArrayList<Route>();
+		doors.add(world.getRoute(house, vault));
+		Planner planner = new Planner(world, doors);
+		planner.requireKey(world.getRoute(house, vault), garden);
+		
+		Plan plan = planner.plan(attic, inVault);
+		assertEquals("Down, to the garden for the key, back, unlock, in", 5, plan.size());
+		assertSame(house.getRoute(Direction.WEST), plan.getSteps().get(1).getRoute());
+		assertSame(garden.getRoute(Direction.EAST), plan.getSteps().get(2).getRoute());
+		assertEquals(PlanStep.Kind.TOGGLE_LOCK, plan.getSteps().get(3).getKind());
+		assertEquals(1 + 2 + 2 + 1 + 1, plan.getCost());
+		
+		world.togglePathLock(house, garden);
+		assertNull("The key is out of reach", planner.plan(attic, inVault));
+		planner.requireKey(world.getRoute(house, vault), attic);
+		assertEquals("The key lies where the plan starts", 3, planner.plan(attic, inVault).size());
+	}
+
+	@Test
+	public void testPlannerWithManyLocks() {
+		final int rooms = 40;
+		Location[] corridor = new Location[rooms];
+		List<Route> doors = new ArrayList<Route>();
+		for(int i=0; i<rooms; i++) {
+			corridor[i] = world.registerNewLocation("Corridor "+i, "a stretch of corridor.");
+			if(i > 0) {
+				world.createPath(corridor[i-1], Direction.EAST, corridor[i]);
+				world.togglePathLock(corridor[i-1], corridor[i]);
+				doors.add(world.getRoute(corridor[i-1], corridor[i]));
+			}
+		}
+		final Location end = corridor[rooms - 1];
+		Planner planner = new Planner(world, doors);
+		Plan plan = planner.plan(corridor[0], new LocationMatcher() {
+			public boolean matches(Location location) {
+				return location == end;
+			}
+		});
+		assertEquals(2 * (rooms - 1), plan.size());
+		assertEquals(2 * (rooms - 1), plan.getCost());
+		
+		assertEquals(2 * (rooms - 1) + 1, planner.getStatesVisited());
+		
+		planner.setMaxStates(10);
+		assertNull(planner.plan(corridor[0], new LocationMatcher() {
+			public boolean matches(Location location) {
+				return location == end;
+			}
+		}));
+		assertTrue(planner.isTruncated());
+	}
+
+	@Test
+	public void testRenderWorld() throws Exception {
+		world.createPath(attic, Direction.DOWN, house);
+		StringWriter writer = new StringWriter();
+		LocationRenderer.renderWorld(world, writer);
+		assertEquals(attic.toString() + house.toString() + garden.toString(), writer.toString());
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LocationRenderer.renderWorld(world, out);
+		assertEquals(writer.toString(), out.toString("UTF-8"));
+		assertEquals(world.toString().length(), writer.toString().length());
+	}
+
 	@Test
 	public void testCreatePath() {
 		world.createPath(attic, Direction.DOWN, house);
 		world.createPath(garden, Direction.EAST, house);
 	}
 
+	@Test
+	public void testConnectToUnregisteredLocation() {
+		Location shed = Location.newLocation("The Shed", "a rickety shed.");
+		try {
+			garden.connectToLocation(shed, Direction.NORTH);
+			fail("A registered location can't lead out of its world");
+		} catch(IllegalArgumentException e) {
+			assertFalse(garden.getConnectingRoutes().containsKey(Direction.NORTH));
+		}
+		assertNull(world.findPath(garden, attic));
+	}
+
+	@Test
+	public void testFindPath() {
+		Location cellar = world.registerNewLocation("The Cellar", "a damp cellar.");
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(garden, Direction.EAST, house);
+		world.createPath(house, Direction.DOWN, cellar);
+		world.createPath(cellar, Direction.NORTH, garden);
+		
+		Path<Location> path = world.findPath(attic, garden, SearchAlgorithm.DIJKSTRA);
+		assertEquals("Attic to garden goes through the house", 2, path.getPathCost());
+		assertEquals(3, path.size());
+		assertSame(garden, path.getLastItem());
+		
+		Route houseToGarden = house.getConnectingRoutes().get(Direction.WEST);
+		houseToGarden.toggleLock();
+		path = world.findPath(attic, garden, SearchAlgorithm.DIJKSTRA);
+		assertEquals("With the garden door locked, go round through the cellar", 3, path.getPathCost());
+		
+		cellar.getConnectingRoutes().get(Direction.NORTH).toggleLock();
+		assertNull("Every way to the garden is locked", world.findPath(attic, garden, SearchAlgorithm.DIJKSTRA));
+		
+		path = world.findPath(house, house, SearchAlgorithm.DIJKSTRA);
+		assertEquals(0, path.getPathCost());
+		assertSame(house, path.getLastItem());
+	}
+
+	@Test
+	public void testPath() {
+		Path<Location> toHouse = new Path<Location>(attic, 0).append(house, 1);
+		Path<Location> toGarden = toHouse.append(garden, 2);
+		Path<Location> toAttic = toHouse.append(attic, 1);
+		
+		assertEquals("Appending leaves the original alone", 2, toHouse.size());
+		assertSame(house, toHouse.getLastItem());
+		assertEquals(3, toGarden.getPathCost());
+		assertSame(toHouse, toGarden.getPrevious());
+		assertSame(toHouse, toAttic.getPrevious());
+		
+		Location[] expected = {attic, house, garden};
+		int i = 0;
+		for(Location location : toGarden) {
+			assertSame(expected[i++], location);
+		}
+		assertEquals(3, i);
+		
+		assertEquals(toGarden, new Path<Location>(attic, 0).append(house, 1).append(garden, 2));
+		assertFalse(toGarden.equals(toAttic));
+	}
+
+	@Test
+	public void testLegacyMatchesDijkstra() {
+		Location[][] grid = new Location[4][4];
+		for(int row=0; row<4; row++) {
+			for(int column=0; column<4; column++) {
+				grid[row][column] = world.registerNewLocation("Room "+row+","+column, "an empty room.");
+				if(row > 0) {
+					world.createPath(grid[row][column], Direction.NORTH, grid[row-1][column]);
+				}
+				if(column > 0) {
+					world.createPath(grid[row][column], Direction.WEST, grid[row][column-1]);
+				}
+			}
+		}
+		
+		for(Location start : grid[0]) {
+			for(Location[] row : grid) {
+				for(Location goal : row) {
+					Path<Location> legacy = world.findPath(start, goal, SearchAlgorithm.LEGACY);
+					Path<Location> dijkstra = world.findPath(start, goal, SearchAlgorithm.DIJKSTRA);
+					assertEquals(dijkstra.getPathCost(), legacy.getPathCost());
+					assertEquals(dijkstra.size(), legacy.size());
+					assertSame(goal, legacy.getLastItem());
+				}
+			}
+		}
+		
+		assertNull(world.findPath(grid[0][0], attic, SearchAlgorithm.LEGACY));
+	}
+
+	@Test
+	public void testWeightedRoutes() {
+		world.createPath(attic, Direction.DOWN, house, 10);
+		world.createPath(attic, Direction.EAST, garden, 2);
+		world.createPath(garden, Direction.EAST, house, 3);
+		
+		for(SearchAlgorithm algorithm : SearchAlgorithm.values()) {
+			Path<Location> path = world.findPath(attic, house, algorithm);
+			assertEquals(algorithm+" should go round through the garden", 5, path.getPathCost());
+			assertEquals(3, path.size());
+		}
+	}
+
+	@Test
+	public void testSearchAlgorithmsAgree() {
+		Random random = new Random(42);
+		int size = 12;
+		Location[][] grid = new Location[size][size];
+		for(int row=0; row<size; row++) {
+			for(int column=0; column<size; column++) {
+				grid[row][column] = world.registerNewLocation("Room "+row+","+column, "an empty room.");
+				if(row > 0) {
+					world.createPath(grid[row][column], Direction.NORTH, grid[row-1][column], 1 + random.nextInt(9));
+				}
+				if(column > 0) {
+					world.createPath(grid[row][column], Direction.WEST, grid[row][column-1], 1 + random.nextInt(9));
+				}
+			}
+		}
+		
+		for(int i=0; i<40; i++) {
+			Location start = grid[random.nextInt(size)][random.nextInt(size)];
+			Location goal = grid[random.nextInt(size)][random.nextInt(size)];
+			int expected = world.findPath(start, goal, SearchAlgorithm.LEGACY).getPathCost();
+			for(SearchAlgorithm algorithm : SearchAlgorithm.values()) {
+				Path<Location> path = world.findPath(start, goal, algorithm);
+				assertEquals(algorithm+" should find a shortest path", expected, path.getPathCost());
+				assertSame(start, path.iterator().next());
+				assertSame(goal, path.getLastItem());
+			}
+		}
+		
+		for(int i=0; i<60; i++) {
+			Location location = grid[random.nextInt(size)][random.nextInt(size)];
+			for(Route route : location.getConnectingRoutes().values()) {
+				route.toggleLock();
+				break;
+			}
+		}
+		
+		for(int i=0; i<40; i++) {
+			Location start = grid[random.nextInt(size)][random.nextInt(size)];
+			Location goal = grid[random.nextInt(size)][random.nextInt(size)];
+			Path<Location> dijkstra = world.findPath(start, goal, SearchAlgorithm.DIJKSTRA);
+			Path<Location> bidirectional = world.findPath(start, goal, SearchAlgorithm.BIDIRECTIONAL);
+			if(dijkstra == null) {
+				assertNull(bidirectional);
+			}
+			else {
+				assertEquals(dijkstra.getPathCost(), bidirectional.getPathCost());
+			}
+		}
+	}
+
+	@Test
+	public void testHierarchicalSearch() {
+		world.setClusterSize(5);
+		Random random = new Random(3);
+		int size = 15;
+		Location[][] grid = new Location[size][size];
+		for(int row=0; row<size; row++) {
+			for(int column=0; column<size; column++) {
+				grid[row][column] = world.registerNewLocation("Room "+row+","+column, "an empty room.");
+				if(row > 0 && random.nextInt(5) > 0) {
+					world.createPath(grid[row][column], Direction.NORTH, grid[row-1][column], 1 + random.nextInt(9));
+				}
+				if(column > 0 && random.nextInt(5) > 0) {
+					world.createPath(grid[row][column], Direction.WEST, grid[row][column-1], 1 + random.nextInt(9));
+				}
+			}
+		}
+		
+		for(int round=0; round<6; round++) {
+			for(int i=0; i<30; i++) {
+				Location start = grid[random.nextInt(size)][random.nextInt(size)];
+				Location goal = grid[random.nextInt(size)][random.nextInt(size)];
+				Path<Location> dijkstra = world.findPath(start, goal, SearchAlgorithm.DIJKSTRA);
+				Path<Location> hierarchical = world.findPath(start, goal, SearchAlgorithm.HIERARCHICAL);
+				if(dijkstra == null) {
+					assertNull(hierarchical);
+					continue;
+				}
+				
+				assertEquals(dijkstra.getPathCost(), hierarchical.getPathCost());
+				assertSame(goal, hierarchical.getLastItem());
+				Location previous = null;
+				for(Location location : hierarchical) {
+					if(previous != null) {
+						assertTrue("Each step follows an unlocked route", hasUnlockedRoute(previous, location));
+					}
+					previous = location;
+				}
+			}
+			
+			for(int i=0; i<15; i++) {
+				Location location = grid[random.nextInt(size)][random.nextInt(size)];
+				for(Route route : location.getConnectingRoutes().values()) {
+					route.toggleLock();
+					break;
+				}
+			}
+			Location extra = world.registerNewLocation("Extra "+round, "a new room.");
+			world.createPath(grid[round][0], Direction.UP, extra, 1);
+		}
+	}
+
+	@Test
+	public void testHierarchicalSearchBeforeRoutes() {
+		world.setClusterSize(4);
+		int size = 12;
+		Location[] rooms = new Location[size];
+		for(int i=0; i<size; i++) {
+			rooms[i] = world.registerNewLocation("Room "+i, "an empty room.");
+		}
+		assertNull("Every room is alone in its cluster", world.findPath(rooms[0], rooms[size-1], SearchAlgorithm.HIERARCHICAL));
+		
+		for(int i=1; i<size; i++) {
+			world.createPath(rooms[i-1], Direction.EAST, rooms[i], i);
+		}
+		world.createPath(rooms[2], Direction.NORTH, rooms[9], 1);
+		for(int start=0; start<size; start+=3) {
+			for(int goal=0; goal<size; goal++) {
+				Path<Location> dijkstra = world.findPath(rooms[start], rooms[goal], SearchAlgorithm.DIJKSTRA);
+				Path<Location> hierarchical = world.findPath(rooms[start], rooms[goal], SearchAlgorithm.HIERARCHICAL);
+				assertEquals(dijkstra.getPathCost(), hierarchical.getPathCost());
+				assertEquals(dijkstra.size(), hierarchical.size());
+			}
+		}
+	}
+	
+	private static boolean hasUnlockedRoute(Location from, Location to) {
+		for(Route route : from.getConnectingRoutes().values()) {
+			if(!route.isLocked() && route.toString().equals("path to "+to.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testCoordinateEmbedding() {
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(house, Direction.EAST, garden);
+		
+		CoordinateEmbedding embedding = world.getCoordinateEmbedding();
+		assertTrue(embedding.isConsistent());
+		assertEquals("The house is below the attic", embedding.getZ(attic.getId()) - 1, embedding.getZ(house.getId()));
+		assertEquals("The garden is east of the house", embedding.getX(house.getId()) + 1, embedding.getX(garden.getId()));
+		assertEquals(1, embedding.estimate(attic.getId(), garden.getId()));
+		
+		world.createPath(garden, Direction.NORTH, attic);
+		embedding = world.getCoordinateEmbedding();
+		assertFalse("The attic can't be both above the house and north of the garden", embedding.isConsistent());
+		assertEquals(2, embedding.getConflicts().size());
+		
+		Path<Location> path = world.findPath(house, attic, SearchAlgorithm.A_STAR);
+		assertEquals(1, path.getPathCost());
+	}
+
+	@Test
+	public void testCanReach() {
+		Location cellar = world.registerNewLocation("The Cellar", "a damp cellar.");
+		assertFalse(world.canReach(attic, garden));
+		
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(garden, Direction.EAST, house);
+		assertTrue(world.canReach(attic, garden));
+		assertFalse(world.canReach(attic, cellar));
+		
+		Route houseToGarden = house.getConnectingRoutes().get(Direction.WEST);
+		houseToGarden.toggleLock();
+		assertFalse("The only door to the garden is locked", world.canReach(attic, garden));
+		assertTrue("The garden's side of the door is still open", world.canReach(garden, attic));
+		
+		houseToGarden.toggleLock();
+		assertTrue(world.canReach(attic, garden));
+
+		Location hall = world.registerNewLocation("The Hall", "a long hall.");
+		Location study = world.registerNewLocation("The Study", "a quiet study.");
+		Location well = world.registerNewLocation("The Well", "a dry well.");
+		Location pit = world.registerNewLocation("The Pit", "a deep pit.");
+		world.createPath(hall, Direction.NORTH, study);
+		hall.connectToLocation(study, Direction.EAST);
+		well.connectToLocation(pit, Direction.DOWN);
+		assertTrue(world.canReach(well, pit));
+		assertFalse("A second door between two rooms doesn't make another one two-way", world.canReach(pit, well));
+		assertNull(world.findPath(pit, well));
+
+		house.connectToLocation(cellar, Direction.DOWN);
+		assertTrue(world.canReach(garden, cellar));
+		assertFalse("The way to the cellar is one-way", world.canReach(cellar, garden));
+		
+		Random random = new Random(7);
+		Location[] rooms = new Location[30];
+		for(int i=0; i<rooms.length; i++) {
+			rooms[i] = world.registerNewLocation("Room "+i, "an empty room.");
+		}
+		Direction[] directions = Direction.values();
+		for(int i=0; i<60; i++) {
+			Location from = rooms[random.nextInt(rooms.length)];
+			Location to = rooms[random.nextInt(rooms.length)];
+			Direction direction = directions[random.nextInt(directions.length)];
+			if(from == to || from.getConnectingRoutes().containsKey(direction) 
+					|| to.getConnectingRoutes().containsKey(Direction.findOppositeDirection(direction))) {
+				continue;
+			}
+			world.createPath(from, direction, to);
+			if(random.nextInt(4) == 0) {
+				from.getConnectingRoutes().get(direction).toggleLock();
+			}
+			
+			for(int j=0; j<10; j++) {
+				Location start = rooms[random.nextInt(rooms.length)];
+				Location goal = rooms[random.nextInt(rooms.length)];
+				assertEquals(world.findPath(start, goal, SearchAlgorithm.DIJKSTRA) != null, world.canReach(start, goal));
+			}
+		}
+	}
+
+	@Test
+	public void testDistanceField() {
+		Location cellar = world.registerNewLocation("The Cellar", "a damp cellar.");
+		world.createPath(attic, Direction.DOWN, house, 2);
+		world.createPath(garden, Direction.EAST, house, 3);
+		
+		DistanceField field = world.computeDistanceField(attic, null);
+		assertSame(attic, field.getSource());
+		assertEquals(0, field.getDistance(attic));
+		assertEquals(2, field.getDistance(house));
+		assertEquals(5, field.getDistance(garden));
+		assertSame(house, field.getPredecessor(garden));
+		assertEquals(5, field.getPath(garden).getPathCost());
+		assertFalse(field.isReachable(cellar));
+		assertEquals(DistanceField.UNREACHED, field.getDistance(cellar));
+		
+		Location nearest = world.findNearest(garden, new LocationMatcher() {
+			@Override
+			public boolean matches(Location location) {
+				return location.getName().startsWith("The A");
+			}
+		}, field);
+		assertSame("The field is reused", attic, nearest);
+		assertSame(garden, field.getSource());
+		assertEquals(5, field.getDistance(attic));
+		assertEquals(3, field.getDistance(house));
+		
+		nearest = world.findNearest(garden, new LocationMatcher() {
+			@Override
+			public boolean matches(Location location) {
+				return location.getName().startsWith("The H");
+			}
+		}, field);
+		assertSame(house, nearest);
+		assertFalse("The search stopped before reaching the attic", field.isReachable(attic));
+	}
+
+	@Test
+	public void testFindPaths() {
+		Random random = new Random(11);
+		int size = 20;
+		Location[][] grid = new Location[size][size];
+		for(int row=0; row<size; row++) {
+			for(int column=0; column<size; column++) {
+				grid[row][column] = world.registerNewLocation("Room "+row+","+column, "an empty room.");
+				if(row > 0 && random.nextInt(4) > 0) {
+					world.createPath(grid[row][column], Direction.NORTH, grid[row-1][column], 1 + random.nextInt(9));
+				}
+				if(column > 0 && random.nextInt(4) > 0) {
+					world.createPath(grid[row][column], Direction.WEST, grid[row][column-1], 1 + random.nextInt(9));
+				}
+			}
+		}
+		
+		List<PathQuery> queries = new ArrayList<PathQuery>();
+		for(int i=0; i<500; i++) {
+			queries.add(new PathQuery(grid[random.nextInt(size)][random.nextInt(size)], grid[random.nextInt(size)][random.nextInt(size)]));
+		}
+		
+		List<Path<Location>> pooled = world.findPaths(queries);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Path<Location>> executed;
+		try {
+			executed = world.findPaths(queries, executor);
+		}
+		finally {
+			executor.shutdown();
+		}
+		
+		assertEquals(queries.size(), pooled.size());
+		for(int i=0; i<queries.size(); i++) {
+			Path<Location> expected = world.findPath(queries.get(i).getStart(), queries.get(i).getGoal(), SearchAlgorithm.DIJKSTRA);
+			assertEquals(expected, pooled.get(i));
+			assertEquals(expected, executed.get(i));
+		}
+	}
+
+	@Test
+	public void testPathCache() {
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(garden, Direction.EAST, house);
+		PathCache cache = world.getPathCache();
+		
+		Path<Location> path = world.findPath(attic, garden);
+		assertSame("A repeated query is served from the cache", path, world.findPath(attic, garden));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		
+		house.getConnectingRoutes().get(Direction.WEST).toggleLock();
+		assertNull("Toggling a lock invalidates the cached path", world.findPath(attic, garden));
+		assertNull(world.findPath(attic, garden));
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		
+		cache.setCapacity(1);
+		world.findPath(garden, attic);
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void testGetRoute() {
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(garden, Direction.EAST, house, 3);
+		
+		Route route = world.getRoute(garden, house);
+		assertSame(garden.getRoute(Direction.EAST), route);
+		assertEquals(3, route.getCost());
+		assertSame(house.getRoute(Direction.WEST), world.getRoute(house, garden));
+		assertNull("There is no direct route from the attic to the garden", world.getRoute(attic, garden));
+		assertTrue(route.getId() >= 0);
+		
+		world.togglePathLock(house, garden);
+		assertTrue(route.isLocked());
+		assertTrue(world.getRoute(house, garden).isLocked());
+		assertNull(world.findPath(attic, garden));
+		
+		List<Route> routes = new ArrayList<Route>();
+		routes.add(route);
+		routes.add(world.getRoute(house, garden));
+		routes.add(world.getRoute(attic, house));
+		world.unlockRoutes(routes);
+		assertFalse(route.isLocked());
+		assertFalse(world.getRoute(attic, house).isLocked());
+		world.lockRoutes(routes);
+		assertTrue(world.getRoute(attic, house).isLocked());
+		assertFalse(world.getRoute(house, attic).isLocked());
+		assertFalse("Already locked", world.setRouteLock(route, true));
+		assertTrue(world.setRouteLock(route, false));
+		assertFalse(route.isLocked());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testTogglePathLockWithoutPath() {
+		world.togglePathLock(attic, garden);
+	}
+
+	@Test
+	public void testCompiledGraph() {
+		world.createPath(attic, Direction.DOWN, house);
+		world.createPath(garden, Direction.EAST, house);
+		
+		CompiledGraph graph = world.getCompiledGraph();
+		assertEquals(3, graph.getLocationCount());
+		assertEquals(4, graph.getEdgeCount());
+		assertSame(graph, world.getCompiledGraph());
+		
+		int houseId = -1;
+		for(int id=0; id<graph.getLocationCount(); id++) {
+			if(graph.getLocation(id) == house) {
+				houseId = id;
+			}
+		}
+		assertEquals("The house has two ways out", 2, graph.endEdge(houseId) - graph.firstEdge(houseId));
+		
+		int houseToAttic = graph.endEdge(houseId) - 1;
+		assertEquals(Direction.WEST, graph.directionOf(graph.firstEdge(houseId)));
+		assertEquals(Direction.UP, graph.directionOf(houseToAttic));
+		assertSame(attic, graph.getLocation(graph.destinationOf(houseToAttic)));
+		
+		house.getConnectingRoutes().get(Direction.UP).toggleLock();
+		assertTrue("Lock toggles are mirrored in the graph", graph.isLocked(houseToAttic));
+		house.getConnectingRoutes().get(Direction.UP).toggleLock();
+		assertFalse(graph.isLocked(houseToAttic));
+		
+		CompiledGraph frozen = world.getFrozenGraph();
+		house.getConnectingRoutes().get(Direction.UP).toggleLock();
+		assertFalse("A frozen graph keeps the locks it was taken with", frozen.isLocked(houseToAttic));
+		house.getConnectingRoutes().get(Direction.UP).toggleLock();
+		
+		world.createPath(garden, Direction.NORTH, attic);
+		assertTrue("New routes make the old graph stale", graph.isStale());
+		assertEquals(6, world.getCompiledGraph().getEdgeCount());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		Character hero = new Character("The Hero", 10) {};
+		Character ghost = new Character("A Ghost", 1) {};
+		world.registerCharacter(hero);
+		world.registerCharacter(ghost);
+		world.placeCharacter(hero, house);
+		world.createPath(house, Direction.UP, attic);
+		world.createPath(house, Direction.WEST, garden, 3);
+		house.getRoute(Direction.UP).toggleLock();
+		
+		File file = File.createTempFile("world", ".vwld");
+		try {
+			WorldFile.save(world, file);
+			World loaded = WorldFile.load(file, new CharacterResolver() {
+				public Character resolve(String name) {
+					return new Character(name, 1) {};
+				}
+			});
+			
+			assertEquals(world.getLocationCount(), loaded.getLocationCount());
+			assertEquals(world.getRouteCount(), loaded.getRouteCount());
+			assertEquals(world.getCharacterCount(), loaded.getCharacterCount());
+			for(int id=0; id<world.getLocationCount(); id++) {
+				Location original = world.getLocation(id);
+				Location copy = loaded.getLocation(id);
+				assertEquals(original.getName(), copy.getName());
+				assertEquals("Descriptions are decoded when asked for", original.getDescription(), copy.getDescription());
+				assertEquals(LocationRenderer.renderedLength(original), LocationRenderer.renderedLength(copy));
+			}
+			for(int id=0; id<world.getRouteCount(); id++) {
+				assertEquals("Route "+id+" keeps its lock", world.getRoute(id).isLocked(), loaded.getRoute(id).isLocked());
+				assertEquals(world.getRoute(id).getCost(), loaded.getRoute(id).getCost());
+			}
+			assertEquals("The Hero", loaded.getCharacter(0).getName());
+			assertEquals("The House", loaded.getLocationOf(loaded.getCharacter(0)).getName());
+			assertNull("A Ghost", loaded.getLocationOf(loaded.getCharacter(1)));
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	@Test(expected=IOException.class)
+	public void testLoadRejectsOtherFiles() throws Exception {
+		File file = File.createTempFile("world", ".txt");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(new byte[128]);
+			out.close();
+			WorldFile.load(file, null);
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	@Test(expected=IOException.class)
+	public void testLoadRejectsCorruptTables() throws Exception {
+		world.createPath(attic, Direction.DOWN, house);
+		File file = File.createTempFile("world", ".vwld");
+		try {
+			WorldFile.save(world, file);
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.seek(48);
+			raf.writeLong(-16);		//where the routes start
+			raf.close();
+			WorldFile.load(file, null);
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testLoadDefinition() throws Exception {
+		String definition =
+				"# rooms may be used before they are defined\n" +
+				"path The House | up | The Attic\n" +
+				"path The House | WEST | The Garden | 3 | locked\n" +
+				"\n" +
+				"location The Attic | a musty old attic.\n" +
+				"location The House | a quaint house, with tons of knickknacks.\n" +
+				"location The Garden\n";
+		WorldDefinitionLoader loader = new WorldDefinitionLoader();
+		loader.setChunkSize(1);
+		World loaded = loader.load(new StringReader(definition));
+		
+		Location house = loaded.getLocation("The House");
+		Location garden = loaded.getLocation("The Garden");
+		assertEquals(3, loaded.getLocationCount());
+		assertEquals(4, loaded.getRouteCount());
+		assertEquals("a musty old attic.", loaded.getLocation("The Attic").getDescription());
+		assertFalse(house.getRoute(Direction.UP).isLocked());
+		assertEquals(3, house.getRoute(Direction.WEST).getCost());
+		assertTrue(house.getRoute(Direction.WEST).isLocked());
+		assertTrue(garden.getRoute(Direction.EAST).isLocked());
+	}
+	
+	@Test
+	public void testLoadDefinitionReportsEveryError() throws Exception {
+		String definition =
+				"location A\n" +
+				"location B\n" +
+				"location A | again\n" +
+				"path A | NORTH | B\n" +
+				"path A | NORTH | C\n" +
+				"path B | SIDEWAYS | A\n" +
+				"path B | EAST | B\n" +
+				"path B | SOUTH | A | 2\n" +
+				"path B | UP | A | -2\n" +
+				"room D\n";
+		try {
+			new WorldDefinitionLoader().load(new StringReader(definition));
+			assertTrue("The definition should have been rejected", false);
+		}
+		catch(WorldDefinitionException e) {
+			List<String> errors = e.getErrors();
+			assertEquals(errors.toString(), 8, errors.size());
+			String[] lines = {"3", "5", "6", "7", "8", "8", "9", "10"};
+			for(int i=0; i<lines.length; i++) {
+				assertTrue(errors.get(i), errors.get(i).startsWith("line "+lines[i]+": "));
+			}
+			assertTrue("Both ends of the path on line 8 are taken", errors.get(5).contains("from the path on line 4"));
+		}
+	}
+
+	@Test
+	public void testRegionPaging() throws Exception {
+		World big = new World();
+		Location previous = null;
+		for(int i=0; i<8; i++) {
+			Location room = big.registerNewLocation("Room "+i, "room number "+i+" of a long hall.");
+			if(previous != null) {
+				big.createPath(previous, Direction.EAST, room);
+			}
+			previous = room;
+		}
+		File file = File.createTempFile("world", ".vwld");
+		try {
+			WorldFile.save(big, file);
+			World paged = WorldFile.load(file, null);
+			long regionBytes = 2 * (48 + 2 * "room number 0 of a long hall.".length());
+			RegionPager pager = new RegionPager(paged, 2, regionBytes * 2);
+			assertSame(pager, paged.getRegionPager());
+			
+			Character hero = new Character("The Hero", 10) {};
+			paged.placeCharacter(hero, paged.getLocation(0));
+			assertTrue(pager.isResident(paged.getLocation(1)));
+			assertFalse(pager.isResident(paged.getLocation(2)));
+			
+			pager.pin(paged.getLocation(2));
+			assertEquals("room number 7 of a long hall.", paged.getLocation(7).getDescription());
+			assertEquals(3, pager.getLoadCount());
+			assertEquals("Nothing can be evicted but the last region itself", 0, pager.getEvictionCount());
+			
+			pager.unpin(paged.getLocation(2));
+			assertEquals(1, pager.getEvictionCount());
+			assertFalse("The least recently used region without characters goes", pager.isResident(paged.getLocation(2)));
+			assertTrue(pager.isResident(paged.getLocation(0)));
+			assertTrue(pager.getResidentBytes() <= pager.getBudget());
+			
+			assertTrue(paged.moveCharacter(hero, paged.getLocation(0).getRoute(Direction.EAST)));
+			paged.findPath(paged.getLocation(1), paged.getLocation(5));
+			assertTrue("Regions on a path found are paged in", pager.isResident(paged.getLocation(4)));
+			assertEquals("Paged out descriptions come back", "room number 2 of a long hall.", paged.getLocation(2).getDescription());
+			assertTrue(pager.getHitCount() > 0);
+			assertTrue(pager.getResidentBytes() <= pager.getBudget());
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testStringStore() throws Exception {
+		StringStore store = new StringStore();
+		int first = store.intern("a long, winding corridor");
+		int other = store.intern("a cave, na\u00efve and dark");
+		assertEquals("Equal strings are stored once", first, store.intern(new String("a long, winding corridor")));
+		assertEquals(2, store.size());
+		assertEquals("a cave, na\u00efve and dark", store.get(other));
+		assertEquals("a cave, na\u00efve and dark".getBytes("UTF-8").length, store.getByteLength(other));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		store.writeTo(first, out);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		store.writeTo(other, buffer);
+		assertEquals("a long, winding corridor", out.toString("UTF-8"));
+		assertEquals("a cave, na\u00efve and dark", new String(buffer.array(), 0, buffer.position(), "UTF-8"));
+		
+		for(int i=0; i<1000; i++) {
+			world.registerNewLocation("Corridor "+i, "a long, winding corridor");
+		}
+		assertEquals("Repeated descriptions are stored once", 4, world.getStringStore().size());
+		Location corridor = world.getLocation("Corridor 7");
+		assertEquals("a long, winding corridor", corridor.getDescription());
+		
+		ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+		LocationRenderer.render(corridor, rendered);
+		assertEquals(corridor.toString(), rendered.toString("UTF-8"));
+		assertEquals(rendered.size(), LocationRenderer.renderedLength(corridor));
+	}
+
+	@Test
+	public void testJournalRecovery() throws Exception {
+		File directory = File.createTempFile("journal", "");
+		directory.delete();
+		CharacterResolver resolver = new CharacterResolver() {
+			public Character resolve(String name) {
+				return new Character(name, 1) {};
+			}
+		};
+		try {
+			MutationJournal journal = new MutationJournal(directory, MutationJournal.FsyncPolicy.EVERY_BATCH);
+			World journaled = journal.recover(resolver);
+			assertSame(journal, journaled.getJournal());
+			Location hall = journaled.registerNewLocation("The Hall", "a long hall.");
+			Location den = journaled.registerNewLocation("The Den", "a cosy den.");
+			journaled.createPath(hall, Direction.NORTH, den, 2);
+			Character hero = new Character("The Hero", 10) {};
+			journaled.placeCharacter(hero, hall);
+			
+			journal.checkpoint();
+			Location loft = journaled.registerNewLocation("The Loft", "a dusty loft.");
+			journaled.createPath(den, Direction.UP, loft);
+			assertTrue(journaled.moveCharacter(hero, hall.getRoute(Direction.NORTH)));
+			den.getRoute(Direction.UP).toggleLock();
+			journal.flush();
+			assertEquals(1, journal.getCheckpointCount());
+			assertEquals(11, journal.getRecordsWritten());
+			assertTrue(journal.getBatchesWritten() >= 2);
+			journal.close();
+			assertNull(journaled.getJournal());
+			
+			try {
+				new MutationJournal(directory, MutationJournal.FsyncPolicy.NEVER).recover(new CharacterResolver() {
+					public Character resolve(String name) {
+						return null;
+					}
+				});
+				fail("The checkpoint's character must be made, or the ids replayed after it would shift");
+			} catch(IOException e) {
+				assertTrue(e.getMessage().contains("The Hero"));
+			}
+			
+			MutationJournal again = new MutationJournal(directory, MutationJournal.FsyncPolicy.PERIODIC);
+			World recovered = again.recover(resolver);
+			assertEquals("Only the records after the checkpoint are replayed", 5, again.getRecordsReplayed());
+			assertEquals(3, recovered.getLocationCount());
+			assertEquals(4, recovered.getRouteCount());
+			assertEquals("a dusty loft.", recovered.getLocation("The Loft").getDescription());
+			assertEquals(2, recovered.getLocation("The Hall").getRoute(Direction.NORTH).getCost());
+			assertTrue(recovered.getLocation("The Den").getRoute(Direction.UP).isLocked());
+			assertEquals("The Den", recovered.getLocationOf(recovered.getCharacter(0)).getName());
+			
+			recovered.removeCharacter(recovered.getCharacter(0));
+			again.close();
+			File[] segments = directory.listFiles();
+			File last = null;
+			for(File file : segments) {
+				if(file.getName().endsWith(".log") && (last == null || file.getName().compareTo(last.getName()) > 0)) {
+					last = file;
+				}
+			}
+			long whole = last.length();
+			RandomAccessFile torn = new RandomAccessFile(last, "rw");
+			torn.seek(whole);
+			torn.write(new byte[] {0, 0, 0, 9, 1, 2});
+			torn.close();
+			
+			MutationJournal third = new MutationJournal(directory, MutationJournal.FsyncPolicy.NEVER);
+			World afterCrash = third.recover(resolver);
+			assertNull("Records before the torn one are replayed", afterCrash.getLocationOf(afterCrash.getCharacter(0)));
+			assertEquals("The torn record is cut off", whole, last.length());
+			
+			third.setCheckpointInterval(3);
+			Location recoveredHall = afterCrash.getLocation("The Hall");
+			for(int i=0; i<4; i++) {
+				afterCrash.placeCharacter(afterCrash.getCharacter(0), recoveredHall);
+				afterCrash.removeCharacter(afterCrash.getCharacter(0));
+			}
+			third.flush();
+			for(int wait=0; wait<500 && third.getCheckpointCount() == 0; wait++) {
+				Thread.sleep(10);
+			}
+			assertTrue("A checkpoint is saved by itself", third.getCheckpointCount() > 0);
+			third.close();
+		}
+		finally {
+			for(File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
 	@Test
 	public void testToString() {
 		System.out.println(world.toString());